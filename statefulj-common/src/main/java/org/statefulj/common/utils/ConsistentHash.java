@@ -0,0 +1,99 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.common.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring which maps a key onto one of a list of nodes.  Each node is placed on the 
+ * ring at a number of virtual positions derived from its index in the list, so two rings built from
+ * lists of the same size route every key to the same index - regardless of the type of the nodes.
+ * This allows, for example, a list of Persisters and a list of Finders to agree on the shard of an
+ * entity
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ConsistentHash<T> {
+	
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+	
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	private List<T> nodes;
+	
+	private TreeMap<Long, T> ring = new TreeMap<Long, T>();
+	
+	public ConsistentHash(List<T> nodes) {
+		this(nodes, DEFAULT_VIRTUAL_NODES);
+	}
+
+	public ConsistentHash(List<T> nodes, int virtualNodes) {
+		if (nodes == null || nodes.isEmpty()) {
+			throw new IllegalArgumentException("At least one node is required");
+		}
+		this.nodes = new ArrayList<T>(nodes);
+		for(int i = 0; i < this.nodes.size(); i++) {
+			for(int v = 0; v < virtualNodes; v++) {
+				this.ring.put(hash(i + "-" + v), this.nodes.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Return the node of the key
+	 * 
+	 * @param key The key, it's hashed by its String value
+	 * @return The node owning the key
+	 */
+	public T get(Object key) {
+		if (this.nodes.size() == 1) {
+			return this.nodes.get(0);
+		}
+		Map.Entry<Long, T> entry = this.ring.ceilingEntry(hash(String.valueOf(key)));
+		return (entry == null) ? this.ring.firstEntry().getValue() : entry.getValue();
+	}
+	
+	public List<T> getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * 64 bit FNV-1a of the characters of the key, followed by the MurmurHash3 finalizer so that keys 
+	 * differing only in their last characters - such as sequential Ids - are spread around the ring.  
+	 * It's called on every lookup, so unlike a MessageDigest it doesn't allocate
+	 */
+	private static long hash(String key) {
+		long hash = FNV_OFFSET_BASIS;
+		for(int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -64,6 +64,30 @@ public class ReflectionUtils {
 		return fields;
 	}
 	
+	/**
+	 * Return the Id field of the class without depending upon a specific persistence API: the first 
+	 * field annotated with an annotation named "Id", else the field named "id"
+	 * 
+	 * @param clazz
+	 * @return the Id field or null
+	 */
+	public static Field getIdField(Class<?> clazz) {
+		Field idField = null;
+		for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			for(Field field : c.getDeclaredFields()) {
+				for(Annotation annotation : field.getAnnotations()) {
+					if (annotation.annotationType().getSimpleName().equals("Id")) {
+						return field;
+					}
+				}
+				if (idField == null && field.getName().equals("id")) {
+					idField = field;
+				}
+			}
+		}
+		return idField;
+	}
+	
 	public static Method getFirstAnnotatedMethod(
 			Class<?> clazz,
 			Class<? extends Annotation> annotationClass) {
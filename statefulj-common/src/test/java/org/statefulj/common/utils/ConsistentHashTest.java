@@ -0,0 +1,72 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.common.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashTest {
+	
+	@Test
+	public void testRouting() {
+		ConsistentHash<String> names = new ConsistentHash<String>(Arrays.asList("a", "b", "c"));
+		ConsistentHash<Integer> numbers = new ConsistentHash<Integer>(Arrays.asList(0, 1, 2));
+		
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for(long id = 0; id < 3000; id++) {
+			String node = names.get(id);
+			
+			// Stable and independent of the type of the nodes
+			//
+			assertEquals(node, names.get(id));
+			assertEquals(node, Arrays.asList("a", "b", "c").get(numbers.get(id)));
+			
+			Integer count = counts.get(node);
+			counts.put(node, (count == null) ? 1 : count + 1);
+		}
+		
+		// Reasonably balanced
+		//
+		for(String node : names.getNodes()) {
+			assertTrue(counts.get(node) > 500);
+		}
+	}
+
+	@Test
+	public void testAddingNode() {
+		List<String> three = Arrays.asList("a", "b", "c");
+		List<String> four = Arrays.asList("a", "b", "c", "d");
+		ConsistentHash<String> before = new ConsistentHash<String>(three);
+		ConsistentHash<String> after = new ConsistentHash<String>(four);
+		
+		// Only the keys claimed by the new node move
+		//
+		for(long id = 0; id < 3000; id++) {
+			String node = after.get(id);
+			if (!node.equals("d")) {
+				assertEquals(before.get(id), node);
+			}
+		}
+	}
+}
@@ -17,11 +17,24 @@
  */
 package org.statefulj.framework.binders.camel;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.Id;
 
 import javassist.CannotCompileException;
@@ -38,9 +51,11 @@ import javassist.bytecode.annotation.Annotation;
 import javassist.bytecode.annotation.StringMemberValue;
 
 import org.apache.camel.Consume;
+import org.apache.camel.Exchange;
 import org.apache.camel.component.bean.BeanInvocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.SimpleTypeConverter;
 
 import static org.statefulj.framework.binders.common.utils.JavassistUtils.*;
 
@@ -48,6 +63,7 @@ import org.statefulj.common.utils.ReflectionUtils;
 import org.statefulj.framework.core.model.EndpointBinder;
 import org.statefulj.framework.core.model.FSMHarness;
 import org.statefulj.framework.core.model.ReferenceFactory;
+import org.statefulj.fsm.TooBusyException;
 
 public class CamelBinder implements EndpointBinder {
 	
@@ -58,52 +74,357 @@ public class CamelBinder implements EndpointBinder {
 	private final String CONSUMER_SUFFIX = "CamelBinder";
 	
 	private final String HARNESS_VAR = "harness";
+	
+	private final String DISPATCHER_VAR = "dispatcher";
+	
+	private final String ID_EXTRACTORS_VAR = "idExtractors";
+	
+	// IdExtractor returned for message classes without an Id
+	//
+	private static final IdExtractor NO_ID = new IdExtractor() {
+		
+		@Override
+		public Object extractId(Object msg) {
+			return null;
+		}
+	};
+	
+	// IdExtractors, keyed by message class
+	//
+	private static final Map<Class<?>, IdExtractor> idExtractors = new ConcurrentHashMap<Class<?>, IdExtractor>();
+	
+	// Id types of the Stateful Controllers, keyed by Consumer class name
+	//
+	private static final Map<String, Class<?>> idTypes = new ConcurrentHashMap<String, Class<?>>();
+	
 
 	@Override
 	public String getKey() {
 		return KEY;
 	}
 
-	public static Object lookupId(Object msg) {
-		Object id = null;
-		if (msg instanceof String || Number.class.isAssignableFrom(msg.getClass())) {
-			id = msg;
-		} else {
-			if (BeanInvocation.class.isAssignableFrom(msg.getClass())) {
-				msg = ((BeanInvocation)msg).getArgs()[0];
+	/**
+	 * Register the IdExtractor for a message class, replacing the default extraction
+	 * 
+	 * @param msgClass The message class
+	 * @param extractor The IdExtractor
+	 */
+	public static void registerIdExtractor(Class<?> msgClass, IdExtractor extractor) {
+		idExtractors.put(msgClass, extractor);
+	}
+
+	/**
+	 * Unregister the IdExtractor for a message class, restoring the default extraction
+	 * 
+	 * @param msgClass The message class
+	 */
+	public static void unregisterIdExtractor(Class<?> msgClass) {
+		idExtractors.remove(msgClass);
+	}
+
+	/**
+	 * Register the IdExtractor beans of the Application Context, each for its {@link IdExtractor#getMessageClass()}.
+	 * Invoked by the generated Consumers once their references are set
+	 * 
+	 * @param extractors The IdExtractor beans, or null if there aren't any
+	 */
+	public static void registerIdExtractors(IdExtractor[] extractors) {
+		if (extractors == null) {
+			return;
+		}
+		for(IdExtractor extractor : extractors) {
+			if (extractor.getMessageClass() == null) {
+				throw new IllegalArgumentException(extractor.getClass() + " doesn't declare its message class");
 			}
-			Field idField = null;
-			try {
-				idField = ReflectionUtils.getFirstAnnotatedField(msg.getClass(), Id.class);
-			} catch(Throwable t) {
-				// ignore
+			registerIdExtractor(extractor.getMessageClass(), extractor);
+		}
+	}
+
+	/**
+	 * Unregister the IdExtractor beans of the Application Context, unless their message class has since
+	 * been registered with another IdExtractor.  Invoked by the generated Consumers when they are destroyed
+	 * 
+	 * @param extractors The IdExtractor beans, or null if there aren't any
+	 */
+	public static void unregisterIdExtractors(IdExtractor[] extractors) {
+		if (extractors == null) {
+			return;
+		}
+		for(IdExtractor extractor : extractors) {
+			if (extractor.getMessageClass() != null) {
+				idExtractors.remove(extractor.getMessageClass(), extractor);
 			}
-			if (idField == null) {
+		}
+	}
+
+	/**
+	 * Dispatch a message to the Harness.  If the message is a Collection, such as the aggregated 
+	 * bodies or Exchanges of a size or time window, each element is dispatched as its own message, 
+	 * so each Entity receives its own element as its context and message.  Each run of elements 
+	 * with distinct Ids is passed to {@link FSMHarness#onEvents(String, Map)}, so their Entities are 
+	 * loaded together - and, for JPA, processed within one transaction.  If a run fails, the remaining 
+	 * runs are still dispatched and the first failure is then rethrown
+	 * 
+	 * @param harness The FSMHarness
+	 * @param event The event
+	 * @param msg The message
+	 * @return The result of the event, or the List of results if the message is a Collection
+	 * @throws TooBusyException
+	 */
+	public static Object dispatch(final FSMHarness harness, final String event, final Object msg) throws TooBusyException {
+		return dispatch(null, harness, event, msg, null);
+	}
+
+	/**
+	 * Dispatch a message to the Harness from a generated Consumer.  If the Application Context declares
+	 * a {@link PartitionedDispatcher} bean, the events are processed on its lanes rather than on the 
+	 * consuming thread, so events for the same Entity are processed in order across concurrent consumers.
+	 * The Id of the message is converted to the Id type of the Stateful Controller, so the same Entity 
+	 * always maps to the same lane whether its Id arrives as a String or a Number
+	 * 
+	 * @param dispatcher The PartitionedDispatcher bean, or null to process on the consuming thread
+	 * @param harness The FSMHarness
+	 * @param event The event
+	 * @param msg The message
+	 * @param consumerClass The generated Consumer class
+	 * @return The result of the event, or the List of results if the message is a Collection
+	 * @throws TooBusyException
+	 */
+	public static Object dispatch(
+			PartitionedDispatcher dispatcher,
+			final FSMHarness harness, 
+			final String event, 
+			final Object msg, 
+			Class<?> consumerClass) throws TooBusyException {
+		
+		Class<?> idType = (consumerClass == null) ? null : idTypes.get(consumerClass.getName());
+		if (msg instanceof Collection) {
+			List<Object> msgs = new ArrayList<Object>(((Collection<?>)msg).size());
+			for(Object element : (Collection<?>)msg) {
+				msgs.add((element instanceof Exchange) ? ((Exchange)element).getIn().getBody() : element);
+			}
+			return (dispatcher == null || dispatcher.isOnLane()) 
+					? dispatchEach(harness, event, msgs, idType)
+					: dispatchAll(dispatcher, harness, event, msgs, idType);
+		}
+		final Object id = lookupId(msg, idType);
+		if (dispatcher == null) {
+			return harness.onEvent(event, id, new Object[]{msg, msg});
+		}
+		return dispatcher.dispatch(id, new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+				return harness.onEvent(event, id, new Object[]{msg, msg});
+			}
+		});
+	}
+	
+	/**
+	 * Dispatch the messages on the calling thread, in order.  Consecutive messages with distinct Ids are 
+	 * dispatched together; a message without an Id, or whose Id is already in the run, starts a new run
+	 */
+	private static List<Object> dispatchEach(
+			FSMHarness harness, 
+			String event, 
+			List<Object> msgs,
+			Class<?> idType) throws TooBusyException {
+		
+		List<Object> results = new ArrayList<Object>(Collections.nCopies(msgs.size(), null));
+		Map<Object, Object[]> run = new LinkedHashMap<Object, Object[]>();
+		Map<Object, Integer> indexes = new HashMap<Object, Integer>();
+		Throwable failure = null;
+		for(int i = 0; i < msgs.size(); i++) {
+			Object msg = msgs.get(i);
+			Object id = lookupId(msg, idType);
+			if (id == null || run.containsKey(id)) {
+				failure = dispatchRun(harness, event, run, indexes, results, failure);
+			}
+			if (id == null) {
 				try {
-					idField = ReflectionUtils.getFirstAnnotatedField(msg.getClass(), org.springframework.data.annotation.Id.class);
+					results.set(i, harness.onEvent(event, null, new Object[]{msg, msg}));
 				} catch(Throwable t) {
-					// ignore
+					failure = (failure == null) ? t : failure;
 				}
+			} else {
+				run.put(id, new Object[]{msg, msg});
+				indexes.put(id, i);
 			}
-			if (idField == null) {
-				try {
-					idField = msg.getClass().getField("id");
-				} catch (Throwable t) {
-					// ignore
-				}
+		}
+		failure = dispatchRun(harness, event, run, indexes, results, failure);
+		rethrow(failure);
+		return results;
+	}
+	
+	/**
+	 * Dispatch the run of messages together, setting the result of each message and clearing the run
+	 * 
+	 * @return The first failure
+	 */
+	private static Throwable dispatchRun(
+			FSMHarness harness, 
+			String event, 
+			Map<Object, Object[]> run,
+			Map<Object, Integer> indexes,
+			List<Object> results,
+			Throwable failure) {
+		if (run.isEmpty()) {
+			return failure;
+		}
+		try {
+			for(Map.Entry<Object, Object> result : harness.onEvents(event, run).entrySet()) {
+				results.set(indexes.get(result.getKey()), result.getValue());
 			}
-			if (idField != null) {
-				try {
-					idField.setAccessible(true);
-					id = idField.get(msg);
-				} catch (IllegalArgumentException e) {
-					throw new RuntimeException(e);
-				} catch (IllegalAccessException e) {
-					throw new RuntimeException(e);
-				}
+		} catch(Throwable t) {
+			failure = (failure == null) ? t : failure;
+		} finally {
+			run.clear();
+			indexes.clear();
+		}
+		return failure;
+	}
+	
+	/**
+	 * Submit each message to the lane of its Id, then wait for the results in the order of the messages.
+	 * If a lane is full, no further messages are submitted, but the messages which were submitted are 
+	 * waited for before the TooBusyException is thrown - so none is still processing when the batch is 
+	 * redelivered
+	 */
+	private static List<Object> dispatchAll(
+			PartitionedDispatcher dispatcher, 
+			final FSMHarness harness, 
+			final String event, 
+			List<Object> msgs,
+			Class<?> idType) throws TooBusyException {
+		
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(msgs.size());
+		TooBusyException tooBusy = null;
+		for(final Object msg : msgs) {
+			final Object id = lookupId(msg, idType);
+			try {
+				futures.add(dispatcher.submit(
+						(id == null) ? 0 : dispatcher.getLane(id), 
+						new Callable<Object>() {
+	
+							@Override
+							public Object call() throws Exception {
+								return harness.onEvent(event, id, new Object[]{msg, msg});
+							}
+						}));
+			} catch(TooBusyException e) {
+				tooBusy = e;
+				break;
+			}
+		}
+		
+		List<Object> results = new ArrayList<Object>(msgs.size());
+		Throwable failure = null;
+		for(Future<Object> future : futures) {
+			try {
+				results.add(dispatcher.await(future));
+			} catch(Throwable t) {
+				failure = (failure == null) ? t : failure;
+				results.add(null);
+			}
+		}
+		rethrow((failure == null) ? tooBusy : failure);
+		return results;
+	}
+	
+	private static void rethrow(Throwable failure) throws TooBusyException {
+		if (failure instanceof TooBusyException) {
+			throw (TooBusyException)failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error)failure;
+		}
+		if (failure != null) {
+			throw new RuntimeException(failure);
+		}
+	}
+	
+	/**
+	 * Lookup the Id of a message, converted to the Id type
+	 * 
+	 * @param msg The message
+	 * @param idType The Id type of the Stateful Controller, or null to leave the Id unconverted
+	 * @return The Id, or null if the message doesn't have an Id
+	 */
+	public static Object lookupId(Object msg, Class<?> idType) {
+		Object id = lookupId(msg);
+		if (id == null || idType == null || idType.isInstance(id)) {
+			return id;
+		}
+		return new SimpleTypeConverter().convertIfNecessary(id, idType);
+	}
+
+	public static Object lookupId(Object msg) {
+		if (msg instanceof String || msg instanceof Number) {
+			return msg;
+		}
+		if (msg instanceof BeanInvocation) {
+			msg = ((BeanInvocation)msg).getArgs()[0];
+		}
+		IdExtractor extractor = idExtractors.get(msg.getClass());
+		if (extractor == null) {
+			extractor = buildIdExtractor(msg.getClass());
+			idExtractors.put(msg.getClass(), extractor);
+		}
+		return extractor.extractId(msg);
+	}
+	
+	/**
+	 * Build the IdExtractor for the message class from its Id field, resolved in order from the 
+	 * JPA Id annotation, the Spring Data Id annotation and the public field "id".  If the class 
+	 * doesn't have an Id field, the IdExtractor returns null
+	 */
+	private static IdExtractor buildIdExtractor(Class<?> msgClass) {
+		Field idField = null;
+		try {
+			idField = ReflectionUtils.getFirstAnnotatedField(msgClass, Id.class);
+		} catch(Throwable t) {
+			// ignore
+		}
+		if (idField == null) {
+			try {
+				idField = ReflectionUtils.getFirstAnnotatedField(msgClass, org.springframework.data.annotation.Id.class);
+			} catch(Throwable t) {
+				// ignore
+			}
+		}
+		if (idField == null) {
+			try {
+				idField = msgClass.getField("id");
+			} catch (Throwable t) {
+				// ignore
 			}
 		}
-		return id;
+		if (idField == null) {
+			return NO_ID;
+		}
+		
+		try {
+			idField.setAccessible(true);
+			final MethodHandle getter = MethodHandles.lookup().unreflectGetter(idField);
+			return new IdExtractor() {
+				
+				@Override
+				public Object extractId(Object msg) {
+					try {
+						return getter.invoke(msg);
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Throwable t) {
+						throw new RuntimeException(t);
+					}
+				}
+			};
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
 	@Override
@@ -117,6 +438,19 @@ public class CamelBinder implements EndpointBinder {
 			throws CannotCompileException, NotFoundException,
 			IllegalArgumentException, IllegalAccessException,
 			InvocationTargetException {
+		// Use the Consumer Class if it was generated at build time
+		//
+		String camelProxyClassName = controllerClass.getName() + CONSUMER_SUFFIX;
+		if (idType != null) {
+			idTypes.put(camelProxyClassName, idType);
+		}
+		String stamp = getStamp(camelProxyClassName, idType, isDomainEntity, eventMapping, refFactory);
+		Class<?> pregenerated = loadPregeneratedClass(camelProxyClassName, controllerClass, stamp);
+		if (pregenerated != null) {
+			logger.debug("Using pregenerated Consumer {}", camelProxyClassName);
+			return pregenerated;
+		}
+		
 		logger.debug("Building Consumer for {}", controllerClass);
 		
 		// Set up the ClassPool
@@ -126,20 +460,27 @@ public class CamelBinder implements EndpointBinder {
 
 		// Create a new Consumer Class 
 		//
-		String camelProxyClassName = controllerClass.getName() + CONSUMER_SUFFIX;
 		CtClass camelProxyClass = cp.makeClass(camelProxyClassName);
 		
 		// Add the member variable referencing the Harness
 		//
 		addFSMHarnessReference(camelProxyClass, refFactory.getFSMHarnessId(), cp);
 		
+		// Add the member variable referencing the PartitionedDispatcher bean, if there is one
+		//
+		addDispatcherReference(camelProxyClass, cp);
+		
+		// Add the member variable referencing the IdExtractor beans, registered for the lifetime of the Consumer
+		//
+		addIdExtractorsReference(camelProxyClass, cp);
+		
 		// Copy methods that have a Transition annotation from the Stateful Controller to the Binder
 		//
 		addConsumerMethods(camelProxyClass, eventMapping, cp);
 		
 		// Construct and return the Proxy Class
 		//
-		return camelProxyClass.toClass();
+		return toClass(camelProxyClass, controllerClass, stamp);
 	}
 	
 	private void addFSMHarnessReference(CtClass camelProxyClass, String fsmHarnessId, ClassPool cp) throws NotFoundException, CannotCompileException {
@@ -151,6 +492,48 @@ public class CamelBinder implements EndpointBinder {
 		camelProxyClass.addField(field);
 	}
 
+	private void addDispatcherReference(CtClass camelProxyClass, ClassPool cp) throws NotFoundException, CannotCompileException {
+		CtClass type = cp.get(PartitionedDispatcher.class.getName());
+		CtField field = new CtField(type, DISPATCHER_VAR, camelProxyClass);
+
+		addOptionalAutowiredAnnotation(field);
+		
+		camelProxyClass.addField(field);
+	}
+
+	private void addIdExtractorsReference(CtClass camelProxyClass, ClassPool cp) throws NotFoundException, CannotCompileException {
+		CtClass type = cp.get(IdExtractor.class.getName() + "[]");
+		CtField field = new CtField(type, ID_EXTRACTORS_VAR, camelProxyClass);
+
+		addOptionalAutowiredAnnotation(field);
+		
+		camelProxyClass.addField(field);
+		
+		addLifecycleMethod(camelProxyClass, "$_registeridextractors", "registerIdExtractors", PostConstruct.class);
+		addLifecycleMethod(camelProxyClass, "$_unregisteridextractors", "unregisterIdExtractors", PreDestroy.class);
+	}
+
+	private void addLifecycleMethod(
+			CtClass camelProxyClass, 
+			String methodName, 
+			String binderMethod, 
+			Class<?> annotationClass) throws CannotCompileException {
+		CtMethod ctMethod = new CtMethod(CtClass.voidType, methodName, null, camelProxyClass);
+
+		MethodInfo methodInfo = ctMethod.getMethodInfo();
+		ConstPool constPool = methodInfo.getConstPool();
+		AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+		attr.addAnnotation(new Annotation(annotationClass.getName(), constPool));
+		methodInfo.addAttribute(attr);
+
+		ctMethod.setBody(
+				"{ " +
+					"org.statefulj.framework.binders.camel.CamelBinder." + binderMethod + "(this." + ID_EXTRACTORS_VAR + ");" +
+				"}");
+		
+		camelProxyClass.addMethod(ctMethod);
+	}
+
 	private void addConsumerMethods(CtClass camelProxyClass, Map<String,Method> eventMapping, ClassPool cp) throws IllegalArgumentException, NotFoundException, IllegalAccessException, InvocationTargetException, CannotCompileException {
 		
 		// Build a method for each Event
@@ -220,11 +603,10 @@ public class CamelBinder implements EndpointBinder {
 	private void addMethodBody(CtMethod ctMethod, String event) throws CannotCompileException, NotFoundException {
 		String methodBody = 
 				"{ " +
-					"Object id = org.statefulj.framework.binders.camel.CamelBinder.lookupId($1); " +
-					"$proceed(\"" + event + "\", id, new Object[]{$1, $1});" +
+					"org.statefulj.framework.binders.camel.CamelBinder.dispatch(this." + DISPATCHER_VAR + ", this." + HARNESS_VAR + ", \"" + event + "\", $1, getClass());" +
 				"}";
 
-		ctMethod.setBody(methodBody, "this." + HARNESS_VAR, "onEvent");
+		ctMethod.setBody(methodBody);
 	}
 	
 	private void addMessageParameter(CtMethod ctMethod, Method method, ClassPool cp) throws NotFoundException, IllegalArgumentException, IllegalAccessException, InvocationTargetException, CannotCompileException {
@@ -0,0 +1,43 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.camel;
+
+/**
+ * Extracts the Id of the Entity from a Camel message.  Register an IdExtractor for a message class
+ * with {@link CamelBinder#registerIdExtractor(Class, IdExtractor)}, or declare it as a bean in the
+ * Application Context, to override the default extraction by way of the Id field
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface IdExtractor {
+	
+	/**
+	 * @param msg The message
+	 * @return The Id, or null if the message doesn't have one
+	 */
+	Object extractId(Object msg);
+	
+	/**
+	 * @return The message class of an IdExtractor bean.  Required when the IdExtractor is declared as a bean
+	 */
+	default Class<?> getMessageClass() {
+		return null;
+	}
+
+}
@@ -0,0 +1,237 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.camel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.statefulj.fsm.TooBusyException;
+
+/**
+ * Dispatches events onto a fixed number of single threaded lanes, selected by the hash of the 
+ * Entity's Id.  Events for the same Entity are processed in order on the same lane, so 
+ * concurrent consumers don't race on the same Entity, whilst different Entities are processed 
+ * in parallel.  The caller waits for the event to be processed, so errors propagate back to the 
+ * route.  Events without an Id, or dispatched from a lane, are processed on the calling thread.
+ * Each lane queues a bounded number of events; once full, events are rejected with a TooBusyException.
+ * Declare a PartitionedDispatcher bean for the generated Camel Consumers to dispatch through it
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class PartitionedDispatcher implements DisposableBean {
+	
+	private static final ThreadLocal<Boolean> onLane = new ThreadLocal<Boolean>();
+	
+	private ExecutorService[] lanes;
+	
+	private AtomicInteger[] depths;
+	
+	private AtomicLong[] counts;
+	
+	static final int DEFAULT_LANE_CAPACITY = 1024;
+	
+	/**
+	 * @param laneCnt The number of lanes, each queueing up to {@value #DEFAULT_LANE_CAPACITY} events
+	 */
+	public PartitionedDispatcher(int laneCnt) {
+		this(laneCnt, DEFAULT_LANE_CAPACITY);
+	}
+	
+	/**
+	 * @param laneCnt The number of lanes
+	 * @param laneCapacity The maximum number of events queued per lane
+	 */
+	public PartitionedDispatcher(int laneCnt, int laneCapacity) {
+		if (laneCnt < 1) {
+			throw new IllegalArgumentException("There must be at least one lane");
+		}
+		this.lanes = new ExecutorService[laneCnt];
+		this.depths = new AtomicInteger[laneCnt];
+		this.counts = new AtomicLong[laneCnt];
+		for(int i = 0; i < laneCnt; i++) {
+			final String name = "statefulj-camel-lane-" + i;
+			this.lanes[i] = new ThreadPoolExecutor(
+					1, 
+					1, 
+					0L, 
+					TimeUnit.MILLISECONDS, 
+					new ArrayBlockingQueue<Runnable>(laneCapacity), 
+					new ThreadFactory() {
+				
+						@Override
+						public Thread newThread(final Runnable r) {
+							Thread thread = new Thread(new Runnable() {
+						
+								@Override
+								public void run() {
+									onLane.set(true);
+									r.run();
+								}
+							}, name);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			this.depths[i] = new AtomicInteger();
+			this.counts[i] = new AtomicLong();
+		}
+	}
+	
+	/**
+	 * Process the event on the lane of the Id and wait for the result
+	 * 
+	 * @param id The Id of the Entity, may be null
+	 * @param event The event processing
+	 * @return The result of the event
+	 * @throws TooBusyException
+	 */
+	public <V> V dispatch(Object id, Callable<V> event) throws TooBusyException {
+		if (id == null || Boolean.TRUE.equals(onLane.get())) {
+			return call(event);
+		}
+		return await(submit(getLane(id), event));
+	}
+	
+	/**
+	 * Process the event on the lane, returning immediately
+	 * 
+	 * @param lane The lane
+	 * @param event The event processing
+	 * @return The Future result of the event
+	 * @throws TooBusyException if the lane is full
+	 */
+	public <V> Future<V> submit(final int lane, final Callable<V> event) throws TooBusyException {
+		this.depths[lane].incrementAndGet();
+		try {
+			return this.lanes[lane].submit(new Callable<V>() {
+	
+				@Override
+				public V call() throws Exception {
+					try {
+						return event.call();
+					} finally {
+						depths[lane].decrementAndGet();
+						counts[lane].incrementAndGet();
+					}
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			this.depths[lane].decrementAndGet();
+			throw new TooBusyException();
+		}
+	}
+	
+	/**
+	 * Wait for the result of a submitted event, rethrowing its failure
+	 */
+	public <V> V await(Future<V> future) throws TooBusyException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TooBusyException) {
+				throw (TooBusyException)e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error)e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * @return Whether the caller is already processing on a lane
+	 */
+	public boolean isOnLane() {
+		return Boolean.TRUE.equals(onLane.get());
+	}
+	
+	/**
+	 * @param id The Id of the Entity, converted to the type of the Entity's Id so that the same 
+	 * Entity always hashes to the same lane
+	 * @return The lane of the Entity
+	 */
+	public int getLane(Object id) {
+		return (id.hashCode() & Integer.MAX_VALUE) % this.lanes.length;
+	}
+
+	public int getLaneCnt() {
+		return this.lanes.length;
+	}
+	
+	/**
+	 * @return The number of events queued or processing, per lane
+	 */
+	public int[] getLaneDepths() {
+		int[] depths = new int[this.depths.length];
+		for(int i = 0; i < depths.length; i++) {
+			depths[i] = this.depths[i].get();
+		}
+		return depths;
+	}
+
+	/**
+	 * @return The number of events processed, per lane
+	 */
+	public long[] getLaneCounts() {
+		long[] counts = new long[this.counts.length];
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] = this.counts[i].get();
+		}
+		return counts;
+	}
+	
+	public void shutdown() {
+		for(ExecutorService lane : this.lanes) {
+			lane.shutdown();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		shutdown();
+	}
+	
+	private <V> V call(Callable<V> event) throws TooBusyException {
+		try {
+			return event.call();
+		} catch (TooBusyException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
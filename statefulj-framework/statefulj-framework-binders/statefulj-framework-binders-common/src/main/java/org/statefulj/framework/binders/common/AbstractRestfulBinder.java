@@ -62,7 +62,7 @@ public abstract class AbstractRestfulBinder implements EndpointBinder {
 	
 	private final Pattern methodPattern = Pattern.compile("(([^:]*):)?(.*)");
 	
-	private final String HARNESS_VAR = "harness";
+	protected final String HARNESS_VAR = "harness";
 	private final String GET = "GET";
 	
 	private LocalVariableTableParameterNameDiscoverer parmDiscover = new LocalVariableTableParameterNameDiscoverer();
@@ -79,6 +79,16 @@ public abstract class AbstractRestfulBinder implements EndpointBinder {
 			IllegalArgumentException, IllegalAccessException,
 			InvocationTargetException {
 		
+		// Use the Proxy Class if it was generated at build time
+		//
+		String proxyClassName = statefulControllerClass.getName() + getSuffix();
+		String stamp = getStamp(proxyClassName, idType, isDomainEntity, eventMapping, refFactory);
+		Class<?> proxyClass = loadPregeneratedClass(proxyClassName, statefulControllerClass, stamp);
+		if (proxyClass != null) {
+			logger.debug("Using pregenerated proxy {}", proxyClassName);
+			return proxyClass;
+		}
+		
 		logger.debug("Building proxy for {}", statefulControllerClass);
 		
 		// Set up the ClassPool
@@ -86,21 +96,20 @@ public abstract class AbstractRestfulBinder implements EndpointBinder {
 		ClassPool cp = ClassPool.getDefault();
 		cp.appendClassPath(new ClassClassPath(getClass()));
 
-		// Create a new Proxy Class 
-		//
-		String proxyClassName = statefulControllerClass.getName() + getSuffix();
-		
 		// Construct and return the Proxy Class
 		//
-		return buildProxy(
-				cp,
-				beanName, 
-				proxyClassName,
+		return toClass(
+				buildProxy(
+					cp,
+					beanName, 
+					proxyClassName,
+					statefulControllerClass,
+					idType,
+					isDomainEntity,
+					eventMapping, 
+					refFactory),
 				statefulControllerClass,
-				idType,
-				isDomainEntity,
-				eventMapping, 
-				refFactory).toClass();
+				stamp);
 	}
 	
 	protected CtClass buildProxy(
@@ -0,0 +1,224 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.statefulj.fsm.BlockedException;
+import org.statefulj.fsm.FSM;
+import org.statefulj.fsm.PersisterAsyncAdapter;
+import org.statefulj.fsm.TooBusyException;
+
+/**
+ * Processes the events of the asynchronous Binders on a bounded pool.  Once the pool and its queue 
+ * are full, events fail with a TooBusyException rather than queueing without limit.  An event waiting 
+ * on a blocking State doesn't hold a thread whilst it waits: the event is rescheduled once the wait 
+ * has elapsed and completes once the State clears.
+ * <p>
+ * The generated endpoints use the AsyncExecutor bean of the Application Context if one is declared, 
+ * otherwise they share a default pool of {@value #DEFAULT_POOL_SIZE} threads
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class AsyncExecutor implements DisposableBean {
+	
+	public static final int DEFAULT_POOL_SIZE = 16;
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	public static final int DEFAULT_MAX_WAITS = 20;
+	
+	private static Logger logger = LoggerFactory.getLogger(AsyncExecutor.class);
+	
+	private static AsyncExecutor defaultExecutor;
+	
+	private ExecutorService executor;
+	
+	private ScheduledExecutorService scheduler;
+	
+	private Long timeout;
+	
+	private int maxWaits = DEFAULT_MAX_WAITS;
+
+	/**
+	 * The outcome of an event, such as a suspended request
+	 */
+	public interface Completion {
+		
+		/**
+		 * @return Whether the outcome is already known, for example the request has timed out
+		 */
+		boolean isDone();
+		
+		void complete(Object result);
+		
+		void fail(Throwable t);
+	}
+	
+	public AsyncExecutor() {
+		this(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	/**
+	 * @param poolSize Number of threads processing events
+	 * @param queueCapacity Maximum number of pending events
+	 */
+	public AsyncExecutor(int poolSize, int queueCapacity) {
+		this.executor = PersisterAsyncAdapter.newBoundedExecutor("statefulj-async-binder", poolSize, queueCapacity);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "statefulj-async-binder-wait");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * @return The AsyncExecutor shared by endpoints without an AsyncExecutor bean
+	 */
+	public static synchronized AsyncExecutor getDefault() {
+		if (defaultExecutor == null) {
+			defaultExecutor = new AsyncExecutor();
+		}
+		return defaultExecutor;
+	}
+	
+	/**
+	 * @param executor The injected AsyncExecutor, may be null
+	 * @return The injected AsyncExecutor, or the default if none was injected
+	 */
+	public static AsyncExecutor resolve(AsyncExecutor executor) {
+		return (executor != null) ? executor : getDefault();
+	}
+
+	/**
+	 * @return The timeout, in milliseconds, of a request.  If null, the timeout is left to the container
+	 */
+	public Long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(Long timeout) {
+		this.timeout = timeout;
+	}
+
+	public int getMaxWaits() {
+		return maxWaits;
+	}
+
+	/**
+	 * @param maxWaits The number of times an event waits on a blocking State before failing with 
+	 * a TooBusyException
+	 */
+	public void setMaxWaits(int maxWaits) {
+		this.maxWaits = maxWaits;
+	}
+
+	/**
+	 * Process the event on the pool.  If the event is blocked, it's rescheduled once the wait has 
+	 * elapsed, unless the Completion is done by then
+	 * 
+	 * @param event The event processing
+	 * @param completion Completed with the result or failure of the event
+	 */
+	public void execute(Callable<Object> event, Completion completion) {
+		attempt(event, completion, 0);
+	}
+	
+	/**
+	 * Shutdown the pool, pending events will be completed
+	 */
+	public void shutdown() {
+		this.scheduler.shutdown();
+		this.executor.shutdown();
+	}
+
+	@Override
+	public void destroy() {
+		shutdown();
+	}
+	
+	private void attempt(final Callable<Object> event, final Completion completion, final int waits) {
+		try {
+			this.executor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					if (completion.isDone()) {
+						return;
+					}
+					FSM.setDeferWaits(true);
+					try {
+						completion.complete(event.call());
+					} catch(Throwable t) {
+						
+						// The Harness may wrap the BlockedException, such as within a transaction
+						//
+						BlockedException blocked = getBlockedException(t);
+						if (blocked != null) {
+							reschedule(event, completion, waits + 1, blocked.getWait());
+						} else {
+							completion.fail(t);
+						}
+					} finally {
+						FSM.setDeferWaits(false);
+					}
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			logger.warn("Unable to process event, the pool is full");
+			completion.fail(new TooBusyException());
+		}
+	}
+	
+	private void reschedule(final Callable<Object> event, final Completion completion, final int waits, int wait) {
+		if (waits > this.maxWaits) {
+			completion.fail(new TooBusyException());
+			return;
+		}
+		try {
+			this.scheduler.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					attempt(event, completion, waits);
+				}
+			}, wait, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException e) {
+			completion.fail(new TooBusyException());
+		}
+	}
+	
+	private static BlockedException getBlockedException(Throwable t) {
+		while (t != null && !(t instanceof BlockedException)) {
+			t = t.getCause();
+		}
+		return (BlockedException)t;
+	}
+}
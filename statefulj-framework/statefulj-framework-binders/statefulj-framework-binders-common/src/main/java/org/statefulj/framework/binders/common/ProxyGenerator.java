@@ -0,0 +1,94 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.common;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.statefulj.framework.core.StatefulFactory;
+
+/**
+ * Generates the Binder Proxies at build time, so that they're loaded at startup rather than 
+ * generated with Javassist.  The bean definitions of the Spring configuration are loaded, without 
+ * instantiating any beans, and the StatefulFactory is run against them - writing each Proxy class 
+ * into the output directory.  At runtime, the Binders fall back to Javassist for any Proxy that 
+ * wasn't generated.  The Proxies reference the beans of the framework by name, so must be generated 
+ * from the same configuration as is deployed.
+ * 
+ * For example, with the exec-maven-plugin in the process-classes phase:
+ * 
+ * <pre>
+ * &lt;mainClass&gt;org.statefulj.framework.binders.common.ProxyGenerator&lt;/mainClass&gt;
+ * &lt;arguments&gt;
+ *   &lt;argument&gt;${project.build.outputDirectory}&lt;/argument&gt;
+ *   &lt;argument&gt;classpath:applicationContext.xml&lt;/argument&gt;
+ * &lt;/arguments&gt;
+ * </pre>
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ProxyGenerator {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ProxyGenerator.class);
+	
+	private static volatile File outputDirectory;
+	
+	/**
+	 * @param args The output directory, followed by the locations of the Spring configuration
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: ProxyGenerator <outputDirectory> <configLocation>...");
+			System.exit(1);
+		}
+		String[] configLocations = new String[args.length - 1];
+		System.arraycopy(args, 1, configLocations, 0, configLocations.length);
+		generate(new File(args[0]), configLocations);
+	}
+	
+	/**
+	 * Generate the Proxies of the StatefulControllers defined by the Spring configuration
+	 * 
+	 * @param outputDirectory The directory the class files are written to
+	 * @param configLocations The locations of the Spring XML configuration
+	 */
+	public static synchronized void generate(File outputDirectory, String... configLocations) {
+		logger.info("Generating Proxies into {}", outputDirectory);
+		
+		DefaultListableBeanFactory reg = new DefaultListableBeanFactory();
+		new XmlBeanDefinitionReader(reg).loadBeanDefinitions(configLocations);
+		
+		ProxyGenerator.outputDirectory = outputDirectory;
+		try {
+			new StatefulFactory().postProcessBeanDefinitionRegistry(reg);
+		} finally {
+			ProxyGenerator.outputDirectory = null;
+		}
+	}
+
+	/**
+	 * @return The output directory whilst generating, else null
+	 */
+	public static File getOutputDirectory() {
+		return outputDirectory;
+	}
+}
@@ -17,24 +17,47 @@
  */
 package org.statefulj.framework.binders.common.utils;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Resource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.statefulj.framework.binders.common.AsyncExecutor;
+import org.statefulj.framework.binders.common.ProxyGenerator;
 import org.statefulj.framework.core.annotations.Transition;
 import org.statefulj.framework.core.annotations.Transitions;
+import org.statefulj.framework.core.model.ReferenceFactory;
 
+import javassist.CannotCompileException;
+import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtField;
 import javassist.CtMethod;
+import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
 import javassist.bytecode.ClassFile;
 import javassist.bytecode.ConstPool;
+import javassist.bytecode.ConstantAttribute;
 import javassist.bytecode.FieldInfo;
 import javassist.bytecode.MethodInfo;
 import javassist.bytecode.annotation.Annotation;
@@ -54,6 +77,208 @@ import javassist.bytecode.annotation.StringMemberValue;
 
 public class JavassistUtils {
 	
+	/**
+	 * Name of the static field holding the stamp of the event mapping a Proxy was generated from
+	 */
+	public static final String STAMP_FIELD = "STATEFULJ_STAMP";
+	
+	/**
+	 * Version of the generated Proxies, part of every stamp.  Increment it whenever a change to the 
+	 * Binders changes the Proxies they generate, so that pregenerated Proxies are regenerated
+	 */
+	public static final int GENERATOR_VERSION = 2;
+	
+	private static final Logger logger = LoggerFactory.getLogger(JavassistUtils.class);
+	
+	// Stamps of the Proxies generated within this JVM
+	//
+	private static final Map<String, String> generated = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * Compute the stamp of everything a Proxy is generated from, including the annotations of the 
+	 * Stateful Controller's methods and their parameters, as these are copied onto the Proxy
+	 * 
+	 * @param proxyClassName The name of the Proxy class
+	 * @param idType The type of the Entity's id
+	 * @param isDomainEntity Whether the Stateful Controller is a Domain Entity
+	 * @param eventMapping The mapping of events to the Stateful Controller's methods
+	 * @param refFactory The ReferenceFactory of the Stateful Controller
+	 * @return The stamp
+	 */
+	public static String getStamp(
+			String proxyClassName, 
+			Class<?> idType, 
+			boolean isDomainEntity, 
+			Map<String, Method> eventMapping, 
+			ReferenceFactory refFactory) {
+		StringBuilder sb = new StringBuilder(proxyClassName)
+			.append(';').append(GENERATOR_VERSION)
+			.append(';').append((idType == null) ? "" : idType.getName())
+			.append(';').append(isDomainEntity)
+			.append(';').append(refFactory.getFSMHarnessId());
+		for(Map.Entry<String, Method> entry : new TreeMap<String, Method>(eventMapping).entrySet()) {
+			Method method = entry.getValue();
+			sb.append(';').append(entry.getKey()).append('=');
+			if (method != null) {
+				sb.append(method.toGenericString());
+				appendAnnotations(sb, method.getDeclaredAnnotations());
+				for(java.lang.annotation.Annotation[] parmAnnotations : method.getParameterAnnotations()) {
+					sb.append('|');
+					appendAnnotations(sb, parmAnnotations);
+				}
+			}
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return String.format("%040x", new BigInteger(1, digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8))));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Append the annotations, sorted, with their members sorted by name - neither order is defined 
+	 * by reflection
+	 */
+	private static void appendAnnotations(StringBuilder sb, java.lang.annotation.Annotation[] annotations) {
+		List<String> descriptors = new ArrayList<String>();
+		for(java.lang.annotation.Annotation annotation : annotations) {
+			Map<String, String> members = new TreeMap<String, String>();
+			for(Method member : annotation.annotationType().getDeclaredMethods()) {
+				try {
+					member.setAccessible(true);
+					members.put(member.getName(), Arrays.deepToString(new Object[]{ member.invoke(annotation) }));
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException(e);
+				} catch (InvocationTargetException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			descriptors.add("@" + annotation.annotationType().getName() + members);
+		}
+		Collections.sort(descriptors);
+		for(String descriptor : descriptors) {
+			sb.append(descriptor);
+		}
+	}
+	
+	/**
+	 * Load the Proxy class if it was generated at build time by the {@link ProxyGenerator}, or 
+	 * has already been generated.  A Proxy generated at build time is only used if its stamp 
+	 * matches, otherwise it is regenerated.  Whilst the ProxyGenerator is running, the Proxy is always 
+	 * regenerated
+	 * 
+	 * @param proxyClassName The name of the Proxy class
+	 * @param ownerClass The class the Proxy is generated for, whose ClassLoader is searched
+	 * @param stamp The stamp of the event mapping, see {@link #getStamp}
+	 * @return The Proxy class or null if it has to be generated
+	 */
+	public static Class<?> loadPregeneratedClass(String proxyClassName, Class<?> ownerClass, String stamp) {
+		if (ProxyGenerator.getOutputDirectory() != null) {
+			return null;
+		}
+		
+		// If it wasn't generated within this JVM, validate the class file before it's loaded 
+		// so that a stale Proxy can still be redefined
+		//
+		if (!generated.containsKey(proxyClassName)) {
+			String pregeneratedStamp = null;
+			try {
+				pregeneratedStamp = readStamp(proxyClassName, ownerClass.getClassLoader());
+			} catch(IOException e) {
+				logger.warn("Unable to read pregenerated Proxy {}", proxyClassName, e);
+			}
+			if (pregeneratedStamp == null) {
+				return null;
+			}
+			if (!pregeneratedStamp.equals(stamp)) {
+				logger.warn("Pregenerated Proxy {} is stale, regenerating", proxyClassName);
+				return null;
+			}
+		}
+		try {
+			return Class.forName(proxyClassName, false, ownerClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Load the generated Proxy class, stamped with the event mapping, and release it from the 
+	 * ClassPool.  Whilst the {@link ProxyGenerator} is running, the class file is written to its 
+	 * output directory
+	 * 
+	 * @param proxyClass The generated Proxy class
+	 * @param ownerClass The class the Proxy is generated for
+	 * @param stamp The stamp of the event mapping, see {@link #getStamp}
+	 * @return The Proxy class
+	 * @throws CannotCompileException
+	 */
+	public static Class<?> toClass(CtClass proxyClass, Class<?> ownerClass, String stamp) throws CannotCompileException {
+		try {
+			CtField stampField = CtField.make(
+					"public static final String " + STAMP_FIELD + ";", 
+					proxyClass);
+			proxyClass.addField(stampField, CtField.Initializer.constant(stamp));
+			
+			File outputDirectory = ProxyGenerator.getOutputDirectory();
+			if (outputDirectory == null) {
+				Class<?> clazz = proxyClass.toClass();
+				generated.put(proxyClass.getName(), stamp);
+				return clazz;
+			}
+			
+			try {
+				proxyClass.writeFile(outputDirectory.getAbsolutePath());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			
+			// Don't redefine a Proxy which is already loaded
+			//
+			try {
+				return Class.forName(proxyClass.getName(), false, ownerClass.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				Class<?> clazz = proxyClass.toClass();
+				generated.put(proxyClass.getName(), stamp);
+				return clazz;
+			}
+		} finally {
+			
+			// Release the Proxy from the ClassPool
+			//
+			proxyClass.detach();
+		}
+	}
+	
+	/**
+	 * Read the stamp from a class file without loading it
+	 * 
+	 * @param className The name of the class
+	 * @param classLoader The ClassLoader the class file is located with
+	 * @return The stamp or null if there is no class file or it isn't stamped
+	 * @throws IOException
+	 */
+	private static String readStamp(String className, ClassLoader classLoader) throws IOException {
+		InputStream in = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+		if (in == null) {
+			return null;
+		}
+		try {
+			ClassFile classFile = new ClassFile(new DataInputStream(in));
+			for(Object obj : classFile.getFields()) {
+				FieldInfo field = (FieldInfo)obj;
+				if (STAMP_FIELD.equals(field.getName()) && Modifier.isStatic(field.getAccessFlags())) {
+					ConstantAttribute value = (ConstantAttribute)field.getAttribute(ConstantAttribute.tag);
+					return (value == null) ? null : classFile.getConstPool().getStringInfo(value.getConstantValue());
+				}
+			}
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+	
 	public static void addClassAnnotation(CtClass clazz, Class<?> annotationClass, Object... values) {
 		ClassFile ccFile = clazz.getClassFile();
 		ConstPool constPool = ccFile.getConstPool();
@@ -128,6 +353,40 @@ public class JavassistUtils {
 		fi.addAttribute(attr);
 	}
 	
+	/**
+	 * Add a member variable referencing the {@link AsyncExecutor} bean.  If there isn't one, the 
+	 * member variable is left null and the default AsyncExecutor applies
+	 * 
+	 * @param proxyClass The Proxy class
+	 * @param fieldName The name of the member variable
+	 * @param cp The ClassPool
+	 * @throws NotFoundException
+	 * @throws CannotCompileException
+	 */
+	public static void addAsyncExecutorReference(CtClass proxyClass, String fieldName, ClassPool cp) throws NotFoundException, CannotCompileException {
+		CtField field = new CtField(cp.get(AsyncExecutor.class.getName()), fieldName, proxyClass);
+		addOptionalAutowiredAnnotation(field);
+		proxyClass.addField(field);
+	}
+	
+	/**
+	 * Annotate the field to be autowired by type, if a matching bean exists
+	 * 
+	 * @param field The field
+	 */
+	public static void addOptionalAutowiredAnnotation(CtField field) {
+		FieldInfo fi = field.getFieldInfo();
+		
+		AnnotationsAttribute attr = new AnnotationsAttribute(
+				fi.getConstPool(), 
+				AnnotationsAttribute.visibleTag);
+		Annotation annot = new Annotation(Autowired.class.getName(), fi.getConstPool());
+		annot.addMemberValue("required", new BooleanMemberValue(false, fi.getConstPool()));
+		
+		attr.addAnnotation(annot);
+		fi.addAttribute(attr);
+	}
+	
 	public static void addMethodAnnotations(CtMethod ctMethod, Method method) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
 		if (method != null) {
 			MethodInfo methodInfo = ctMethod.getMethodInfo();
@@ -0,0 +1,200 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.jersey;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.ParameterAnnotationsAttribute;
+import javassist.bytecode.annotation.Annotation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.framework.binders.common.AsyncExecutor;
+import org.statefulj.framework.core.model.FSMHarness;
+import org.statefulj.fsm.TooBusyException;
+
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.*;
+
+/**
+ * An asynchronous Jersey Binder, bound to events prefixed with "jersey-async:".  The resource 
+ * methods take a @Suspended AsyncResponse, which the {@link AsyncExecutor} resumes with the result 
+ * of the event.  A request for an Entity in a blocking State is resumed once the State clears.  
+ * If the AsyncExecutor has a timeout, a response that hasn't been resumed by then is resumed with 
+ * a TooBusyException, otherwise the response doesn't time out
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class AsyncJerseyBinder extends JerseyBinder {
+	
+	public final static String KEY = "jersey-async";
+	
+	private static Logger logger = LoggerFactory.getLogger(AsyncJerseyBinder.class);
+
+	private final String ASYNC_JERSEY_SUFFIX = "AsyncJerseyBinder";
+	
+	private final String EXECUTOR_VAR = "asyncExecutor";
+
+	@Override
+	public String getKey() {
+		return KEY;
+	}
+
+	/**
+	 * Process the event on the AsyncExecutor and resume the AsyncResponse, which is the last parameter, 
+	 * with the result or the error
+	 * 
+	 * @param executor The AsyncExecutor bean, or null for the default AsyncExecutor
+	 * @param harness The FSMHarness
+	 * @param event The event
+	 * @param referencesId Whether the first parameter is the Id of the Entity
+	 * @param args The parameters of the request, followed by the AsyncResponse
+	 */
+	public static void dispatch(
+			AsyncExecutor executor,
+			final FSMHarness harness, 
+			final String event, 
+			final boolean referencesId,
+			Object[] args) {
+		
+		executor = AsyncExecutor.resolve(executor);
+		final AsyncResponse response = (AsyncResponse)args[args.length - 1];
+		final Object[] parms = Arrays.copyOf(args, args.length - 1);
+		
+		Long timeout = executor.getTimeout();
+		if (timeout != null) {
+			response.setTimeoutHandler(new TimeoutHandler() {
+				
+				@Override
+				public void handleTimeout(AsyncResponse asyncResponse) {
+					logger.warn("Timed out processing event {}", event);
+					asyncResponse.resume(new TooBusyException());
+				}
+			});
+			response.setTimeout(timeout, TimeUnit.MILLISECONDS);
+		}
+		
+		executor.execute(
+				new Callable<Object>() {
+		
+					@Override
+					public Object call() throws Exception {
+						return (referencesId)
+								? harness.onEvent(event, parms)
+								: harness.onEvent(event, null, parms);
+					}
+				}, 
+				new AsyncExecutor.Completion() {
+					
+					@Override
+					public boolean isDone() {
+						return response.isDone();
+					}
+					
+					@Override
+					public void complete(Object value) {
+						response.resume(value);
+					}
+					
+					@Override
+					public void fail(Throwable t) {
+						response.resume(t);
+					}
+				});
+	}
+
+	/**
+	 * Add the member variable referencing the AsyncExecutor bean, if there is one, along with the 
+	 * FSMHarness
+	 */
+	@Override
+	protected void addFSMHarnessReference(CtClass proxyClass, String fsmHarnessId, ClassPool cp) throws NotFoundException, CannotCompileException {
+		super.addFSMHarnessReference(proxyClass, fsmHarnessId, cp);
+		addAsyncExecutorReference(proxyClass, EXECUTOR_VAR, cp);
+	}
+
+	@Override
+	protected CtMethod createRequestMethod(
+			CtClass proxyClass, 
+			String requestMethod, 
+			String requestEvent, 
+			Method method, 
+			ClassPool cp) throws NotFoundException {
+		CtMethod ctMethod = super.createRequestMethod(proxyClass, requestMethod, requestEvent, method, cp);
+		return new CtMethod(CtClass.voidType, ctMethod.getName(), null, proxyClass);
+	}
+
+	/**
+	 * Append the suspended AsyncResponse to the parameters
+	 */
+	@Override
+	protected void addRequestParameters(
+			boolean referencesId, 
+			Class<?> idType,
+			boolean isDomainEntity,
+			CtMethod ctMethod, 
+			Method method, 
+			ClassPool cp) throws NotFoundException, IllegalArgumentException, IllegalAccessException, InvocationTargetException, CannotCompileException {
+		
+		super.addRequestParameters(referencesId, idType, isDomainEntity, ctMethod, method, cp);
+		
+		ctMethod.addParameter(cp.get(AsyncResponse.class.getName()));
+
+		MethodInfo methodInfo = ctMethod.getMethodInfo();
+		ParameterAnnotationsAttribute paramAtrributeInfo = 
+				(ParameterAnnotationsAttribute)methodInfo.getAttribute(ParameterAnnotationsAttribute.visibleTag);
+		Annotation[][] paramArrays = paramAtrributeInfo.getAnnotations();
+		Annotation[][] asyncParamArrays = Arrays.copyOf(paramArrays, paramArrays.length + 1);
+		asyncParamArrays[paramArrays.length] = new Annotation[] {
+				new Annotation(
+						paramAtrributeInfo.getConstPool(), 
+						cp.get(Suspended.class.getName()))
+		};
+		paramAtrributeInfo.setAnnotations(asyncParamArrays);
+	}
+
+	@Override
+	protected void addRequestMethodBody(boolean referencesId, CtMethod ctMethod, String event) throws CannotCompileException, NotFoundException {
+		String methodBody = "{ " 
+				+ AsyncJerseyBinder.class.getName() + ".dispatch(this." + EXECUTOR_VAR + ", this." + HARNESS_VAR + ", \"" 
+				+ event 
+				+ "\", " + referencesId 
+				+ ", $args); }";
+
+		ctMethod.setBody(methodBody);
+	}
+
+	@Override
+	protected String getSuffix() {
+		return ASYNC_JERSEY_SUFFIX;
+	}
+}
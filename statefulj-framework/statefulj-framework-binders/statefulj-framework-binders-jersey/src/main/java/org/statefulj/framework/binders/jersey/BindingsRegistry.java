@@ -16,7 +16,9 @@ class BindingsRegistry {
 			bindings = new LinkedList<Class<?>>();
 			bindingsMap.put(pkg, bindings);
 		}
-		bindings.add(binding);
+		if (!bindings.contains(binding)) {
+			bindings.add(binding);
+		}
 	}
 	
 	static Map<String, List<Class<?>>> getBindingsMap() {
@@ -0,0 +1,172 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.reactive;
+
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.addResourceAnnotation;
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.getStamp;
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.loadPregeneratedClass;
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.toClass;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.framework.core.model.EndpointBinder;
+import org.statefulj.framework.core.model.FSMHarness;
+import org.statefulj.framework.core.model.ReferenceFactory;
+
+/**
+ * A non-blocking HTTP Binder, bound to events prefixed with "reactive:", e.g. "reactive:POST:/users/{id}/activate".  
+ * The generated Binder is a {@link ReactiveEndpoints} which is served by a {@link ReactiveServer}.  
+ * If the HTTP method is omitted, it defaults to GET
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ReactiveBinder implements EndpointBinder {
+	
+	public final static String KEY = "reactive";
+	
+	private static final Logger logger = LoggerFactory.getLogger(ReactiveBinder.class);
+	
+	private static final Map<String, List<Route>> routesMap = new ConcurrentHashMap<String, List<Route>>();
+
+	private static final Map<String, Class<?>> idTypeMap = new ConcurrentHashMap<String, Class<?>>();
+
+	private final Pattern methodPattern = Pattern.compile("(([^:]*):)?(.*)");
+	
+	private final String HARNESS_VAR = "harness";
+	
+	private final String GET = "GET";
+	
+	private final String REACTIVE_SUFFIX = "ReactiveBinder";
+	
+	@Override
+	public String getKey() {
+		return KEY;
+	}
+
+	@Override
+	public Class<?> bindEndpoints(
+			String beanName, 
+			Class<?> statefulControllerClass,
+			Class<?> idType, 
+			boolean isDomainEntity,
+			Map<String, Method> eventMapping, 
+			ReferenceFactory refFactory)
+			throws CannotCompileException, NotFoundException,
+			IllegalArgumentException, IllegalAccessException,
+			InvocationTargetException {
+		
+		logger.debug("Building proxy for {}", statefulControllerClass);
+		
+		String proxyClassName = statefulControllerClass.getName() + REACTIVE_SUFFIX;
+		
+		// Build the Routes - they are looked up by the Proxy on construction
+		//
+		int fixedParmCnt = (isDomainEntity) ? 1 : 2;
+		List<Route> routes = new LinkedList<Route>();
+		for(Map.Entry<String, Method> entry : eventMapping.entrySet()) {
+			routes.add(buildRoute(entry.getKey(), entry.getValue(), fixedParmCnt));
+		}
+		routesMap.put(proxyClassName, routes);
+		idTypeMap.put(proxyClassName, idType);
+		
+		// Use the Proxy Class if it was generated at build time
+		//
+		String stamp = getStamp(proxyClassName, idType, isDomainEntity, eventMapping, refFactory);
+		Class<?> pregenerated = loadPregeneratedClass(proxyClassName, statefulControllerClass, stamp);
+		if (pregenerated != null) {
+			logger.debug("Using pregenerated proxy {}", proxyClassName);
+			return pregenerated;
+		}
+		
+		// Set up the ClassPool
+		//
+		ClassPool cp = ClassPool.getDefault();
+		cp.appendClassPath(new ClassClassPath(getClass()));
+
+		// The Proxy extends ReactiveEndpoints, supplying the FSMHarness
+		//
+		CtClass proxyClass = cp.makeClass(proxyClassName, cp.get(ReactiveEndpoints.class.getName()));
+		
+		CtField field = new CtField(cp.get(FSMHarness.class.getName()), HARNESS_VAR, proxyClass);
+		addResourceAnnotation(field, refFactory.getFSMHarnessId());
+		proxyClass.addField(field);
+		
+		CtMethod getHarness = new CtMethod(
+				cp.get(FSMHarness.class.getName()), 
+				"getHarness", 
+				null, 
+				proxyClass);
+		getHarness.setBody("{ return this." + HARNESS_VAR + "; }");
+		proxyClass.addMethod(getHarness);
+
+		return toClass(proxyClass, statefulControllerClass, stamp);
+	}
+	
+	static List<Route> getRoutes(String proxyClassName) {
+		return routesMap.get(proxyClassName);
+	}
+
+	static Class<?> getIdType(String proxyClassName) {
+		return idTypeMap.get(proxyClassName);
+	}
+
+	private Route buildRoute(String event, Method method, int fixedParmCnt) {
+		Matcher matcher = this.methodPattern.matcher(event);
+		if (!matcher.matches()) {
+			throw new RuntimeException("Unable to parse event=" + event);
+		}
+		String httpMethod = (matcher.group(2) == null) ? GET : matcher.group(2).toUpperCase();
+		
+		// Skip over the Entity and event parameters of the Transition method
+		//
+		Class<?>[] parmTypes = 
+				(method == null || method.getParameterTypes().length <= fixedParmCnt) 
+				? new Class<?>[0]
+				: Arrays.copyOfRange(method.getParameterTypes(), fixedParmCnt, method.getParameterTypes().length);
+		
+		
+		// Only the request can be bound to the parameters
+		//
+		for(Class<?> parmType : parmTypes) {
+			if (!parmType.isAssignableFrom(ReactiveRequest.class)) {
+				throw new RuntimeException("Unable to bind parameter of type " + parmType.getName() + " for event=" + event);
+			}
+		}
+		
+		return new Route(httpMethod, matcher.group(3), event, parmTypes);
+	}
+}
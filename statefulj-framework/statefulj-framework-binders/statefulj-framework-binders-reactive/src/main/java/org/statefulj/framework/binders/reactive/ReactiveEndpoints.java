@@ -0,0 +1,123 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.reactive;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+
+import org.springframework.beans.SimpleTypeConverter;
+import org.statefulj.framework.binders.common.AsyncExecutor;
+import org.statefulj.framework.core.model.FSMHarness;
+
+/**
+ * The base class of the Reactive Binders generated for each StatefulController.  The 
+ * {@link ReactiveServer} matches a request against the Routes of each ReactiveEndpoints and 
+ * processes the event on an {@link AsyncExecutor}, completing a CompletableFuture with the result
+ * 
+ * @author Andrew Hall
+ *
+ */
+public abstract class ReactiveEndpoints {
+	
+	private final List<Route> routes;
+	
+	private final Class<?> idType;
+	
+	protected ReactiveEndpoints() {
+		List<Route> routes = ReactiveBinder.getRoutes(getClass().getName());
+		this.routes = (routes == null) ? Collections.<Route>emptyList() : routes;
+		this.idType = ReactiveBinder.getIdType(getClass().getName());
+	}
+	
+	protected abstract FSMHarness getHarness();
+	
+	public List<Route> getRoutes() {
+		return this.routes;
+	}
+
+	/**
+	 * Process the event of the matching Route on the AsyncExecutor
+	 * 
+	 * @param method The HTTP method
+	 * @param path The path of the request
+	 * @param request The request
+	 * @param executor The AsyncExecutor which processes the event
+	 * @return The CompletableFuture of the result, or null if no Route matches the request
+	 */
+	public CompletableFuture<Object> onEvent(
+			String method, 
+			String path, 
+			final ReactiveRequest request,
+			AsyncExecutor executor) {
+		
+		for(final Route route : this.routes) {
+			final Matcher matcher = route.match(method, path);
+			if (matcher != null) {
+				final CompletableFuture<Object> future = new CompletableFuture<Object>();
+				executor.execute(
+						new Callable<Object>() {
+							
+							@Override
+							public Object call() throws Exception {
+								return onEvent(route, matcher, request);
+							}
+						},
+						new AsyncExecutor.Completion() {
+							
+							@Override
+							public boolean isDone() {
+								return future.isDone();
+							}
+							
+							@Override
+							public void complete(Object result) {
+								future.complete(result);
+							}
+							
+							@Override
+							public void fail(Throwable t) {
+								future.completeExceptionally(t);
+							}
+						});
+				return future;
+			}
+		}
+		return null;
+	}
+	
+	protected Object onEvent(Route route, Matcher matcher, ReactiveRequest request) throws Exception {
+		
+		// The request is the context, followed by the parameters of the Transition method, which
+		// are all ReactiveRequests
+		//
+		Object[] parms = new Object[route.getParmTypes().length + 1];
+		Arrays.fill(parms, request);
+		
+		// Without an Id, the Factory creates a new Entity.  SimpleTypeConverter isn't thread safe, 
+		// so one is created per conversion
+		//
+		Object id = (route.referencesId()) 
+				? new SimpleTypeConverter().convertIfNecessary(route.getId(matcher), this.idType)
+				: null;
+		return getHarness().onEvent(route.getEvent(), id, parms);
+	}
+}
@@ -0,0 +1,134 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.reactive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HTTP request of a Reactive event.  The ReactiveRequest is passed as the context to the 
+ * Finder and Factory, and as any parameter of the {@link org.statefulj.framework.core.annotations.Transition} 
+ * method that is of type ReactiveRequest.  A body supplied as a stream is read when first requested, 
+ * so it's read by the thread processing the event rather than the event loop
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ReactiveRequest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private String method;
+	
+	private String path;
+	
+	private String query;
+	
+	private Map<String, List<String>> headers;
+	
+	private byte[] body;
+	
+	private InputStream bodyStream;
+	
+	public ReactiveRequest(
+			String method, 
+			String path, 
+			String query,
+			Map<String, List<String>> headers, 
+			byte[] body) {
+		this.method = method;
+		this.path = path;
+		this.query = query;
+		this.headers = (headers == null) ? Collections.<String, List<String>>emptyMap() : headers;
+		this.body = (body == null) ? new byte[0] : body;
+	}
+	
+	public ReactiveRequest(
+			String method, 
+			String path, 
+			String query,
+			Map<String, List<String>> headers, 
+			InputStream bodyStream) {
+		this.method = method;
+		this.path = path;
+		this.query = query;
+		this.headers = (headers == null) ? Collections.<String, List<String>>emptyMap() : headers;
+		this.bodyStream = bodyStream;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @param name The name of the header
+	 * @return The first value of the header, or null if not present
+	 */
+	public String getHeader(String name) {
+		for(Map.Entry<String, List<String>> entry : this.headers.entrySet()) {
+			if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)) {
+				List<String> values = entry.getValue();
+				return (values == null || values.isEmpty()) ? null : values.get(0);
+			}
+		}
+		return null;
+	}
+
+	public synchronized byte[] getBody() {
+		if (this.body == null) {
+			this.body = read(this.bodyStream);
+		}
+		return this.body;
+	}
+
+	public String getBodyAsString() {
+		return new String(getBody(), UTF8);
+	}
+	
+	private byte[] read(InputStream in) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int len;
+			while((len = in.read(buffer)) != -1) {
+				out.write(buffer, 0, len);
+			}
+			in.close();
+			return out.toByteArray();
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.reactive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.statefulj.framework.binders.common.AsyncExecutor;
+import org.statefulj.fsm.TooBusyException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server for the {@link ReactiveEndpoints}.  Requests are accepted by a small 
+ * pool of event loop threads, which route the request and hand the event off to an {@link AsyncExecutor}, 
+ * returning immediately - the request body is read and the response is written by the worker, so 
+ * the event loop threads are never blocked on the FSM.  The FSMHarness is synchronous, so each 
+ * event holds a worker whilst it's processed, but not whilst it waits on a blocking State.  The 
+ * AsyncExecutor is bounded, once full requests are rejected with 503.  Unless an AsyncExecutor is 
+ * set, the server creates its own, which is shut down when the server is stopped.
+ * 
+ * The result of the event is written as text, a null result as 204; a TooBusyException is 
+ * mapped to 503 and any other error to 500.
+ * 
+ * Started with {@link #start()} and stopped with {@link #stop()}, e.g. as the init-method and 
+ * destroy-method of the bean
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ReactiveServer implements ApplicationContextAware {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ReactiveServer.class);
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private ApplicationContext appContext;
+	
+	private String host;
+	
+	private int port = 8080;
+	
+	private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+	
+	private int backlog = 0;
+	
+	private AsyncExecutor executor;
+	
+	private boolean ownsExecutor = false;
+	
+	private ExecutorService eventLoop;
+	
+	private HttpServer server;
+	
+	private volatile List<ReactiveEndpoints> endpoints;
+
+	@Override
+	public void setApplicationContext(ApplicationContext appContext) throws BeansException {
+		this.appContext = appContext;
+	}
+
+	public synchronized void start() {
+		if (this.server != null) {
+			return;
+		}
+		if (this.executor == null) {
+			this.executor = new AsyncExecutor();
+			this.ownsExecutor = true;
+		}
+		this.eventLoop = Executors.newFixedThreadPool(this.eventLoopThreads, new ThreadFactory() {
+			
+			private AtomicInteger threadCnt = new AtomicInteger(0);
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "statefulj-reactive-loop-" + threadCnt.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		InetSocketAddress address = (this.host == null) 
+				? new InetSocketAddress(this.port) 
+				: new InetSocketAddress(this.host, this.port);
+		try {
+			this.server = HttpServer.create(address, this.backlog);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.server.setExecutor(this.eventLoop);
+		this.server.createContext("/", new HttpHandler() {
+			
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				ReactiveServer.this.handle(exchange);
+			}
+		});
+		this.server.start();
+		
+		logger.info("Reactive server listening on port {}", getPort());
+	}
+	
+	public synchronized void stop() {
+		if (this.server != null) {
+			this.server.stop(0);
+			this.eventLoop.shutdown();
+			this.server = null;
+			if (this.ownsExecutor) {
+				this.executor.shutdown();
+				this.executor = null;
+				this.ownsExecutor = false;
+			}
+		}
+	}
+
+	/**
+	 * @return The port the server is listening on, which is resolved if the port was 0
+	 */
+	public int getPort() {
+		HttpServer server = this.server;
+		return (server == null) ? this.port : server.getAddress().getPort();
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getEventLoopThreads() {
+		return eventLoopThreads;
+	}
+
+	public void setEventLoopThreads(int eventLoopThreads) {
+		this.eventLoopThreads = eventLoopThreads;
+	}
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	public AsyncExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Set the AsyncExecutor which processes the events, which is left running when the server is stopped
+	 * 
+	 * @param executor
+	 */
+	public void setExecutor(AsyncExecutor executor) {
+		this.executor = executor;
+	}
+
+	protected void handle(final HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		ReactiveRequest request = new ReactiveRequest(
+				method,
+				path,
+				exchange.getRequestURI().getRawQuery(),
+				exchange.getRequestHeaders(),
+				exchange.getRequestBody());
+		
+		CompletableFuture<Object> future = null;
+		for(ReactiveEndpoints endpoint : getEndpoints()) {
+			future = endpoint.onEvent(method, path, request, this.executor);
+			if (future != null) {
+				break;
+			}
+		}
+		
+		if (future == null) {
+			try {
+				respond(exchange, 404, "No route for " + method + " " + path);
+			} finally {
+				exchange.close();
+			}
+			return;
+		}
+		
+		// Respond once the event completes, on the completing thread
+		//
+		future.whenComplete(new BiConsumer<Object, Throwable>() {
+
+			@Override
+			public void accept(Object result, Throwable t) {
+				try {
+					if (t != null) {
+						t = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+						if (t instanceof TooBusyException) {
+							respond(exchange, 503, "Too busy");
+						} else {
+							logger.error("Unable to process event", t);
+							respond(exchange, 500, String.valueOf(t.getMessage()));
+						}
+					} else if (result == null) {
+						respond(exchange, 204, null);
+					} else {
+						respond(exchange, 200, result.toString());
+					}
+				} catch(IOException e) {
+					logger.warn("Unable to write the response", e);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	private List<ReactiveEndpoints> getEndpoints() {
+		if (this.endpoints == null) {
+			synchronized(this) {
+				if (this.endpoints == null) {
+					this.endpoints = new ArrayList<ReactiveEndpoints>(
+							this.appContext.getBeansOfType(ReactiveEndpoints.class).values());
+				}
+			}
+		}
+		return this.endpoints;
+	}
+	
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			byte[] bytes = body.getBytes(UTF8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.flush();
+		}
+	}
+}
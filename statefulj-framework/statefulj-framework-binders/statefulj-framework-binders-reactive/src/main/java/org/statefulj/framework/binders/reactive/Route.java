@@ -0,0 +1,112 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.reactive;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maps an HTTP method and path onto an event.  The path may contain variables, e.g. "/users/{id}", 
+ * of which only the "{id}" variable is bound - to the Id of the Entity
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class Route {
+	
+	private static final Pattern VARIABLE = Pattern.compile("\\{([^}]+)\\}");
+	
+	private static final String ID = "id";
+	
+	private String httpMethod;
+	
+	private String event;
+	
+	private Pattern pattern;
+	
+	private int idGroup = -1;
+	
+	private Class<?>[] parmTypes;
+	
+	/**
+	 * @param httpMethod The HTTP method, e.g. GET
+	 * @param path The path, e.g. /users/{id}
+	 * @param event The event
+	 * @param parmTypes The types of the parameters passed to the Transition method
+	 */
+	public Route(String httpMethod, String path, String event, Class<?>[] parmTypes) {
+		this.httpMethod = httpMethod;
+		this.event = event;
+		this.parmTypes = parmTypes;
+		
+		// Convert the path into a regex, capturing each variable
+		//
+		StringBuilder regex = new StringBuilder();
+		Matcher matcher = VARIABLE.matcher(path);
+		int end = 0;
+		int group = 0;
+		while(matcher.find()) {
+			regex.append(Pattern.quote(path.substring(end, matcher.start())));
+			regex.append("([^/]+)");
+			group++;
+			if (ID.equals(matcher.group(1))) {
+				this.idGroup = group;
+			}
+			end = matcher.end();
+		}
+		regex.append(Pattern.quote(path.substring(end)));
+		this.pattern = Pattern.compile(regex.toString());
+	}
+	
+	/**
+	 * @param method The HTTP method of the request
+	 * @param path The path of the request
+	 * @return The Matcher if the request matches the Route, else null
+	 */
+	public Matcher match(String method, String path) {
+		if (!this.httpMethod.equalsIgnoreCase(method)) {
+			return null;
+		}
+		Matcher matcher = this.pattern.matcher(path);
+		return (matcher.matches()) ? matcher : null;
+	}
+
+	public boolean referencesId() {
+		return this.idGroup > 0;
+	}
+	
+	/**
+	 * @param matcher The Matcher returned by {@link #match(String, String)}
+	 * @return The value of the "{id}" variable
+	 */
+	public String getId(Matcher matcher) {
+		return (referencesId()) ? matcher.group(this.idGroup) : null;
+	}
+
+	public String getHttpMethod() {
+		return httpMethod;
+	}
+
+	public String getEvent() {
+		return event;
+	}
+
+	public Class<?>[] getParmTypes() {
+		return parmTypes;
+	}
+}
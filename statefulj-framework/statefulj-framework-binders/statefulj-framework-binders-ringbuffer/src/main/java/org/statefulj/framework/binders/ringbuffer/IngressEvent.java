@@ -0,0 +1,74 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A slot of the RingBuffer.  IngressEvents are allocated up front and reused, so that 
+ * publishing an event doesn't allocate
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class IngressEvent {
+	
+	private String event;
+	
+	private Object id;
+	
+	private Object[] parms;
+	
+	private CompletableFuture<Object> future;
+	
+	public String getEvent() {
+		return event;
+	}
+
+	public Object getId() {
+		return id;
+	}
+
+	public Object[] getParms() {
+		return parms;
+	}
+
+	/**
+	 * @return The Future of the result, or null if the producer didn't request one
+	 */
+	public CompletableFuture<Object> getFuture() {
+		return future;
+	}
+
+	void set(String event, Object id, Object[] parms, CompletableFuture<Object> future) {
+		this.event = event;
+		this.id = id;
+		this.parms = parms;
+		this.future = future;
+	}
+	
+	/**
+	 * Release the references once consumed, so that they can be collected
+	 */
+	void clear() {
+		this.event = null;
+		this.id = null;
+		this.parms = null;
+		this.future = null;
+	}
+}
@@ -0,0 +1,147 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, pre-allocated, multi-producer/single-consumer ring of {@link IngressEvent}s.  
+ * Producers claim a sequence, fill the slot and then publish it; a producer is held back, by 
+ * way of the WaitStrategy, when it would overwrite a slot not yet consumed.  The consumer 
+ * reads every contiguous published slot as a batch and then releases them
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class RingBuffer {
+	
+	private final IngressEvent[] entries;
+	
+	private final int mask;
+	
+	private final AtomicLongArray published;
+	
+	private final Sequence claimed = new Sequence(0);
+	
+	private final Sequence consumed = new Sequence(-1);
+	
+	private final WaitStrategy waitStrategy;
+	
+	/**
+	 * @param size The number of slots, rounded up to a power of 2
+	 * @param waitStrategy The WaitStrategy of the producers when the RingBuffer is full
+	 */
+	public RingBuffer(int size, WaitStrategy waitStrategy) {
+		if (size < 1) {
+			throw new IllegalArgumentException("The size must be positive");
+		}
+		int capacity = Integer.highestOneBit(size);
+		capacity = (capacity < size) ? capacity << 1 : capacity;
+		
+		this.entries = new IngressEvent[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; i++) {
+			this.entries[i] = new IngressEvent();
+			this.published.set(i, -1);
+		}
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy;
+	}
+	
+	public int getCapacity() {
+		return this.entries.length;
+	}
+	
+	/**
+	 * Claim the next sequence, waiting whilst the RingBuffer is full
+	 * 
+	 * @return The sequence
+	 */
+	public long next() {
+		long sequence = this.claimed.getAndIncrement();
+		int attempt = 0;
+		while (sequence - this.entries.length > this.consumed.get()) {
+			this.waitStrategy.idle(attempt++);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Claim the next sequence if the RingBuffer isn't full
+	 * 
+	 * @return The sequence, or -1 if the RingBuffer is full
+	 */
+	public long tryNext() {
+		while(true) {
+			long sequence = this.claimed.get();
+			if (sequence - this.entries.length > this.consumed.get()) {
+				return -1;
+			}
+			if (this.claimed.compareAndSet(sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+	}
+	
+	public IngressEvent get(long sequence) {
+		return this.entries[(int)(sequence & this.mask)];
+	}
+	
+	/**
+	 * Make the claimed sequence available to the consumer
+	 * 
+	 * @param sequence
+	 */
+	public void publish(long sequence) {
+		this.published.lazySet((int)(sequence & this.mask), sequence);
+	}
+	
+	/**
+	 * @param from The first sequence to consume
+	 * @param max The maximum number of sequences
+	 * @return The last contiguous published sequence, or from - 1 if from isn't published
+	 */
+	public long getAvailable(long from, int max) {
+		long available = from - 1;
+		long last = from + max - 1;
+		while(available < last && this.published.get((int)((available + 1) & this.mask)) == available + 1) {
+			available++;
+		}
+		return available;
+	}
+	
+	/**
+	 * Release all sequences up to, and including, the sequence to the producers
+	 * 
+	 * @param sequence
+	 */
+	public void release(long sequence) {
+		this.consumed.setOrdered(sequence);
+	}
+	
+	public long getConsumed() {
+		return this.consumed.get();
+	}
+
+	/**
+	 * @return The number of claimed events not yet consumed
+	 */
+	public long getBacklog() {
+		return Math.max(0, this.claimed.get() - this.consumed.get() - 1);
+	}
+}
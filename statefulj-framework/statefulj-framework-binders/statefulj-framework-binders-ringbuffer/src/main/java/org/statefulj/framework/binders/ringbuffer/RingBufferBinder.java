@@ -0,0 +1,132 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.addResourceAnnotation;
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.getStamp;
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.loadPregeneratedClass;
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.toClass;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.framework.core.model.EndpointBinder;
+import org.statefulj.framework.core.model.FSMHarness;
+import org.statefulj.framework.core.model.ReferenceFactory;
+
+/**
+ * An in-JVM ingress Binder, bound to events prefixed with "ringbuffer:".  The generated Binder is a 
+ * {@link RingBufferEndpoints}, to which producers publish events, e.g.
+ * 
+ * <pre>
+ * RingBufferEndpoints ingress = (RingBufferEndpoints)appContext.getBean(refFactory.getBinderId(RingBufferBinder.KEY));
+ * ingress.publish("activate", id, context);
+ * </pre>
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class RingBufferBinder implements EndpointBinder {
+	
+	public final static String KEY = "ringbuffer";
+	
+	private static final Logger logger = LoggerFactory.getLogger(RingBufferBinder.class);
+	
+	private static final Map<String, Set<String>> eventsMap = new ConcurrentHashMap<String, Set<String>>();
+	
+	private final String HARNESS_VAR = "harness";
+	
+	private final String RINGBUFFER_SUFFIX = "RingBufferBinder";
+	
+	@Override
+	public String getKey() {
+		return KEY;
+	}
+
+	@Override
+	public Class<?> bindEndpoints(
+			String beanName, 
+			Class<?> statefulControllerClass,
+			Class<?> idType, 
+			boolean isDomainEntity,
+			Map<String, Method> eventMapping, 
+			ReferenceFactory refFactory)
+			throws CannotCompileException, NotFoundException,
+			IllegalArgumentException, IllegalAccessException,
+			InvocationTargetException {
+		
+		logger.debug("Building proxy for {}", statefulControllerClass);
+		
+		String proxyClassName = statefulControllerClass.getName() + RINGBUFFER_SUFFIX;
+		
+		// Register the events - they are looked up by the Proxy on construction
+		//
+		eventsMap.put(proxyClassName, Collections.unmodifiableSet(new HashSet<String>(eventMapping.keySet())));
+		
+		// Use the Proxy Class if it was generated at build time
+		//
+		String stamp = getStamp(proxyClassName, idType, isDomainEntity, eventMapping, refFactory);
+		Class<?> pregenerated = loadPregeneratedClass(proxyClassName, statefulControllerClass, stamp);
+		if (pregenerated != null) {
+			logger.debug("Using pregenerated proxy {}", proxyClassName);
+			return pregenerated;
+		}
+		
+		// Set up the ClassPool
+		//
+		ClassPool cp = ClassPool.getDefault();
+		cp.appendClassPath(new ClassClassPath(getClass()));
+
+		// The Proxy extends RingBufferEndpoints, supplying the FSMHarness
+		//
+		CtClass proxyClass = cp.makeClass(proxyClassName, cp.get(RingBufferEndpoints.class.getName()));
+		
+		CtField field = new CtField(cp.get(FSMHarness.class.getName()), HARNESS_VAR, proxyClass);
+		addResourceAnnotation(field, refFactory.getFSMHarnessId());
+		proxyClass.addField(field);
+		
+		CtMethod getHarness = new CtMethod(
+				cp.get(FSMHarness.class.getName()), 
+				"getHarness", 
+				null, 
+				proxyClass);
+		getHarness.setBody("{ return this." + HARNESS_VAR + "; }");
+		proxyClass.addMethod(getHarness);
+
+		return toClass(proxyClass, statefulControllerClass, stamp);
+	}
+	
+	static Set<String> getEvents(String proxyClassName) {
+		return eventsMap.get(proxyClassName);
+	}
+}
@@ -0,0 +1,351 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.framework.core.model.AtomicFSMHarness;
+import org.statefulj.framework.core.model.FSMHarness;
+
+/**
+ * The base class of the RingBuffer Binders generated for each StatefulController.  In-JVM producers 
+ * publish events into a pre-allocated {@link RingBuffer}, which is drained by a single consumer 
+ * thread.  The consumer takes every published event, up to the batch size, at once.  If the 
+ * FSMHarness is an {@link AtomicFSMHarness}, such as the JPAFSMHarnessImpl, consecutive events with 
+ * the same event and parameters are passed to it together, so that their Entities are loaded 
+ * together.  If the run fails, none of its events were applied, and each of its events is then 
+ * processed on its own, so one failing Entity doesn't fail the others - the Actions of the failed 
+ * run are re-executed.  Any other FSMHarness is passed each event on its own.  
+ * 
+ * Producers which need the outcome of an event {@link #submit(String, Object, Object...)} it
+ * and receive a CompletableFuture of the result; the failures of published events are logged.  
+ * The first parameter is the context, as for {@link FSMHarness#onEvent(String, Object, Object[])}.  
+ * The RingBuffer is created, and the consumer started, on the first publish, so the size, batch 
+ * size and WaitStrategy must be set before then.  Once shutdown, events are refused
+ * 
+ * @author Andrew Hall
+ *
+ */
+public abstract class RingBufferEndpoints {
+	
+	private static final Logger logger = LoggerFactory.getLogger(RingBufferEndpoints.class);
+	
+	private static final AtomicInteger consumerCnt = new AtomicInteger(0);
+	
+	public static final int DEFAULT_SIZE = 1024;
+	
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	
+	private final Set<String> events;
+	
+	private int size = DEFAULT_SIZE;
+	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	
+	private WaitStrategy waitStrategy = new SleepingWaitStrategy();
+	
+	private volatile RingBuffer ringBuffer;
+	
+	private volatile boolean running;
+	
+	private volatile boolean shutdown;
+	
+	private Thread consumer;
+	
+	// Publishers hold the read lock, so that shutdown waits for the events being published
+	//
+	private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+	
+	protected RingBufferEndpoints() {
+		Set<String> events = RingBufferBinder.getEvents(getClass().getName());
+		this.events = (events == null) ? Collections.<String>emptySet() : events;
+	}
+	
+	protected abstract FSMHarness getHarness();
+	
+	public Set<String> getEvents() {
+		return this.events;
+	}
+	
+	/**
+	 * Publish the event, waiting whilst the RingBuffer is full
+	 * 
+	 * @param event The event
+	 * @param id The Id of the Entity, or null for the Factory to create a new Entity
+	 * @param parms The parameters, the first parameter is the context
+	 */
+	public void publish(String event, Object id, Object... parms) {
+		publish(event, id, parms, null);
+	}
+	
+	/**
+	 * Publish the event, waiting whilst the RingBuffer is full, and return the Future of its result
+	 * 
+	 * @param event The event
+	 * @param id The Id of the Entity, or null for the Factory to create a new Entity
+	 * @param parms The parameters, the first parameter is the context
+	 * @return The Future of the result, completed exceptionally if the event fails
+	 */
+	public CompletableFuture<Object> submit(String event, Object id, Object... parms) {
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		publish(event, id, parms, future);
+		return future;
+	}
+
+	/**
+	 * Publish the event, unless the RingBuffer is full
+	 * 
+	 * @param event The event
+	 * @param id The Id of the Entity, or null for the Factory to create a new Entity
+	 * @param parms The parameters, the first parameter is the context
+	 * @return false if the RingBuffer is full
+	 */
+	public boolean tryPublish(String event, Object id, Object... parms) {
+		Lock lock = this.publishLock.readLock();
+		lock.lock();
+		try {
+			RingBuffer ringBuffer = getRingBuffer(event);
+			long sequence = ringBuffer.tryNext();
+			if (sequence < 0) {
+				return false;
+			}
+			ringBuffer.get(sequence).set(event, id, parms, null);
+			ringBuffer.publish(sequence);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return The number of events published, but not yet processed
+	 */
+	public long getBacklog() {
+		RingBuffer ringBuffer = this.ringBuffer;
+		return (ringBuffer == null) ? 0 : ringBuffer.getBacklog();
+	}
+	
+	/**
+	 * Refuse any further events and stop the consumer, once it has processed the events already published
+	 */
+	@PreDestroy
+	public void shutdown() {
+		Thread consumer = null;
+		Lock lock = this.publishLock.writeLock();
+		lock.lock();
+		try {
+			synchronized(this) {
+				this.shutdown = true;
+				this.running = false;
+				consumer = this.consumer;
+				this.consumer = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (consumer != null) {
+			try {
+				consumer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	private void publish(String event, Object id, Object[] parms, CompletableFuture<Object> future) {
+		Lock lock = this.publishLock.readLock();
+		lock.lock();
+		try {
+			RingBuffer ringBuffer = getRingBuffer(event);
+			long sequence = ringBuffer.next();
+			ringBuffer.get(sequence).set(event, id, parms, future);
+			ringBuffer.publish(sequence);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private RingBuffer getRingBuffer(String event) {
+		if (!this.events.contains(event)) {
+			throw new IllegalArgumentException("Unknown event=" + event);
+		}
+		if (this.shutdown) {
+			throw new IllegalStateException("Shutdown, unable to publish event=" + event);
+		}
+		RingBuffer ringBuffer = this.ringBuffer;
+		if (ringBuffer == null) {
+			synchronized(this) {
+				if (this.ringBuffer == null) {
+					this.ringBuffer = new RingBuffer(this.size, this.waitStrategy);
+					this.running = true;
+					this.consumer = new Thread(new Runnable() {
+						
+						@Override
+						public void run() {
+							consume();
+						}
+					}, "statefulj-ringbuffer-" + consumerCnt.incrementAndGet());
+					this.consumer.setDaemon(true);
+					this.consumer.start();
+				}
+				ringBuffer = this.ringBuffer;
+			}
+		}
+		return ringBuffer;
+	}
+	
+	private void consume() {
+		RingBuffer ringBuffer = this.ringBuffer;
+		List<IngressEvent> batch = new ArrayList<IngressEvent>(this.batchSize);
+		int attempt = 0;
+		while(true) {
+			long next = ringBuffer.getConsumed() + 1;
+			long available = ringBuffer.getAvailable(next, this.batchSize);
+			if (available < next) {
+				if (!this.running) {
+					break;
+				}
+				this.waitStrategy.idle(attempt++);
+				continue;
+			}
+			attempt = 0;
+			
+			for(long sequence = next; sequence <= available; sequence++) {
+				batch.add(ringBuffer.get(sequence));
+			}
+			process(batch);
+			for(IngressEvent ingressEvent : batch) {
+				ingressEvent.clear();
+			}
+			batch.clear();
+			ringBuffer.release(available);
+		}
+	}
+	
+	/**
+	 * Process the batch.  If the FSMHarness is atomic, each run of distinct Entities with the same event 
+	 * and parameters is passed to it together, and if the run fails, each event of the run is processed 
+	 * on its own
+	 * 
+	 * @param batch
+	 */
+	protected void process(List<IngressEvent> batch) {
+		boolean atomic = getHarness() instanceof AtomicFSMHarness;
+		int start = 0;
+		while(start < batch.size()) {
+			IngressEvent first = batch.get(start);
+			int end = start + 1;
+			if (atomic && first.getId() != null) {
+				Set<Object> ids = new HashSet<Object>();
+				ids.add(first.getId());
+				while(end < batch.size() 
+						&& isSameEvent(first, batch.get(end)) 
+						&& ids.add(batch.get(end).getId())) {
+					end++;
+				}
+			}
+			if (end - start > 1) {
+				List<Object> ids = new ArrayList<Object>(end - start);
+				for(int i = start; i < end; i++) {
+					ids.add(batch.get(i).getId());
+				}
+				Map<Object, Object> results = null;
+				try {
+					results = getHarness().onEvents(first.getEvent(), ids, first.getParms());
+				} catch(Throwable t) {
+					logger.warn("Unable to process {} events {} together, processing each on its own", ids.size(), first.getEvent(), t);
+				}
+				for(int i = start; i < end; i++) {
+					if (results != null) {
+						complete(batch.get(i), results.get(batch.get(i).getId()));
+					} else {
+						process(batch.get(i));
+					}
+				}
+			} else {
+				process(first);
+			}
+			start = end;
+		}
+	}
+	
+	private void process(IngressEvent ingressEvent) {
+		try {
+			complete(
+					ingressEvent,
+					getHarness().onEvent(ingressEvent.getEvent(), ingressEvent.getId(), ingressEvent.getParms()));
+		} catch(Throwable t) {
+			if (ingressEvent.getFuture() != null) {
+				ingressEvent.getFuture().completeExceptionally(t);
+			} else {
+				logger.error("Unable to process event {}", ingressEvent.getEvent(), t);
+			}
+		}
+	}
+	
+	private void complete(IngressEvent ingressEvent, Object result) {
+		if (ingressEvent.getFuture() != null) {
+			ingressEvent.getFuture().complete(result);
+		}
+	}
+	
+	private boolean isSameEvent(IngressEvent first, IngressEvent ingressEvent) {
+		return ingressEvent.getId() != null
+				&& first.getEvent().equals(ingressEvent.getEvent())
+				&& Arrays.equals(first.getParms(), ingressEvent.getParms());
+	}
+}
@@ -0,0 +1,72 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A sequence of the RingBuffer, padded on both sides so that it occupies its own cache line 
+ * and isn't falsely shared with the sequences updated by other threads
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class Sequence extends SequenceValue {
+	
+	protected long p9, p10, p11, p12, p13, p14, p15;
+	
+	private static final AtomicLongFieldUpdater<SequenceValue> updater = 
+			AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+	public Sequence(long initial) {
+		this.value = initial;
+	}
+	
+	public long get() {
+		return this.value;
+	}
+	
+	public void set(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * Ordered, but not immediately visible, write - used by the single writer of a sequence
+	 * 
+	 * @param value
+	 */
+	public void setOrdered(long value) {
+		updater.lazySet(this, value);
+	}
+	
+	public boolean compareAndSet(long expected, long value) {
+		return updater.compareAndSet(this, expected, value);
+	}
+	
+	public long getAndIncrement() {
+		return updater.getAndIncrement(this);
+	}
+}
+
+abstract class SequencePadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SequenceValue extends SequencePadding {
+	protected volatile long value;
+}
@@ -0,0 +1,61 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spins, then yields, then parks the thread.  Trades latency for an idle CPU and is the default
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class SleepingWaitStrategy implements WaitStrategy {
+	
+	private final int spins;
+	
+	private final int yields;
+	
+	private final long sleepNanos;
+	
+	public SleepingWaitStrategy() {
+		this(100, 100, 100000);
+	}
+
+	/**
+	 * @param spins The number of attempts to spin
+	 * @param yields The number of attempts to yield, after spinning
+	 * @param sleepNanos How long to park the thread, after yielding
+	 */
+	public SleepingWaitStrategy(int spins, int yields, long sleepNanos) {
+		this.spins = spins;
+		this.yields = yields;
+		this.sleepNanos = sleepNanos;
+	}
+
+	@Override
+	public void idle(int attempt) {
+		if (attempt < this.spins) {
+			return;
+		} else if (attempt < this.spins + this.yields) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(this.sleepNanos);
+		}
+	}
+}
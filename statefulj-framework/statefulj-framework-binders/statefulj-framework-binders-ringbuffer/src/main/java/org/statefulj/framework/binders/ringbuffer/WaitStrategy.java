@@ -0,0 +1,36 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+/**
+ * How a thread waits on the RingBuffer - a consumer waiting for events to be published, or a 
+ * producer waiting for space when the RingBuffer is full
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface WaitStrategy {
+	
+	/**
+	 * Wait once
+	 * 
+	 * @param attempt The number of times the thread has waited since it last made progress
+	 */
+	void idle(int attempt);
+
+}
@@ -0,0 +1,44 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.ringbuffer;
+
+/**
+ * Spins, then yields the CPU to other threads
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+	
+	private final int spins;
+	
+	public YieldingWaitStrategy() {
+		this(100);
+	}
+
+	public YieldingWaitStrategy(int spins) {
+		this.spins = spins;
+	}
+
+	@Override
+	public void idle(int attempt) {
+		if (attempt >= this.spins) {
+			Thread.yield();
+		}
+	}
+}
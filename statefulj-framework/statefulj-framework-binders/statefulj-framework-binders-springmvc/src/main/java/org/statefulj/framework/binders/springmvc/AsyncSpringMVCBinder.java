@@ -0,0 +1,162 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.binders.springmvc;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.statefulj.framework.binders.common.AsyncExecutor;
+import org.statefulj.framework.core.model.FSMHarness;
+import org.statefulj.fsm.TooBusyException;
+
+import static org.statefulj.framework.binders.common.utils.JavassistUtils.*;
+
+/**
+ * An asynchronous SpringMVC Binder, bound to events prefixed with "springmvc-async:".  The request 
+ * methods return a DeferredResult, which is set once the {@link AsyncExecutor} has processed the event,
+ * so the servlet thread is returned to the container straight away.  A request for an Entity in a 
+ * blocking State completes once the State clears.  The DeferredResult times out with a TooBusyException 
+ * after the timeout of the AsyncExecutor, or the default timeout of the container if it has none.
+ * Requires an asynchronous capable Servlet container
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class AsyncSpringMVCBinder extends SpringMVCBinder {
+	
+	public final static String KEY = "springmvc-async";
+	
+	private static Logger logger = LoggerFactory.getLogger(AsyncSpringMVCBinder.class);
+
+	private final String ASYNC_MVC_SUFFIX = "AsyncMVCBinder";
+	
+	private final String EXECUTOR_VAR = "asyncExecutor";
+
+	@Override
+	public String getKey() {
+		return KEY;
+	}
+
+	/**
+	 * Process the event on the AsyncExecutor, setting the result, or the error, of the DeferredResult 
+	 * once complete
+	 * 
+	 * @param executor The AsyncExecutor bean, or null for the default AsyncExecutor
+	 * @param harness The FSMHarness
+	 * @param event The event
+	 * @param referencesId Whether the first parameter is the Id of the Entity
+	 * @param parms The parameters of the request
+	 * @return The DeferredResult
+	 */
+	public static DeferredResult<Object> dispatch(
+			AsyncExecutor executor,
+			final FSMHarness harness, 
+			final String event, 
+			final boolean referencesId,
+			final Object[] parms) {
+		
+		executor = AsyncExecutor.resolve(executor);
+		
+		// On timeout, the result is a TooBusyException
+		//
+		final DeferredResult<Object> result = new DeferredResult<Object>(executor.getTimeout(), new TooBusyException());
+		result.onTimeout(new Runnable() {
+
+			@Override
+			public void run() {
+				logger.warn("Timed out processing event {}", event);
+			}
+		});
+		
+		executor.execute(
+				new Callable<Object>() {
+		
+					@Override
+					public Object call() throws Exception {
+						return (referencesId)
+								? harness.onEvent(event, parms)
+								: harness.onEvent(event, null, parms);
+					}
+				}, 
+				new AsyncExecutor.Completion() {
+					
+					@Override
+					public boolean isDone() {
+						return result.isSetOrExpired();
+					}
+					
+					@Override
+					public void complete(Object value) {
+						result.setResult(value);
+					}
+					
+					@Override
+					public void fail(Throwable t) {
+						result.setErrorResult(t);
+					}
+				});
+		
+		return result;
+	}
+
+	/**
+	 * Add the member variable referencing the AsyncExecutor bean, if there is one, along with the 
+	 * FSMHarness
+	 */
+	@Override
+	protected void addFSMHarnessReference(CtClass proxyClass, String fsmHarnessId, ClassPool cp) throws NotFoundException, CannotCompileException {
+		super.addFSMHarnessReference(proxyClass, fsmHarnessId, cp);
+		addAsyncExecutorReference(proxyClass, EXECUTOR_VAR, cp);
+	}
+
+	@Override
+	protected CtMethod createRequestMethod(
+			CtClass proxyClass, 
+			String requestMethod, 
+			String requestEvent, 
+			Method method, 
+			ClassPool cp) throws NotFoundException {
+		CtMethod ctMethod = super.createRequestMethod(proxyClass, requestMethod, requestEvent, method, cp);
+		return new CtMethod(cp.get(DeferredResult.class.getName()), ctMethod.getName(), null, proxyClass);
+	}
+
+	@Override
+	protected void addRequestMethodBody(boolean referencesId, CtMethod ctMethod, String event) throws CannotCompileException, NotFoundException {
+		String methodBody = "{ " 
+				+ "return " + AsyncSpringMVCBinder.class.getName() + ".dispatch(this." + EXECUTOR_VAR + ", this." + HARNESS_VAR + ", \"" 
+				+ event 
+				+ "\", " + referencesId 
+				+ ", $args); }";
+
+		ctMethod.setBody(methodBody);
+	}
+
+	@Override
+	protected String getSuffix() {
+		return ASYNC_MVC_SUFFIX;
+	}
+}
@@ -30,6 +30,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -51,6 +52,7 @@ import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.config.ConstructorArgumentValues;
 import org.springframework.beans.factory.config.DependencyDescriptor;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
@@ -67,11 +69,14 @@ import org.statefulj.framework.core.annotations.StatefulController;
 import org.statefulj.framework.core.annotations.Transition;
 import org.statefulj.framework.core.annotations.Transitions;
 import org.statefulj.framework.core.fsm.FSM;
+import org.statefulj.framework.core.fsm.FSMDefinition;
+import org.statefulj.framework.core.fsm.FSMDefinition.TransitionDefinition;
 import org.statefulj.framework.core.fsm.TransitionImpl;
 import org.statefulj.framework.core.model.EndpointBinder;
 import org.statefulj.framework.core.model.PersistenceSupportBeanFactory;
 import org.statefulj.framework.core.model.ReferenceFactory;
 import org.statefulj.framework.core.model.StatefulFSM;
+import org.statefulj.framework.core.model.impl.FSMHarnessImpl;
 import org.statefulj.framework.core.model.impl.ReferenceFactoryImpl;
 import org.statefulj.framework.core.model.impl.StatefulFSMImpl;
 import org.statefulj.fsm.model.impl.StateImpl;
@@ -95,6 +100,10 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 	private Map<Class<?>, PersistenceSupportBeanFactory> persistenceFactories = new HashMap<Class<?>, PersistenceSupportBeanFactory>();
 	private Map<String, EndpointBinder> binders = new HashMap<String, EndpointBinder>();
 	private Map<Class<?>, Set<String>> entityToControllers = new HashMap<Class<?>, Set<String>>();
+	private Reflections reflections;
+	private boolean scanClasspath = false;
+	private boolean compact = false;
+	private boolean probeState = false;
 	
 	// Resolver that injects the FSM for a given controller.  It is inferred by the ClassType or will use the bean Id specified by the value of the 
 	// FSM Annotation
@@ -172,23 +181,14 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 			
 			// Load up all Endpoint Binders
 			//
-			Reflections reflections = new Reflections("org.statefulj");
-			Set<Class<? extends EndpointBinder>> endpointBinders = reflections.getSubTypesOf(EndpointBinder.class);
-			for(Class<?> binderClass : endpointBinders) {
-				if (!Modifier.isAbstract(binderClass.getModifiers())) {
-					EndpointBinder binder = (EndpointBinder)binderClass.newInstance();
-					binders.put(binder.getKey(), binder);
-				}
+			for(EndpointBinder binder : loadImplementations(EndpointBinder.class)) {
+				binders.put(binder.getKey(), binder);
 			}
 		    
 			// Load up all PersistenceSupportBeanFactories
 			//
-			Set<Class<? extends PersistenceSupportBeanFactory>> persistenceFactoryTypes = reflections.getSubTypesOf(PersistenceSupportBeanFactory.class);
-			for(Class<?> persistenceFactories : persistenceFactoryTypes) {
-				if (!Modifier.isAbstract(persistenceFactories.getModifiers())) {
-					PersistenceSupportBeanFactory factory = (PersistenceSupportBeanFactory)persistenceFactories.newInstance();
-					this.persistenceFactories.put(factory.getKey(), factory);
-				}
+			for(PersistenceSupportBeanFactory factory : loadImplementations(PersistenceSupportBeanFactory.class)) {
+				this.persistenceFactories.put(factory.getKey(), factory);
 			}
 		    
 			// Map Controllers and Entities
@@ -383,15 +383,24 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 			stateBeans.add(new RuntimeBeanReference(stateId));
 		}
 		
-		// Build out the Action classes and the Transitions
+		// Build out the Action classes and the Transitions - as a single FSMDefinition bean if compact
 		//
 		RuntimeBeanReference controllerRef = new RuntimeBeanReference(statefulControllerBeanId);
 		int cnt = 1;
 		List<String> transitionIds = new LinkedList<String>();
+		List<TransitionDefinition> transitionDefinitions = new LinkedList<TransitionDefinition>();
 		for(Entry<Transition, Method> entry : anyMapping.entrySet()) {
 			for (String state : states) {
 				String from = state;
 				String to = (entry.getKey().to().equals(Transition.ANY_STATE)) ? state : entry.getKey().to();
+				if (this.compact) {
+					transitionDefinitions.add(buildTransitionDefinition(
+							from, 
+							to, 
+							entry.getKey(), 
+							entry.getValue()));
+					continue;
+				}
 				String transitionId = referenceFactory.getTransitionId(cnt++);
 				registerActionAndTransition(
 						referenceFactory,
@@ -408,6 +417,14 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 			}
 		}
 		for(Entry<Transition, Method> entry : transitionMapping.entrySet()) {
+			if (this.compact) {
+				transitionDefinitions.add(buildTransitionDefinition(
+						entry.getKey().from(), 
+						entry.getKey().to(), 
+						entry.getKey(), 
+						entry.getValue()));
+				continue;
+			}
 			String transitionId = referenceFactory.getTransitionId(cnt++);
 			registerActionAndTransition(
 					referenceFactory,
@@ -422,6 +439,15 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 					reg);
 			transitionIds.add(transitionId);
 		}
+		if (this.compact) {
+			transitionIds.add(registerFSMDefinition(
+					referenceFactory, 
+					stateBeans, 
+					transitionDefinitions, 
+					isDomainEntity, 
+					controllerRef, 
+					reg));
+		}
 		
 		// Fetch the StatefulController Annotation
 		//
@@ -482,6 +508,7 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 				statefulFSMBeanId, 
 				factoryId, 
 				finderId, 
+				persisterId,
 				reg);
 
 	}
@@ -563,6 +590,53 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 		reg.registerBeanDefinition(transitionId, transitionBean);
 	}
 
+	private TransitionDefinition buildTransitionDefinition(
+			String from, 
+			String to, 
+			Transition transition, 
+			Method method) {
+		
+		// Remap to="Any" to to=from
+		//
+		to = (Transition.ANY_STATE.equals(to)) ? from : to;
+		
+		logger.debug(
+				"Defined: {}({})->{}/{}",
+				from,
+				transition.event(),
+				to,
+				(method == null) ? "noop" : method.getName());
+		
+		return new TransitionDefinition(
+				from, 
+				to, 
+				parseEvent(transition.event()).getRight(), 
+				(method == null) ? null : method.getName(), 
+				(method == null) ? null : method.getParameterTypes(), 
+				(transition.from().equals(Transition.ANY_STATE) && 
+				 transition.to().equals(Transition.ANY_STATE)));
+	}
+	
+	private String registerFSMDefinition(
+			ReferenceFactory referenceFactory,
+			List<RuntimeBeanReference> stateBeans,
+			List<TransitionDefinition> transitionDefinitions,
+			boolean isDomainEntity,
+			RuntimeBeanReference controllerRef, 
+			BeanDefinitionRegistry reg) {
+		String definitionId = referenceFactory.getFSMDefinitionId();
+		BeanDefinition definitionBean = BeanDefinitionBuilder
+				.genericBeanDefinition(FSMDefinition.class)
+				.getBeanDefinition();
+		ConstructorArgumentValues args = definitionBean.getConstructorArgumentValues();
+		args.addIndexedArgumentValue(0, stateBeans);
+		args.addIndexedArgumentValue(1, transitionDefinitions);
+		args.addIndexedArgumentValue(2, new RuntimeBeanReference(referenceFactory.getFSMId()));
+		args.addIndexedArgumentValue(3, (isDomainEntity) ? null : controllerRef);
+		reg.registerBeanDefinition(definitionId, definitionBean);
+		return definitionId;
+	}
+
 	private void mapEventsTransitionsAndStates(
 			Class<?> statefulControllerClass, 
 			Map<String, Map<String, Method>> providerMappings,
@@ -728,6 +802,10 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 		ConstructorArgumentValues args = fsmBean.getConstructorArgumentValues();
 		args.addIndexedArgumentValue(0, fsmBeanId);
 		args.addIndexedArgumentValue(1, new RuntimeBeanReference(persisterId));
+		StatefulController statefulControllerAnnotation = ReflectionUtils.getFirstClassAnnotation(statefulControllerClass, StatefulController.class);
+		if (statefulControllerAnnotation.coalesceChainedEvents()) {
+			fsmBean.getPropertyValues().add("coalesceChainedEvents", true);
+		}
 		reg.registerBeanDefinition(fsmBeanId, fsmBean);
 		return fsmBeanId;
 	}
@@ -848,15 +926,24 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 				String fsmBeanId, 
 				String factoryId, 
 				String finderId, 
+				String persisterId,
 				BeanDefinitionRegistry reg) {
 		String fsmHarnessId = referenceFactory.getFSMHarnessId();
-		reg.registerBeanDefinition(
-				fsmHarnessId, 
-				persistenceFactory.buildFSMHarnessBean(
-						statefulClass, 
-						fsmBeanId, 
-						factoryId, 
-						finderId));
+		BeanDefinition fsmHarness = persistenceFactory.buildFSMHarnessBean(
+				statefulClass, 
+				fsmBeanId, 
+				factoryId, 
+				finderId);
+		
+		// If enabled, give the Harness the Persister so that it can probe the State before loading the Entity
+		//
+		if (this.probeState
+				&& fsmHarness instanceof AbstractBeanDefinition
+				&& ((AbstractBeanDefinition)fsmHarness).hasBeanClass()
+				&& FSMHarnessImpl.class.isAssignableFrom(((AbstractBeanDefinition)fsmHarness).getBeanClass())) {
+			fsmHarness.getPropertyValues().add("persister", new RuntimeBeanReference(persisterId));
+		}
+		reg.registerBeanDefinition(fsmHarnessId, fsmHarness);
 		return fsmHarnessId;
 	}
 	
@@ -902,6 +989,90 @@ public class StatefulFactory implements BeanDefinitionRegistryPostProcessor, App
 		return clazz;
 	}
 
+	/**
+	 * Load the implementations listed in the META-INF/services index of the type.  The classpath is 
+	 * only scanned when requested, or when no implementation is indexed.  Once any implementation is 
+	 * indexed, an implementation which isn't listed in a META-INF/services index is not loaded
+	 * 
+	 * @param type The type
+	 * @return The implementations
+	 * @throws InstantiationException
+	 * @throws IllegalAccessException
+	 */
+	private <T> List<T> loadImplementations(Class<T> type) throws InstantiationException, IllegalAccessException {
+		List<T> impls = new LinkedList<T>();
+		Set<Class<?>> implClasses = new HashSet<Class<?>>();
+		if (!this.scanClasspath) {
+			for(T impl : ServiceLoader.load(type)) {
+				impls.add(impl);
+				implClasses.add(impl.getClass());
+			}
+			if (!impls.isEmpty()) {
+				logger.info(
+						"Loaded {} from META-INF/services, skipping the classpath scan.  Unindexed implementations of {} are ignored unless scanClasspath is set", 
+						implClasses, 
+						type.getName());
+			}
+		}
+		
+		if (impls.isEmpty()) {
+			logger.debug("No index of {}, scanning the classpath", type.getName());
+			if (this.reflections == null) {
+				this.reflections = new Reflections("org.statefulj");
+			}
+			for(Class<? extends T> implClass : this.reflections.getSubTypesOf(type)) {
+				if (!Modifier.isAbstract(implClass.getModifiers()) && !implClasses.contains(implClass)) {
+					impls.add(implClass.newInstance());
+				}
+			}
+		}
+		return impls;
+	}
+
+	public boolean isProbeState() {
+		return probeState;
+	}
+
+	/**
+	 * Have the FSMHarness read just the persisted State of an Entity, if the Persister supports it, 
+	 * before loading the Entity.  A noop then skips the load, but every other event costs an 
+	 * extra read - so only enable it if most events are noops
+	 * 
+	 * @param probeState
+	 */
+	public void setProbeState(boolean probeState) {
+		this.probeState = probeState;
+	}
+
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * Register the Transitions and Actions of each StatefulController as a single {@link FSMDefinition} 
+	 * bean, built in code, rather than a bean per Transition and Action
+	 * 
+	 * @param compact
+	 */
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
+	public boolean isScanClasspath() {
+		return scanClasspath;
+	}
+
+	/**
+	 * Scan the classpath for the EndpointBinders and PersistenceSupportBeanFactories, rather than 
+	 * load them from the META-INF/services index - e.g. during development.  Without it, an 
+	 * implementation missing from the index is ignored as long as any other implementation is indexed
+	 * 
+	 * @param scanClasspath
+	 */
+	public void setScanClasspath(boolean scanClasspath) {
+		this.scanClasspath = scanClasspath;
+	}
+
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext)
 			throws BeansException {
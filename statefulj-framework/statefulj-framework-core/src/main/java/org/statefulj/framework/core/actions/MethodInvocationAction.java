@@ -139,6 +139,10 @@ public class MethodInvocationAction implements Action<Object> {
 			if (e.getCause() instanceof RetryException) {
 				throw (RetryException)e.getCause();
 			}
+			if (e.getCause() instanceof Error) {
+				throw (Error)e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
 		} catch (TooBusyException e) {
 			throw new RuntimeException(e);
 		}
@@ -115,5 +115,13 @@ public @interface StatefulController {
 	 * @return Array of NOOP Transitions
 	 */
 	Transition[] noops() default {};
+	
+	/**
+	 * If true, events chained from a Transition (i.e. "event:xyz") are applied in memory and 
+	 * only the final State is persisted, qualified by the State prior to the first Transition
+	 * 
+	 * @return Whether to coalesce chained events
+	 */
+	boolean coalesceChainedEvents() default false;
 
 }
@@ -17,10 +17,14 @@
  */
 package org.statefulj.framework.core.fsm;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.statefulj.fsm.Persister;
 import org.statefulj.fsm.RetryException;
+import org.statefulj.fsm.StaleStateException;
 import org.statefulj.fsm.model.State;
 import org.statefulj.fsm.model.StateActionPair;
 import org.statefulj.fsm.model.Transition;
@@ -29,12 +33,80 @@ import org.statefulj.fsm.model.Transition;
 public class FSM<T> extends org.statefulj.fsm.FSM<T> {
 
 	Logger logger = LoggerFactory.getLogger(FSM.class);
+	
+	private boolean coalesceChainedEvents = false;
+	
+	// The Chains in progress on this thread, keyed by the Stateful Entity
+	//
+	private ThreadLocal<Map<T, Chain<T>>> chains = new ThreadLocal<Map<T, Chain<T>>>() {
+
+		@Override
+		protected Map<T, Chain<T>> initialValue() {
+			return new IdentityHashMap<T, Chain<T>>();
+		}
+	};
 
 	public FSM(String name, Persister<T> persister) {
 		super(name, persister);
 	}
 
+	public boolean isCoalesceChainedEvents() {
+		return coalesceChainedEvents;
+	}
+
+	/**
+	 * If true, the Transitions of events chained from within an Action (i.e. "event:xyz") are 
+	 * applied in memory and only the final State is persisted, with a single update qualified by 
+	 * the State prior to the first Transition.  The State field of the Entity isn't updated until 
+	 * the chain completes.  Since a conflict is only detected once the chain completes, the Actions 
+	 * of the chain may be re-executed on a retry
+	 * 
+	 * @param coalesceChainedEvents
+	 */
+	public void setCoalesceChainedEvents(boolean coalesceChainedEvents) {
+		this.coalesceChainedEvents = coalesceChainedEvents;
+	}
+
+	@Override
+	public State<T> getCurrentState(T stateful) {
+		Chain<T> chain = (this.coalesceChainedEvents) ? this.chains.get().get(stateful) : null;
+		return (chain == null) ? super.getCurrentState(stateful) : chain.current;
+	}
+
 	protected State<T> transition(T stateful, State<T> current, String event, Transition<T> transition, Object... args) throws RetryException {
+		
+		// Only the outermost Transition of a chain persists the State
+		//
+		if (!this.coalesceChainedEvents || this.chains.get().containsKey(stateful)) {
+			return doTransition(stateful, current, event, transition, args);
+		}
+		
+		Map<T, Chain<T>> chains = this.chains.get();
+		Chain<T> chain = new Chain<T>(current);
+		chains.put(stateful, chain);
+		try {
+			doTransition(stateful, current, event, transition, args);
+		} finally {
+			chains.remove(stateful);
+		}
+		if (chain.dirty) {
+			super.setCurrent(stateful, chain.start, chain.current);
+		}
+		return chain.current;
+	}
+	
+	@Override
+	protected void setCurrent(T stateful, State<T> current, State<T> next) throws StaleStateException {
+		Chain<T> chain = (this.coalesceChainedEvents) ? this.chains.get().get(stateful) : null;
+		if (chain == null) {
+			super.setCurrent(stateful, current, next);
+		} else {
+			chain.current = next;
+			chain.dirty = true;
+		}
+	}
+
+	private State<T> doTransition(T stateful, State<T> current, String event, Transition<T> transition, Object... args) throws RetryException {
 		State<T> next = null;
 		
 		// If this is an "Any" transition - then skip checking for valid transition
@@ -55,4 +127,21 @@ public class FSM<T> extends org.statefulj.fsm.FSM<T> {
 		}
 		return next;
 	}
+
+	/**
+	 * The in-memory State of an Entity while processing a chain of events
+	 */
+	private static class Chain<T> {
+		
+		State<T> start;
+		
+		State<T> current;
+		
+		boolean dirty = false;
+		
+		Chain(State<T> start) {
+			this.start = start;
+			this.current = start;
+		}
+	}
 }
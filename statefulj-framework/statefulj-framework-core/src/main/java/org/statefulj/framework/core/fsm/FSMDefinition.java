@@ -0,0 +1,170 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.fsm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.statefulj.framework.core.actions.DomainEntityMethodInvocationAction;
+import org.statefulj.framework.core.actions.MethodInvocationAction;
+import org.statefulj.fsm.model.Action;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.Transition;
+
+/**
+ * The Transitions and Actions of a StatefulController, built in code as a single bean rather than 
+ * a bean per Transition and Action.  The Transitions are added to their States on construction
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class FSMDefinition {
+	
+	private final Map<String, State<Object>> states;
+	
+	private final List<Transition<Object>> transitions;
+	
+	/**
+	 * @param states The States of the FSM
+	 * @param transitionDefinitions The Transitions, in the order they are added to the States
+	 * @param fsm The FSM, invoked by the Actions
+	 * @param controller The StatefulController, or null if it is a DomainEntity
+	 */
+	public FSMDefinition(
+			List<State<Object>> states,
+			List<TransitionDefinition> transitionDefinitions,
+			FSM<Object> fsm,
+			Object controller) {
+		
+		Map<String, State<Object>> stateMap = new HashMap<String, State<Object>>();
+		for(State<Object> state : states) {
+			stateMap.put(state.getName(), state);
+		}
+		this.states = Collections.unmodifiableMap(stateMap);
+		
+		// Build an Action per method, shared by all of its Transitions
+		//
+		Map<String, Action<Object>> actions = new HashMap<String, Action<Object>>();
+		List<Transition<Object>> transitions = new LinkedList<Transition<Object>>();
+		for(TransitionDefinition definition : transitionDefinitions) {
+			Action<Object> action = null;
+			if (definition.getMethod() != null) {
+				String actionKey = definition.getMethod() + Arrays.toString(definition.getParameters());
+				action = actions.get(actionKey);
+				if (action == null) {
+					action = (controller == null) 
+							? new DomainEntityMethodInvocationAction(definition.getMethod(), definition.getParameters(), fsm)
+							: new MethodInvocationAction(definition.getMethod(), definition.getParameters(), fsm, controller);
+					actions.put(actionKey, action);
+				}
+			}
+			transitions.add(new TransitionImpl<Object>(
+					getState(definition.getFrom()), 
+					getState(definition.getTo()), 
+					definition.getEvent(), 
+					action, 
+					definition.isAny()));
+		}
+		this.transitions = Collections.unmodifiableList(transitions);
+	}
+	
+	public Map<String, State<Object>> getStates() {
+		return states;
+	}
+
+	public List<Transition<Object>> getTransitions() {
+		return transitions;
+	}
+
+	private State<Object> getState(String name) {
+		State<Object> state = this.states.get(name);
+		if (state == null) {
+			throw new RuntimeException("Unable to locate state " + name);
+		}
+		return state;
+	}
+
+	/**
+	 * An immutable definition of a Transition
+	 */
+	public static class TransitionDefinition {
+		
+		private final String from;
+		
+		private final String to;
+		
+		private final String event;
+		
+		private final String method;
+		
+		private final Class<?>[] parameters;
+		
+		private final boolean any;
+		
+		/**
+		 * @param from The name of the from State
+		 * @param to The name of the to State
+		 * @param event The event
+		 * @param method The name of the Action method, or null if a noop
+		 * @param parameters The parameter types of the Action method
+		 * @param any Whether the Transition applies to any State
+		 */
+		public TransitionDefinition(
+				String from, 
+				String to, 
+				String event, 
+				String method, 
+				Class<?>[] parameters, 
+				boolean any) {
+			this.from = from;
+			this.to = to;
+			this.event = event;
+			this.method = method;
+			this.parameters = parameters;
+			this.any = any;
+		}
+
+		public String getFrom() {
+			return from;
+		}
+
+		public String getTo() {
+			return to;
+		}
+
+		public String getEvent() {
+			return event;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public Class<?>[] getParameters() {
+			return parameters;
+		}
+
+		public boolean isAny() {
+			return any;
+		}
+	}
+}
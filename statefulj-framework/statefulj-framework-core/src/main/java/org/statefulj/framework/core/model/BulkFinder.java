@@ -0,0 +1,36 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Finder which is able to load a set of Entities in a single call
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface BulkFinder<T, CT> extends Finder<T, CT> {
+
+	/**
+	 * @return The Entities that were found, keyed by the Ids as they were passed in
+	 */
+	Map<Object, T> findAll(Class<T> clazz, List<?> ids, String event, CT context);
+	
+}
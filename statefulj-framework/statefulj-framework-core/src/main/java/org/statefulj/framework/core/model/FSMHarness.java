@@ -17,6 +17,11 @@
  */
 package org.statefulj.framework.core.model;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.statefulj.fsm.TooBusyException;
 
 public interface FSMHarness {
@@ -25,4 +30,46 @@ public interface FSMHarness {
 
 	public Object onEvent(String event, Object[] parms) throws TooBusyException, InstantiationException;
 
+	/**
+	 * Process the event for each of the Entities.  The Entities are loaded together and
+	 * the results are returned keyed by Id, in the order of the ids.  A default, so that existing 
+	 * FSMHarnesses don't have to implement it - it passes the same parameters to 
+	 * {@link #onEvents(String, Map)} for each Id
+	 * 
+	 * @param event The event
+	 * @param ids The Ids of the Entities, each Id may only be passed once
+	 * @param parms The parameters, the first parameter is the context
+	 * @return The result of each event, keyed by Id
+	 * @throws TooBusyException
+	 */
+	public default Map<Object, Object> onEvents(String event, List<?> ids, Object[] parms) throws TooBusyException {
+		if (new HashSet<Object>(ids).size() != ids.size()) {
+			throw new IllegalArgumentException("Duplicate ids, event=" + event + ", ids=" + ids);
+		}
+		Map<Object, Object[]> parmsById = new LinkedHashMap<Object, Object[]>();
+		for(Object id : ids) {
+			parmsById.put(id, parms);
+		}
+		return onEvents(event, parmsById);
+	}
+
+	/**
+	 * Process the event for each of the Entities, each with its own parameters.  The Entities are 
+	 * loaded together and the results are returned keyed by Id, in the order of the Map.  A default, 
+	 * so that existing FSMHarnesses don't have to implement it - it processes each event with 
+	 * {@link #onEvent(String, Object, Object[])}
+	 * 
+	 * @param event The event
+	 * @param parmsById The parameters of each Entity, keyed by Id, the first parameter is the context
+	 * @return The result of each event, keyed by Id
+	 * @throws TooBusyException
+	 */
+	public default Map<Object, Object> onEvents(String event, Map<?, Object[]> parmsById) throws TooBusyException {
+		Map<Object, Object> results = new LinkedHashMap<Object, Object>();
+		for(Map.Entry<?, Object[]> entry : parmsById.entrySet()) {
+			results.put(entry.getKey(), onEvent(event, entry.getKey(), entry.getValue()));
+		}
+		return results;
+	}
+
 }
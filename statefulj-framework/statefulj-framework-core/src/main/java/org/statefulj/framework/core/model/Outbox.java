@@ -0,0 +1,40 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model;
+
+import java.io.Serializable;
+
+/**
+ * An Outbox records the side effects of an Action as messages within the transaction of the 
+ * State change.  Once the transaction commits, the messages are dispatched to an 
+ * {@link OutboxDispatcher} by a relay, at least once
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface Outbox {
+
+	/**
+	 * Record a message for the destination.  Must be called within a transaction
+	 * 
+	 * @param destination The destination of the message
+	 * @param message The message
+	 */
+	void add(String destination, Serializable message);
+	
+}
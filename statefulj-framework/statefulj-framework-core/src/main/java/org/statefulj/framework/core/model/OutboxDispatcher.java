@@ -0,0 +1,42 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Dispatches the messages recorded in an {@link Outbox}.  Messages are dispatched at least once,
+ * in the order they were recorded for their destination, so the Dispatcher must tolerate 
+ * duplicates
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface OutboxDispatcher {
+
+	/**
+	 * Dispatch a batch of messages.  If an exception is thrown, the batch will be dispatched again
+	 * 
+	 * @param destination The destination of the messages
+	 * @param messages The messages, in the order they were recorded
+	 * @throws Exception
+	 */
+	void dispatch(String destination, List<Serializable> messages) throws Exception;
+	
+}
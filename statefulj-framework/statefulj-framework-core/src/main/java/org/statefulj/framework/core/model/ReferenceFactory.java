@@ -39,6 +39,16 @@ public interface ReferenceFactory {
 	
 	String getTransitionId(int cnt);
 	
+	/**
+	 * The id of the FSMDefinition registered in compact mode.  A default, so that existing 
+	 * ReferenceFactories don't have to implement it
+	 * 
+	 * @return The id of the FSMDefinition
+	 */
+	default String getFSMDefinitionId() {
+		return getFSMId() + "Definition";
+	}
+	
 	String getActionId(Method method);
 
 }
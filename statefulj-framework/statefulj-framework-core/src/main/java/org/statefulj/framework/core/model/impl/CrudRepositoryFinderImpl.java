@@ -18,14 +18,24 @@
 package org.statefulj.framework.core.model.impl;
 
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
+import org.springframework.beans.SimpleTypeConverter;
 import org.springframework.data.repository.CrudRepository;
-import org.statefulj.framework.core.model.Finder;
+import org.statefulj.common.utils.ReflectionUtils;
+import org.statefulj.framework.core.model.BulkFinder;
 
-public class CrudRepositoryFinderImpl<T, CT> implements Finder<T, CT> {
+public class CrudRepositoryFinderImpl<T, CT> implements BulkFinder<T, CT> {
 	
 	CrudRepository<T, Serializable> repo;
 	
+	private volatile Field idField;
+	
 	public CrudRepositoryFinderImpl(CrudRepository<T, Serializable> repo) {
 		this.repo = repo;
 	}
@@ -40,4 +50,62 @@ public class CrudRepositoryFinderImpl<T, CT> implements Finder<T, CT> {
 		return null;
 	}
 
+	/**
+	 * The Ids are converted to the type of the Entity's Id field, so the results are keyed by the
+	 * Ids as they were passed in.  An Id passed more than once is only loaded once
+	 */
+	@Override
+	public Map<Object, T> findAll(Class<T> clazz, List<?> ids, String event, CT context) {
+		
+		// Map the converted Ids back to the Ids as they were passed in
+		//
+		Map<Serializable, List<Object>> idMap = new LinkedHashMap<Serializable, List<Object>>();
+		for(Object id : ids) {
+			Serializable converted = convertId(clazz, id);
+			List<Object> passedIds = idMap.get(converted);
+			if (passedIds == null) {
+				passedIds = new LinkedList<Object>();
+				idMap.put(converted, passedIds);
+			}
+			passedIds.add(id);
+		}
+		
+		Map<Object, T> found = new HashMap<Object, T>();
+		Field idField = getIdField(clazz);
+		for(T stateful : repo.findAll(new LinkedList<Serializable>(idMap.keySet()))) {
+			try {
+				List<Object> passedIds = idMap.get(idField.get(stateful));
+				if (passedIds != null) {
+					for(Object id : passedIds) {
+						found.put(id, stateful);
+					}
+				}
+			} catch (IllegalArgumentException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return found;
+	}
+	
+	private Serializable convertId(Class<T> clazz, Object id) {
+		Class<?> idType = getIdField(clazz).getType();
+		return (Serializable)((id == null || idType.isInstance(id)) 
+				? id 
+				: new SimpleTypeConverter().convertIfNecessary(id, idType));
+	}
+	
+	private Field getIdField(Class<T> clazz) {
+		if (this.idField == null) {
+			Field idField = ReflectionUtils.getIdField(clazz);
+			if (idField == null) {
+				throw new RuntimeException("No Id field defined for " + clazz.getName());
+			}
+			idField.setAccessible(true);
+			this.idField = idField;
+		}
+		return this.idField;
+	}
+
 }
@@ -17,8 +17,22 @@
  */
 package org.statefulj.framework.core.model.impl;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Resource;
 
@@ -26,16 +40,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
+import org.statefulj.framework.core.model.BulkFinder;
 import org.statefulj.framework.core.model.FSMHarness;
 import org.statefulj.framework.core.model.Factory;
 import org.statefulj.framework.core.model.Finder;
 import org.statefulj.framework.core.model.StatefulFSM;
+import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.StateProbe;
 import org.statefulj.fsm.TooBusyException;
+import org.statefulj.fsm.model.State;
 
 public class FSMHarnessImpl<T, CT> implements FSMHarness {
 	
 	private Logger logger = LoggerFactory.getLogger(FSMHarnessImpl.class);
 	
+	// Annotations that mark a member as requiring injection.  Matched by name so that
+	// the optional APIs don't need to be on the classpath
+	//
+	private static final Set<String> INJECTION_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+			"org.springframework.beans.factory.annotation.Autowired",
+			"org.springframework.beans.factory.annotation.Value",
+			"javax.inject.Inject",
+			"javax.annotation.Resource",
+			"javax.ejb.EJB",
+			"javax.xml.ws.WebServiceRef",
+			"javax.persistence.PersistenceContext",
+			"javax.persistence.PersistenceUnit"));
+	
+	// Whether an Entity class has any members requiring injection, keyed by class
+	//
+	private Map<Class<?>, Boolean> injectables = new ConcurrentHashMap<Class<?>, Boolean>();
+	
 	private Factory<T, CT> factory;
 	
 	private Finder<T, CT> finder;
@@ -44,6 +79,10 @@ public class FSMHarnessImpl<T, CT> implements FSMHarness {
 	
 	private Class<T> clazz;
 	
+	private StateProbe<T> stateProbe;
+	
+	private ExecutorService executor;
+	
 	@Resource
 	ApplicationContext appContext;
 	
@@ -65,13 +104,13 @@ public class FSMHarnessImpl<T, CT> implements FSMHarness {
 		ArrayList<Object> parmList = new ArrayList<Object>(Arrays.asList(parms));
 		CT context = (parmList.size() > 0) ? (CT)parmList.remove(0) : null;
 		
-		T stateful = null;
-		
-		if (id == null) {
-			stateful = this.finder.find(clazz, event, context);
-		} else {
-			stateful = this.finder.find(clazz, id, event, context);
+		// If we can read just the State, skip loading the Entity when the event is a noop
+		//
+		if (id != null && this.stateProbe != null && isNoop(event, id)) {
+			return null;
 		}
+		
+		T stateful = findStateful(event, id, context);
 
 		if (stateful == null) {
 			if (id != null) {
@@ -86,13 +125,7 @@ public class FSMHarnessImpl<T, CT> implements FSMHarness {
 			}
 		}
 		
-		// Autowire instantiated object 
-		// TODO: Make this configurable - if using @Configurable - then this isn't necessary
-		//
-		appContext.getAutowireCapableBeanFactory().autowireBeanProperties(
-				stateful,
-			    AutowireCapableBeanFactory.AUTOWIRE_NO, 
-			    false);
+		autowire(stateful);
 		
 		return fsm.onEvent(stateful, event, parmList.toArray());
 	}
@@ -104,4 +137,198 @@ public class FSMHarnessImpl<T, CT> implements FSMHarness {
 		return onEvent(event, id, parmList.toArray());
 	}
 
+	/**
+	 * Process the event for each of the Entities, each with its own parameters.  The Entities are 
+	 * loaded with a single call if the Finder is a {@link BulkFinder}, which is passed the context
+	 * of the first Entity
+	 */
+	@Override
+	@SuppressWarnings({ "unchecked" })
+	public Map<Object, Object> onEvents(final String event, Map<?, Object[]> parmsById) throws TooBusyException {
+		
+		// Split each Entity's parameters into its context and the parameters of the FSM
+		//
+		List<Object> ids = new ArrayList<Object>(parmsById.size());
+		Map<Object, CT> contexts = new HashMap<Object, CT>();
+		Map<Object, Object[]> fsmParmsById = new HashMap<Object, Object[]>();
+		for(Map.Entry<?, Object[]> entry : parmsById.entrySet()) {
+			ArrayList<Object> parmList = new ArrayList<Object>(Arrays.asList(entry.getValue()));
+			ids.add(entry.getKey());
+			contexts.put(entry.getKey(), (parmList.size() > 0) ? (CT)parmList.remove(0) : null);
+			fsmParmsById.put(entry.getKey(), parmList.toArray());
+		}
+		
+		// Load all the Entities at once, if the Finder supports it
+		//
+		Map<Object, T> statefuls = (this.finder instanceof BulkFinder && !ids.isEmpty()) 
+				? ((BulkFinder<T, CT>)this.finder).findAll(clazz, ids, event, contexts.get(ids.get(0)))
+				: new HashMap<Object, T>();
+		
+		// Dispatch the event to each Entity
+		//
+		Map<Object, Object> results = new LinkedHashMap<Object, Object>();
+		Map<Object, Future<Object>> futures = new LinkedHashMap<Object, Future<Object>>();
+		ExecutorService executor = getExecutor();
+		for(Object id : ids) {
+			final Object[] fsmParms = fsmParmsById.get(id);
+			T stateful = statefuls.get(id);
+			if (stateful == null) {
+				stateful = findStateful(event, id, contexts.get(id));
+			}
+			if (stateful == null) {
+				logger.error("Unable to locate object of type {}, id={}, event={}", clazz.getName(), id, event);
+				throw new RuntimeException("Unable to locate object of type " + clazz.getName() + ", id=" + id + ", event=" + event);
+			}
+			autowire(stateful);
+			
+			if (executor == null) {
+				results.put(id, fsm.onEvent(stateful, event, fsmParms));
+			} else {
+				final T target = stateful;
+				futures.put(id, executor.submit(new Callable<Object>() {
+
+					@Override
+					public Object call() throws Exception {
+						return fsm.onEvent(target, event, fsmParms);
+					}
+				}));
+			}
+		}
+		
+		// Collect the parallel results, rethrowing the first failure in the order of the Ids
+		//
+		List<Throwable> failures = new LinkedList<Throwable>();
+		for(Map.Entry<Object, Future<Object>> entry : futures.entrySet()) {
+			try {
+				results.put(entry.getKey(), entry.getValue().get());
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				failures.add(e.getCause());
+			}
+		}
+		if (!failures.isEmpty()) {
+			Throwable failure = failures.get(0);
+			if (failure instanceof TooBusyException) {
+				throw (TooBusyException)failure;
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException)failure;
+			}
+			throw new RuntimeException(failure);
+		}
+		return results;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * If set, {@link #onEvents(String, Map)} dispatches the events to the Entities 
+	 * in parallel on the executor
+	 * 
+	 * @param executor
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * If the Persister is able to probe the State of an Entity by its Id, the Harness will consult the 
+	 * probed State before loading the Entity.  The StatefulFactory only sets the Persister if its
+	 * probeState property is enabled
+	 * 
+	 * @param persister The Persister of the Entity
+	 */
+	@SuppressWarnings("unchecked")
+	public void setPersister(Persister<T> persister) {
+		this.stateProbe = (persister instanceof StateProbe) ? (StateProbe<T>)persister : null;
+	}
+
+	/**
+	 * An event is a noop if the persisted State doesn't have a Transition for it and isn't 
+	 * blocking.  If the Entity can't be found, it isn't a noop - it's left to the Finder
+	 */
+	protected boolean isNoop(String event, Object id) {
+		State<T> current = this.stateProbe.probeCurrent(id);
+		if (current != null && current.getTransition(event) == null && !current.isBlocking()) {
+			logger.debug("{}({})::{}({})->{}/noop", 
+					clazz.getSimpleName(),
+					id,
+					current.getName(), 
+					event,
+					current.getName());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Autowire the instantiated object.  Entities without any injectable members are skipped; 
+	 * Spring caches the injection metadata of the rest
+	 * TODO: Make this configurable - if using @Configurable - then this isn't necessary
+	 */
+	protected void autowire(T stateful) {
+		if (!isInjectable(stateful.getClass())) {
+			return;
+		}
+		appContext.getAutowireCapableBeanFactory().autowireBeanProperties(
+				stateful,
+			    AutowireCapableBeanFactory.AUTOWIRE_NO, 
+			    false);
+	}
+
+	/**
+	 * Determine, once per class, whether any field or method of the class or its superclasses
+	 * is annotated, directly or through a meta-annotation, for injection
+	 * 
+	 * @param clazz The class of the Entity
+	 * @return true if the Entity must be autowired
+	 */
+	protected boolean isInjectable(Class<?> clazz) {
+		Boolean injectable = injectables.get(clazz);
+		if (injectable == null) {
+			injectable = false;
+			for(Class<?> cls = clazz; cls != null && cls != Object.class && !injectable; cls = cls.getSuperclass()) {
+				injectable = hasInjectionAnnotation(cls.getDeclaredFields()) || hasInjectionAnnotation(cls.getDeclaredMethods());
+			}
+			injectables.put(clazz, injectable);
+		}
+		return injectable;
+	}
+
+	private boolean hasInjectionAnnotation(AccessibleObject[] members) {
+		for(AccessibleObject member : members) {
+			for(Annotation annotation : member.getAnnotations()) {
+				if (isInjectionAnnotation(annotation)) {
+					return true;
+				}
+				for(Annotation meta : annotation.annotationType().getAnnotations()) {
+					if (isInjectionAnnotation(meta)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	private boolean isInjectionAnnotation(Annotation annotation) {
+		return INJECTION_ANNOTATIONS.contains(annotation.annotationType().getName());
+	}
+
+	/**
+	 * Locate the Stateful Entity via the Finder
+	 * 
+	 * @param event The event
+	 * @param id The Id of the Entity, may be null
+	 * @param context The context
+	 * @return The Entity or null
+	 */
+	protected T findStateful(String event, Object id, CT context) {
+		return (id == null) 
+				? this.finder.find(clazz, event, context) 
+				: this.finder.find(clazz, id, event, context);
+	}
 }
@@ -19,30 +19,165 @@ package org.statefulj.framework.core.model.impl;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.statefulj.framework.core.model.Factory;
 
+/**
+ * Default Factory, instantiates the Entity via its no-arg constructor.  For each Entity class, 
+ * a Factory that directly invokes the constructor is generated; if the constructor isn't 
+ * reachable from generated code, the Factory falls back to the cached Constructor
+ * 
+ * @author Andrew Hall
+ *
+ */
 public class FactoryImpl<T, CT> implements Factory<T, CT> {
+	
+	private static final String FACTORY_SUFFIX = "$$StatefulFactory";
+	
+	Logger logger = LoggerFactory.getLogger(FactoryImpl.class);
+	
+	private Map<Class<?>, Factory<T, CT>> factories = new ConcurrentHashMap<Class<?>, Factory<T, CT>>();
+	
+	public FactoryImpl() {
+	}
+
+	/**
+	 * Build the Factory for the Entity class upfront
+	 * 
+	 * @param clazz The Entity class
+	 */
+	public FactoryImpl(Class<T> clazz) {
+		getFactory(clazz);
+	}
 
 	@Override
 	public T create(Class<T> clazz, String event, CT context) {
+		return getFactory(clazz).create(clazz, event, context);
+	}
+	
+	private Factory<T, CT> getFactory(Class<T> clazz) {
+		Factory<T, CT> factory = this.factories.get(clazz);
+		if (factory == null) {
+			factory = buildFactory(clazz);
+			this.factories.put(clazz, factory);
+		}
+		return factory;
+	}
+	
+	private Factory<T, CT> buildFactory(Class<T> clazz) {
+		Constructor<T> ctr = null;
 		try {
-			Constructor<T> ctr = clazz.getDeclaredConstructor();
-			ctr.setAccessible(true);
-			return ctr.newInstance();
-		} catch(IllegalAccessException e) {
-			throw new RuntimeException(e);
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalArgumentException e) {
-			throw new RuntimeException(e);
-		} catch (InvocationTargetException e) {
-			throw new RuntimeException(e);
+			ctr = clazz.getDeclaredConstructor();
 		} catch (SecurityException e) {
 			throw new RuntimeException(e);
 		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(clazz.getCanonicalName() + " does not have a default constructor");
+			// Defer the error until an Entity is created
+			//
+			return new ConstructorFactory<T, CT>(null);
+		}
+		
+		if (isGeneratable(clazz, ctr)) {
+			try {
+				return generateFactory(clazz);
+			} catch (Exception e) {
+				logger.warn("Unable to generate a Factory for {}, reverting to reflection: {}", clazz.getName(), e.getMessage());
+			}
+		}
+		ctr.setAccessible(true);
+		return new ConstructorFactory<T, CT>(ctr);
+	}
+	
+	/**
+	 * Generated code can only invoke a non-private constructor of a concrete, non-private class
+	 */
+	private boolean isGeneratable(Class<T> clazz, Constructor<T> ctr) {
+		return !Modifier.isAbstract(clazz.getModifiers()) 
+				&& !Modifier.isPrivate(clazz.getModifiers()) 
+				&& !Modifier.isPrivate(ctr.getModifiers())
+				&& clazz.getClassLoader() != null
+				&& (clazz.getEnclosingClass() == null || Modifier.isStatic(clazz.getModifiers()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Factory<T, CT> generateFactory(Class<T> clazz) 
+			throws CannotCompileException, NotFoundException, InstantiationException, IllegalAccessException {
+		return (Factory<T, CT>)loadFactoryClass(clazz).newInstance();
+	}
+	
+	/**
+	 * Load the generated Factory class, generating it if it doesn't exist within the ClassLoader of 
+	 * the Entity.  Synchronized so that a class is only ever defined once
+	 */
+	private static synchronized Class<?> loadFactoryClass(Class<?> clazz) throws CannotCompileException, NotFoundException {
+		String factoryClassName = clazz.getName() + FACTORY_SUFFIX;
+		ClassLoader loader = clazz.getClassLoader();
+		
+		// Reuse the Factory class if it was already generated
+		//
+		try {
+			return Class.forName(factoryClassName, true, loader);
+		} catch (ClassNotFoundException e) {
+			// Not yet generated
+			//
 		}
+		
+		// Set up the ClassPool
+		//
+		ClassPool cp = ClassPool.getDefault();
+		cp.appendClassPath(new ClassClassPath(clazz));
+		cp.appendClassPath(new ClassClassPath(FactoryImpl.class));
+
+		// Generate a Factory that invokes the constructor, within the package of the Entity
+		//
+		CtClass factoryClass = cp.makeClass(factoryClassName);
+		factoryClass.addInterface(cp.get(Factory.class.getName()));
+		factoryClass.addMethod(CtNewMethod.make(
+				"public Object create(Class clazz, String event, Object context) { return new " + clazz.getName() + "(); }", 
+				factoryClass));
+		Class<?> generated = factoryClass.toClass(loader, clazz.getProtectionDomain());
+		factoryClass.detach();
+		return generated;
 	}
+	
+	/**
+	 * Factory that instantiates the Entity via its cached no-arg Constructor
+	 */
+	private static class ConstructorFactory<T, CT> implements Factory<T, CT> {
+		
+		private Constructor<T> ctr;
+		
+		ConstructorFactory(Constructor<T> ctr) {
+			this.ctr = ctr;
+		}
 
+		@Override
+		public T create(Class<T> clazz, String event, CT context) {
+			if (this.ctr == null) {
+				throw new RuntimeException(clazz.getCanonicalName() + " does not have a default constructor");
+			}
+			try {
+				return this.ctr.newInstance();
+			} catch(IllegalAccessException e) {
+				throw new RuntimeException(e);
+			} catch (InstantiationException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalArgumentException e) {
+				throw new RuntimeException(e);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
 }
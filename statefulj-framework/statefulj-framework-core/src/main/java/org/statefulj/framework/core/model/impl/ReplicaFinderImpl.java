@@ -0,0 +1,61 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model.impl;
+
+import org.statefulj.framework.core.model.Finder;
+
+/**
+ * Finder which reads the Entity from a replica and only reads from the primary if the replica
+ * doesn't have it yet.  The JPAFSMHarnessImpl keeps a versioned Entity read from the replica, and the 
+ * JPAPerister's update, qualified by its State and version, verifies it on the primary - the Entity is 
+ * only read from the primary if it's stale.  An unversioned Entity is reloaded from the primary
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ReplicaFinderImpl<T, CT> implements Finder<T, CT> {
+	
+	private Finder<T, CT> replica;
+	
+	private Finder<T, CT> primary;
+	
+	public ReplicaFinderImpl(Finder<T, CT> replica, Finder<T, CT> primary) {
+		this.replica = replica;
+		this.primary = primary;
+	}
+
+	@Override
+	public T find(Class<T> clazz, Object id, String event, CT context) {
+		T stateful = this.replica.find(clazz, id, event, context);
+		return (stateful == null) ? this.primary.find(clazz, id, event, context) : stateful;
+	}
+
+	@Override
+	public T find(Class<T> clazz, String event, CT context) {
+		T stateful = this.replica.find(clazz, event, context);
+		return (stateful == null) ? this.primary.find(clazz, event, context) : stateful;
+	}
+
+	public Finder<T, CT> getReplica() {
+		return replica;
+	}
+
+	public Finder<T, CT> getPrimary() {
+		return primary;
+	}
+}
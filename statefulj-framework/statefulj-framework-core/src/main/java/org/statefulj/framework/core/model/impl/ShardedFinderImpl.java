@@ -0,0 +1,66 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model.impl;
+
+import java.util.List;
+
+import org.statefulj.common.utils.ConsistentHash;
+import org.statefulj.framework.core.model.Finder;
+
+/**
+ * Finder which routes a find by Id to one of several underlying Finders by a consistent hash
+ * of the Id.  The Finders must be listed in the same order as the shards of the ShardedPersister.
+ * A find without an Id, including a null Id, is offered to each shard in turn
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ShardedFinderImpl<T, CT> implements Finder<T, CT> {
+	
+	private ConsistentHash<Finder<T, CT>> shards;
+	
+	public ShardedFinderImpl(List<Finder<T, CT>> shards) {
+		this(shards, ConsistentHash.DEFAULT_VIRTUAL_NODES);
+	}
+
+	public ShardedFinderImpl(List<Finder<T, CT>> shards, int virtualNodes) {
+		this.shards = new ConsistentHash<Finder<T, CT>>(shards, virtualNodes);
+	}
+
+	@Override
+	public T find(Class<T> clazz, Object id, String event, CT context) {
+		return (id == null) 
+				? find(clazz, event, context) 
+				: this.shards.get(id).find(clazz, id, event, context);
+	}
+
+	@Override
+	public T find(Class<T> clazz, String event, CT context) {
+		for(Finder<T, CT> finder : this.shards.getNodes()) {
+			T stateful = finder.find(clazz, event, context);
+			if (stateful != null) {
+				return stateful;
+			}
+		}
+		return null;
+	}
+
+	public List<Finder<T, CT>> getShards() {
+		return this.shards.getNodes();
+	}
+}
@@ -26,6 +26,7 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.statefulj.framework.core.controllers.UserController;
 import org.statefulj.framework.core.dao.UserRepository;
+import org.statefulj.framework.core.fsm.FSMDefinition;
 import org.statefulj.framework.core.mocks.MockBeanDefinitionRegistryImpl;
 import org.statefulj.framework.core.mocks.MockProxy;
 import org.statefulj.framework.core.mocks.MockRepositoryFactoryBeanSupport;
@@ -74,5 +75,64 @@ public class StatefulFactoryTest {
 		assertEquals(true, stateFive.getConstructorArgumentValues().getArgumentValue(2, Boolean.class).getValue());
 		
 	}
+	
+	@Test
+	public void testScanClasspath() throws ClassNotFoundException {
+		
+		BeanDefinitionRegistry registry = buildRegistry();
+	
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		StatefulFactory factory = new StatefulFactory();
+		factory.setScanClasspath(true);
+		
+		factory.postProcessBeanDefinitionRegistry(registry);
+		
+		BeanDefinition userControllerMVCProxy = registry.getBeanDefinition(refFactory.getBinderId("mock"));
+		
+		assertEquals(MockProxy.class, Class.forName(userControllerMVCProxy.getBeanClassName()));
+	}
+	
+	@Test
+	public void testCompact() throws ClassNotFoundException {
+		
+		BeanDefinitionRegistry registry = buildRegistry();
+	
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		StatefulFactory factory = new StatefulFactory();
+		factory.setCompact(true);
+		
+		factory.postProcessBeanDefinitionRegistry(registry);
+		
+		// Verify that the Transitions are registered as a single FSMDefinition
+		//
+		BeanDefinition fsmDefinition = registry.getBeanDefinition(refFactory.getFSMDefinitionId());
+		
+		assertEquals(FSMDefinition.class, Class.forName(fsmDefinition.getBeanClassName()));
+		assertFalse(registry.containsBeanDefinition(refFactory.getTransitionId(1)));
+		
+		// States are still registered as beans
+		//
+		assertTrue(registry.containsBeanDefinition(refFactory.getStateId(UserController.FIVE_STATE)));
+	}
+	
+	private BeanDefinitionRegistry buildRegistry() {
+		
+		BeanDefinitionRegistry registry = new MockBeanDefinitionRegistryImpl();
+		
+		BeanDefinition userRepo = BeanDefinitionBuilder
+				.genericBeanDefinition(MockRepositoryFactoryBeanSupport.class)
+				.getBeanDefinition();
+		userRepo.getPropertyValues().add("repositoryInterface", UserRepository.class.getName());
+
+		registry.registerBeanDefinition("userRepo", userRepo);
+	
+		BeanDefinition userController = BeanDefinitionBuilder
+				.genericBeanDefinition(UserController.class)
+				.getBeanDefinition();
+
+		registry.registerBeanDefinition("userController", userController);
+		
+		return registry;
+	}
  
 }
@@ -0,0 +1,137 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.fsm;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.RetryException;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.TooBusyException;
+import org.statefulj.fsm.model.Action;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.impl.StateImpl;
+
+public class FSMTest {
+	
+	State<Entity> stateA = new StateImpl<Entity>("A");
+	State<Entity> stateB = new StateImpl<Entity>("B");
+	State<Entity> stateC = new StateImpl<Entity>("C");
+	State<Entity> stateD = new StateImpl<Entity>("D");
+	
+	MemoryPersister persister = new MemoryPersister();
+	
+	FSM<Entity> fsm = new FSM<Entity>("fsm", persister);
+	
+	@Before
+	public void setUp() {
+		new TransitionImpl<Entity>(stateA, stateB, "a", chain("b"), false);
+		new TransitionImpl<Entity>(stateB, stateC, "b", chain("c"), false);
+		new TransitionImpl<Entity>(stateC, stateD, "c", null, false);
+	}
+	
+	@Test
+	public void testChainedEvents() throws TooBusyException {
+		Entity entity = new Entity();
+		fsm.onEvent(entity, "a");
+		assertEquals("D", entity.state);
+		assertEquals(3, persister.updates.size());
+	}
+
+	@Test
+	public void testCoalescedChainedEvents() throws TooBusyException {
+		fsm.setCoalesceChainedEvents(true);
+		Entity entity = new Entity();
+		State<Entity> state = fsm.onEvent(entity, "a");
+		assertEquals(stateD, state);
+		assertEquals("D", entity.state);
+		assertEquals(1, persister.updates.size());
+		assertEquals("A->D", persister.updates.get(0));
+	}
+
+	@Test
+	public void testCoalescedChainedEventsConflict() throws TooBusyException {
+		fsm.setCoalesceChainedEvents(true);
+		
+		// Another thread moves the Entity to C while the chain is in progress.  The update,
+		// qualified by A, fails and the retried event is a noop from C
+		//
+		Entity entity = new Entity();
+		persister.conflict = stateC;
+		State<Entity> state = fsm.onEvent(entity, "a");
+		assertEquals(stateC, state);
+		assertEquals("C", entity.state);
+		assertEquals(0, persister.updates.size());
+	}
+	
+	private Action<Entity> chain(final String event) {
+		return new Action<Entity>() {
+
+			@Override
+			public void execute(Entity stateful, String current, Object... parms) throws RetryException {
+				try {
+					fsm.onEvent(stateful, event);
+				} catch (TooBusyException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+	
+	static class Entity {
+		
+		String state = "A";
+	}
+	
+	class MemoryPersister implements Persister<Entity> {
+		
+		List<String> updates = new LinkedList<String>();
+		
+		State<Entity> conflict;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public State<Entity> getCurrent(Entity stateful) {
+			for(State<Entity> state : new State[] { stateA, stateB, stateC, stateD }) {
+				if (state.getName().equals(stateful.state)) {
+					return state;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void setCurrent(Entity stateful, State<Entity> current, State<Entity> next) throws StaleStateException {
+			if (this.conflict != null) {
+				stateful.state = this.conflict.getName();
+				this.conflict = null;
+				throw new StaleStateException();
+			}
+			if (!current.getName().equals(stateful.state)) {
+				throw new StaleStateException();
+			}
+			stateful.state = next.getName();
+			this.updates.add(current.getName() + "->" + next.getName());
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.statefulj.framework.core.model.FSMHarness;
+import org.statefulj.framework.core.model.Factory;
+import org.statefulj.framework.core.model.Finder;
+import org.statefulj.framework.core.model.StatefulFSM;
+import org.statefulj.framework.core.model.User;
+import org.statefulj.fsm.TooBusyException;
+
+public class FSMHarnessImplTest {
+	
+	StatefulFSM<User> fsm;
+	
+	Finder<User, Object> finder;
+	
+	FSMHarnessImpl<User, Object> harness;
+	
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws TooBusyException {
+		this.fsm = mock(StatefulFSM.class);
+		this.finder = mock(Finder.class);
+		
+		when(this.finder.find(eq(User.class), any(), anyString(), any())).thenAnswer(new Answer<User>() {
+
+			@Override
+			public User answer(InvocationOnMock invocation) throws Throwable {
+				User user = new User();
+				user.setId((Long)invocation.getArguments()[1]);
+				return user;
+			}
+		});
+		when(this.fsm.onEvent(any(User.class), eq("event"))).thenAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				User user = (User)invocation.getArguments()[0];
+				if (user.getId() == 13L) {
+					throw new TooBusyException();
+				}
+				return "result" + user.getId();
+			}
+		});
+		
+		this.harness = new FSMHarnessImpl<User, Object>(this.fsm, User.class, mock(Factory.class), this.finder);
+		this.harness.appContext = mock(ApplicationContext.class);
+		when(this.harness.appContext.getAutowireCapableBeanFactory()).thenReturn(mock(AutowireCapableBeanFactory.class));
+	}
+
+	@Test
+	public void testOnEvents() throws TooBusyException {
+		Map<Object, Object> results = this.harness.onEvents("event", Arrays.asList(3L, 1L, 2L), new Object[] { null });
+		assertEquals(Arrays.asList(3L, 1L, 2L), Arrays.asList(results.keySet().toArray()));
+		assertEquals("result1", results.get(1L));
+	}
+
+	@Test
+	public void testDefaultOnEvents() throws TooBusyException {
+		
+		// An FSMHarness which only implements onEvent
+		//
+		FSMHarness harness = new FSMHarness() {
+			
+			@Override
+			public Object onEvent(String event, Object id, Object[] parms) throws TooBusyException {
+				return event + id;
+			}
+			
+			@Override
+			public Object onEvent(String event, Object[] parms) throws TooBusyException {
+				return onEvent(event, parms[0], new Object[] {});
+			}
+		};
+		Map<Object, Object> results = harness.onEvents("event", Arrays.asList(3L, 1L, 2L), new Object[] { null });
+		assertEquals(Arrays.asList(3L, 1L, 2L), Arrays.asList(results.keySet().toArray()));
+		assertEquals("event1", results.get(1L));
+	}
+
+	@Test
+	public void testParallelOnEvents() throws TooBusyException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			this.harness.setExecutor(executor);
+			Map<Object, Object> results = this.harness.onEvents("event", Arrays.asList(3L, 1L, 2L), new Object[] { null });
+			assertEquals(Arrays.asList(3L, 1L, 2L), Arrays.asList(results.keySet().toArray()));
+			assertEquals("result2", results.get(2L));
+			
+			try {
+				this.harness.onEvents("event", Arrays.asList(1L, 13L, 2L), new Object[] { null });
+				fail("Expected TooBusyException");
+			} catch(TooBusyException e) {
+				// The other Entities were still processed
+				//
+				verify(this.fsm, times(2)).onEvent(argThat(new UserWithId(2L)), eq("event"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testAutowireSkipped() throws TooBusyException {
+		this.harness.onEvent("event", 1L, new Object[] { null });
+		verify(this.harness.appContext, never()).getAutowireCapableBeanFactory();
+		
+		assertFalse(this.harness.isInjectable(User.class));
+		assertTrue(this.harness.isInjectable(InjectedUser.class));
+	}
+	
+	static class InjectedUser extends User {
+		
+		@org.statefulj.framework.core.annotations.FSM
+		StatefulFSM<User> fsm;
+	}
+
+	static class UserWithId extends org.mockito.ArgumentMatcher<User> {
+		
+		Long id;
+		
+		UserWithId(Long id) {
+			this.id = id;
+		}
+
+		@Override
+		public boolean matches(Object argument) {
+			return argument != null && this.id.equals(((User)argument).getId());
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.statefulj.framework.core.model.User;
+
+public class FactoryImplTest {
+	
+	@Test
+	public void testGeneratedFactory() throws ClassNotFoundException {
+		FactoryImpl<User, Object> factory = new FactoryImpl<User, Object>(User.class);
+		User user = factory.create(User.class, "create", null);
+		assertNotNull(user);
+		assertNotSame(user, factory.create(User.class, "create", null));
+		
+		// The generated Factory is reused by subsequent Factories
+		//
+		assertNotNull(Class.forName(User.class.getName() + "$$StatefulFactory"));
+		assertNotNull(new FactoryImpl<User, Object>(User.class).create(User.class, "create", null));
+	}
+
+	@Test
+	public void testPrivateConstructor() {
+		FactoryImpl<PrivateUser, Object> factory = new FactoryImpl<PrivateUser, Object>();
+		assertNotNull(factory.create(PrivateUser.class, "create", null));
+	}
+
+	@Test(expected=RuntimeException.class)
+	public void testNoDefaultConstructor() {
+		FactoryImpl<NamedUser, Object> factory = new FactoryImpl<NamedUser, Object>();
+		factory.create(NamedUser.class, "create", null);
+	}
+	
+	static class PrivateUser extends User {
+		
+		private PrivateUser() {
+		}
+	}
+	
+	static class NamedUser extends User {
+		
+		NamedUser(String name) {
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.core.model.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.statefulj.common.utils.ConsistentHash;
+import org.statefulj.framework.core.model.Finder;
+import org.statefulj.framework.core.model.User;
+
+public class ShardedFinderImplTest {
+	
+	List<Finder<User, Object>> shards;
+	
+	ShardedFinderImpl<User, Object> finder;
+	
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		this.shards = new ArrayList<Finder<User, Object>>();
+		for(int i = 0; i < 3; i++) {
+			final int shard = i;
+			Finder<User, Object> finder = mock(Finder.class);
+			when(finder.find(eq(User.class), any(), anyString(), any())).thenAnswer(new Answer<User>() {
+
+				@Override
+				public User answer(InvocationOnMock invocation) throws Throwable {
+					User user = new User();
+					user.setId((Long)invocation.getArguments()[1]);
+					return user;
+				}
+			});
+			
+			// Only the last shard finds an Entity without an Id
+			//
+			when(finder.find(eq(User.class), anyString(), any())).thenAnswer(new Answer<User>() {
+
+				@Override
+				public User answer(InvocationOnMock invocation) throws Throwable {
+					return (shard == 2) ? new User() : null;
+				}
+			});
+			this.shards.add(finder);
+		}
+		this.finder = new ShardedFinderImpl<User, Object>(this.shards);
+	}
+	
+	@Test
+	public void testFindById() {
+		
+		// Routed to the same shard as any other ring of the same size
+		//
+		ConsistentHash<Integer> ring = new ConsistentHash<Integer>(Arrays.asList(0, 1, 2));
+		for(long id = 0; id < 30; id++) {
+			assertEquals(Long.valueOf(id), this.finder.find(User.class, id, "event", null).getId());
+			verify(this.shards.get(ring.get(id))).find(User.class, id, "event", null);
+		}
+		for(int i = 0; i < 3; i++) {
+			verify(this.shards.get(i), atLeastOnce()).find(eq(User.class), any(), anyString(), any());
+		}
+	}
+
+	@Test
+	public void testFindWithoutId() {
+		assertNotNull(this.finder.find(User.class, "event", null));
+		
+		// A null Id isn't hashed, it's offered to each shard in turn
+		//
+		assertNotNull(this.finder.find(User.class, null, "event", null));
+		for(Finder<User, Object> shard : this.shards) {
+			verify(shard, times(2)).find(User.class, "event", null);
+			verify(shard, never()).find(eq(User.class), any(), anyString(), any());
+		}
+	}
+}
@@ -17,23 +17,62 @@
  */
 package org.statefulj.framework.persistence.jpa;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
+import org.hibernate.Hibernate;
+import org.hibernate.LockOptions;
+import org.hibernate.NonUniqueObjectException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
+import org.statefulj.framework.core.model.AtomicFSMHarness;
 import org.statefulj.framework.core.model.Factory;
 import org.statefulj.framework.core.model.Finder;
 import org.statefulj.framework.core.model.StatefulFSM;
 import org.statefulj.framework.core.model.impl.FSMHarnessImpl;
 import org.statefulj.fsm.TooBusyException;
 
-public class JPAFSMHarnessImpl<T, CT> extends FSMHarnessImpl<T, CT> {
+public class JPAFSMHarnessImpl<T, CT> extends FSMHarnessImpl<T, CT> implements AtomicFSMHarness {
+	
+	private Logger logger = LoggerFactory.getLogger(JPAFSMHarnessImpl.class);
+	
+	static final long DEFAULT_GROUP_COMMIT_WINDOW = 5;  // 5 ms
+	static final int DEFAULT_GROUP_COMMIT_SIZE = 100;
+	
+	private boolean groupCommit = false;
+	
+	private long groupCommitWindow = DEFAULT_GROUP_COMMIT_WINDOW;
+	
+	private int groupCommitSize = DEFAULT_GROUP_COMMIT_SIZE;
+	
+	private Queue<PendingEvent> pendingEvents = new ConcurrentLinkedQueue<PendingEvent>();
+	
+	private AtomicBoolean groupLeader = new AtomicBoolean(false);
 	
 	@Resource
 	JpaTransactionManager transactionManager;
 	
+	@PersistenceContext
+	EntityManager entityManager;
+	
 	public JPAFSMHarnessImpl(
 			StatefulFSM<T> fsm, 
 			Class<T> clazz, 
@@ -44,13 +83,51 @@ public class JPAFSMHarnessImpl<T, CT> extends FSMHarnessImpl<T, CT> {
 	
 	@Override
 	public Object onEvent(final String event, final Object id, final Object[] parms) throws TooBusyException {
+		
+		// Events raised within a transaction - including events raised by an Action of a group - 
+		// join that transaction rather than a group
+		//
+		if (this.groupCommit && !TransactionSynchronizationManager.isActualTransactionActive()) {
+			return groupCommit(new PendingEvent(event, id, parms));
+		}
+		return onEventInTransaction(event, id, parms);
+	}
+
+	@Override
+	public Object onEvent(final String event, final Object[] parms) throws TooBusyException {
+		
+		// The Id is the first parameter - the event will be grouped by onEvent(event, id, parms)
+		//
+		if (this.groupCommit) {
+			return super.onEvent(event, parms);
+		}
 		TransactionTemplate tt = new TransactionTemplate(transactionManager);
 		return tt.execute(new TransactionCallback<Object>() {
 
 			@Override
 			public Object doInTransaction(TransactionStatus status) {
 				try {
-					return JPAFSMHarnessImpl.super.onEvent(event, id, parms);
+					return JPAFSMHarnessImpl.super.onEvent(event, parms);
+				} catch (TooBusyException e) {
+					throw new RuntimeException(e);
+				} 
+			}
+			
+		});
+	}
+
+	/**
+	 * Process all the events within a single transaction
+	 */
+	@Override
+	public Map<Object, Object> onEvents(final String event, final Map<?, Object[]> parmsById) throws TooBusyException {
+		TransactionTemplate tt = new TransactionTemplate(transactionManager);
+		return tt.execute(new TransactionCallback<Map<Object, Object>>() {
+
+			@Override
+			public Map<Object, Object> doInTransaction(TransactionStatus status) {
+				try {
+					return JPAFSMHarnessImpl.super.onEvents(event, parmsById);
 				} catch (TooBusyException e) {
 					throw new RuntimeException(e);
 				}
@@ -59,20 +136,248 @@ public class JPAFSMHarnessImpl<T, CT> extends FSMHarnessImpl<T, CT> {
 		});
 	}
 
+	public boolean isGroupCommit() {
+		return groupCommit;
+	}
+
+	/**
+	 * If true, events arriving on this Harness within the groupCommitWindow are processed in a single 
+	 * transaction by whichever calling thread becomes the group's leader.  If any event of the group fails,
+	 * the transaction is rolled back, that event fails and every other event of the group is re-run by its 
+	 * own caller in its own transaction.  As the group runs on the leader's thread, the Actions don't see 
+	 * the other callers' thread-bound context, such as a security context.  Callers which are already
+	 * within a transaction don't join a group
+	 * 
+	 * @param groupCommit
+	 */
+	public void setGroupCommit(boolean groupCommit) {
+		this.groupCommit = groupCommit;
+	}
+
+	public long getGroupCommitWindow() {
+		return groupCommitWindow;
+	}
+
+	/**
+	 * @param groupCommitWindow The number of milliseconds the leader waits for events to join its group
+	 */
+	public void setGroupCommitWindow(long groupCommitWindow) {
+		this.groupCommitWindow = groupCommitWindow;
+	}
+
+	public int getGroupCommitSize() {
+		return groupCommitSize;
+	}
+
+	/**
+	 * @param groupCommitSize The maximum number of events in a single transaction
+	 */
+	public void setGroupCommitSize(int groupCommitSize) {
+		this.groupCommitSize = groupCommitSize;
+	}
+
+	/**
+	 * The EntityManager of the transaction is bound to the calling thread, so the events
+	 * are never dispatched in parallel
+	 */
 	@Override
-	public Object onEvent(final String event, final Object[] parms) throws TooBusyException {
+	public ExecutorService getExecutor() {
+		return null;
+	}
+
+	/**
+	 * If the Finder returned an Entity outside of the current persistence context - for example, from
+	 * a read replica - and the Entity is versioned, reattach the copy without reading it.  The JPAPerister's 
+	 * update, qualified by the State and version, then verifies the copy against the primary before any 
+	 * Action runs, and the Entity is only read from the primary if the copy is stale.  The Action of an
+	 * "any" Transition doesn't update the State, so a stale copy is instead rejected by the version check 
+	 * when the Entity is flushed.  An unversioned 
+	 * Entity is reloaded by its Id from the primary, as a stale copy of its other columns couldn't be 
+	 * detected and its update would overwrite newer data
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected T findStateful(String event, Object id, CT context) {
+		T stateful = super.findStateful(event, id, context);
+		if (stateful != null 
+				&& this.entityManager != null 
+				&& !this.entityManager.contains(stateful)) {
+			Class<T> clazz = Hibernate.getClass(stateful);
+			Object primaryId = this.entityManager
+					.getEntityManagerFactory()
+					.getPersistenceUnitUtil()
+					.getIdentifier(stateful);
+			if (primaryId == null) {
+				return null;
+			}
+			if (!this.entityManager.getMetamodel().entity(clazz).hasVersionAttribute()) {
+				return this.entityManager.find(clazz, primaryId);
+			}
+			try {
+				this.entityManager.unwrap(Session.class).buildLockRequest(LockOptions.NONE).lock(stateful);
+			} catch(NonUniqueObjectException e) {
+				
+				// Already within the persistence context, so it isn't read
+				//
+				stateful = this.entityManager.find(clazz, primaryId);
+			}
+		}
+		return stateful;
+	}
+
+	private Object onEventInTransaction(final String event, final Object id, final Object[] parms) {
 		TransactionTemplate tt = new TransactionTemplate(transactionManager);
 		return tt.execute(new TransactionCallback<Object>() {
 
 			@Override
 			public Object doInTransaction(TransactionStatus status) {
 				try {
-					return JPAFSMHarnessImpl.super.onEvent(event, parms);
+					return JPAFSMHarnessImpl.super.onEvent(event, id, parms);
 				} catch (TooBusyException e) {
 					throw new RuntimeException(e);
-				} 
+				}
 			}
 			
 		});
 	}
+
+	/**
+	 * Queue the event and wait for it to be committed.  If no other thread is committing a group, this 
+	 * thread becomes the leader and commits the next group itself.  If the group was rolled back due to 
+	 * another event, the event is re-run in its own transaction
+	 */
+	private Object groupCommit(PendingEvent pending) throws TooBusyException {
+		this.pendingEvents.add(pending);
+		while(!pending.isDone()) {
+			if (this.groupLeader.compareAndSet(false, true)) {
+				try {
+					if (!pending.isDone()) {
+						commitGroup();
+					}
+				} finally {
+					this.groupLeader.set(false);
+				}
+			} else {
+				pending.await(this.groupCommitWindow);
+			}
+		}
+		if (pending.retry) {
+			return onEventInTransaction(pending.event, pending.id, pending.parms);
+		}
+		return pending.getResult();
+	}
+	
+	private void commitGroup() {
+		
+		// Give concurrent events a chance to join the group
+		//
+		if (this.pendingEvents.size() < this.groupCommitSize && this.groupCommitWindow > 0) {
+			try {
+				Thread.sleep(this.groupCommitWindow);
+			} catch(InterruptedException ie) {
+				throw new RuntimeException(ie);
+			}
+		}
+		
+		final List<PendingEvent> group = new LinkedList<PendingEvent>();
+		PendingEvent next = null;
+		while(group.size() < this.groupCommitSize && (next = this.pendingEvents.poll()) != null) {
+			group.add(next);
+		}
+		
+		boolean committed = false;
+		try {
+			TransactionTemplate tt = new TransactionTemplate(transactionManager);
+			committed = tt.execute(new TransactionCallback<Boolean>() {
+				
+				@Override
+				public Boolean doInTransaction(TransactionStatus status) {
+					for(PendingEvent pending : group) {
+						try {
+							pending.result = JPAFSMHarnessImpl.super.onEvent(pending.event, pending.id, pending.parms);
+							
+							// Flush so that a failure is attributed to the event which caused it
+							//
+							entityManager.flush();
+						} catch(Throwable t) {
+							
+							// Including Errors, so that the failed event isn't re-run 
+							//
+							pending.failure = t;
+						}
+						if (pending.failure != null) {
+							status.setRollbackOnly();
+							return false;
+						}
+					}
+					return true;
+				}
+			});
+		} catch(RuntimeException e) {
+			logger.warn("Unable to commit group of {} events, retrying each event", group.size(), e);
+		} finally {
+			
+			// If the group was rolled back, the events that didn't fail are re-run by their callers.  Only 
+			// release the callers once the outcome of the transaction is known
+			//
+			for(PendingEvent pending : group) {
+				if (!committed && pending.failure == null) {
+					pending.result = null;
+					pending.retry = true;
+				}
+				pending.done.countDown();
+			}
+		}
+	}
+	
+	private static class PendingEvent {
+		
+		final String event;
+		
+		final Object id;
+		
+		final Object[] parms;
+		
+		final CountDownLatch done = new CountDownLatch(1);
+		
+		Object result;
+		
+		Throwable failure;
+		
+		boolean retry = false;
+		
+		PendingEvent(String event, Object id, Object[] parms) {
+			this.event = event;
+			this.id = id;
+			this.parms = parms;
+		}
+		
+		boolean isDone() {
+			return this.done.getCount() == 0;
+		}
+		
+		void await(long wait) {
+			try {
+				this.done.await(wait, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException ie) {
+				throw new RuntimeException(ie);
+			}
+		}
+		
+		Object getResult() throws TooBusyException {
+			if (this.failure instanceof TooBusyException) {
+				throw (TooBusyException)this.failure;
+			}
+			if (this.failure instanceof RuntimeException) {
+				throw (RuntimeException)this.failure;
+			}
+			if (this.failure instanceof Error) {
+				throw (Error)this.failure;
+			}
+			if (this.failure != null) {
+				throw new RuntimeException(this.failure);
+			}
+			return this.result;
+		}
+	}
 }
@@ -0,0 +1,74 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.persistence.jpa;
+
+import java.io.Serializable;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.SerializationUtils;
+import org.statefulj.framework.core.model.Outbox;
+import org.statefulj.framework.persistence.jpa.model.OutboxMessage;
+
+/**
+ * An {@link Outbox} which persists the messages, as {@link OutboxMessage}s, within the JPA 
+ * transaction of the State change.  Since the {@link JPAFSMHarnessImpl} processes an event within 
+ * a transaction, an Action records its side effects by adding them to the Outbox.  If a 
+ * {@link JPAOutboxRelay} is set, it's signalled once the transaction commits
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class JPAOutbox implements Outbox {
+	
+	@PersistenceContext
+	EntityManager entityManager;
+	
+	private JPAOutboxRelay relay;
+	
+	@Override
+	public void add(String destination, Serializable message) {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			throw new IllegalStateException("Messages can only be added to the Outbox within a transaction");
+		}
+		this.entityManager.persist(new OutboxMessage(destination, SerializationUtils.serialize(message)));
+		
+		// Dispatch as soon as the transaction commits, rather than wait for the next poll
+		//
+		if (this.relay != null) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					relay.signal();
+				}
+			});
+		}
+	}
+
+	public JPAOutboxRelay getRelay() {
+		return relay;
+	}
+
+	public void setRelay(JPAOutboxRelay relay) {
+		this.relay = relay;
+	}
+}
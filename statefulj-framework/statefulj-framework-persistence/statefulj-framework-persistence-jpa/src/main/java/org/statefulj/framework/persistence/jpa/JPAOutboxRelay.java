@@ -0,0 +1,303 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.persistence.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.SerializationUtils;
+import org.statefulj.framework.core.model.OutboxDispatcher;
+import org.statefulj.framework.persistence.jpa.model.OutboxMessage;
+
+/**
+ * Relays the messages of the {@link JPAOutbox} to an {@link OutboxDispatcher}.  Messages are read 
+ * in batches, in the order they were recorded, and dispatched grouped by destination.  The messages
+ * of a destination are deleted within the same transaction once dispatched; if the transaction fails 
+ * to commit, they'll be dispatched again.  Delivery is therefore at least once.  A single relay per 
+ * database should be run so that the order per destination is kept.
+ * 
+ * If the dispatch to a destination fails, the destination is held back for the retryDelay, so it
+ * doesn't block the other destinations.  Once a message has failed maxAttempts times - or immediately,
+ * if it can't be deserialized - it's dead lettered: it's retained, but never dispatched again.
+ * 
+ * Started with {@link #start()} and stopped with {@link #stop()}, e.g. as the init-method and 
+ * destroy-method of the bean
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class JPAOutboxRelay {
+	
+	static final int DEFAULT_BATCH_SIZE = 100;
+	static final long DEFAULT_INTERVAL = 1000;  // 1 sec
+	static final int DEFAULT_MAX_ATTEMPTS = 10;
+	static final long DEFAULT_RETRY_DELAY = 5000;  // 5 secs
+	
+	Logger logger = LoggerFactory.getLogger(JPAOutboxRelay.class);
+	
+	private OutboxDispatcher dispatcher;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	
+	private long interval = DEFAULT_INTERVAL;
+	
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	
+	private long retryDelay = DEFAULT_RETRY_DELAY;
+	
+	private ScheduledExecutorService relayer;
+	
+	private AtomicBoolean signalled = new AtomicBoolean(false);
+	
+	@PersistenceContext
+	EntityManager entityManager;
+	
+	public JPAOutboxRelay(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	public JPAOutboxRelay(PlatformTransactionManager transactionManager, OutboxDispatcher dispatcher) {
+		this(transactionManager);
+		this.dispatcher = dispatcher;
+	}
+	
+	/**
+	 * Start polling the Outbox every interval
+	 */
+	public synchronized void start() {
+		if (this.relayer != null) {
+			return;
+		}
+		this.relayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "statefulj-outbox-relay");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.relayer.scheduleWithFixedDelay(new Runnable() {
+			
+			@Override
+			public void run() {
+				relayAll();
+			}
+		}, this.interval, this.interval, TimeUnit.MILLISECONDS);
+	}
+	
+	public synchronized void stop() {
+		if (this.relayer != null) {
+			this.relayer.shutdown();
+			this.relayer = null;
+		}
+	}
+	
+	/**
+	 * Relay the Outbox now rather than wait for the next poll.  Signals are coalesced, so only a
+	 * single relay is pending at a time
+	 */
+	public synchronized void signal() {
+		if (this.relayer != null && this.signalled.compareAndSet(false, true)) {
+			this.relayer.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					signalled.set(false);
+					relayAll();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Relay batches until the Outbox is drained, or a dispatch fails
+	 */
+	public void relayAll() {
+		try {
+			while(relay() == this.batchSize);
+		} catch(RuntimeException e) {
+			logger.error("Unable to relay the Outbox", e);
+		}
+	}
+
+	/**
+	 * Relay a single batch of messages
+	 * 
+	 * @return The number of messages dispatched
+	 */
+	public int relay() {
+		if (this.dispatcher == null) {
+			throw new IllegalStateException("No OutboxDispatcher has been set");
+		}
+		return this.transactionTemplate.execute(new TransactionCallback<Integer>() {
+
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				
+				// Skip the dead letters and the destinations being held back
+				//
+				List<OutboxMessage> batch = entityManager
+						.createQuery(
+								"select m from OutboxMessage m " +
+								"where m.deadLettered = false " +
+								"and not exists (" +
+									"select h.id from OutboxMessage h " +
+									"where h.destination = m.destination " +
+									"and h.deadLettered = false " +
+									"and h.retryAt > :now) " +
+								"order by m.id", 
+								OutboxMessage.class)
+						.setParameter("now", new Date())
+						.setMaxResults(batchSize)
+						.getResultList();
+				
+				// Group the messages by destination, preserving their order
+				//
+				Map<String, List<OutboxMessage>> destinations = new LinkedHashMap<String, List<OutboxMessage>>();
+				for(OutboxMessage message : batch) {
+					List<OutboxMessage> messages = destinations.get(message.getDestination());
+					if (messages == null) {
+						messages = new LinkedList<OutboxMessage>();
+						destinations.put(message.getDestination(), messages);
+					}
+					messages.add(message);
+				}
+				
+				int dispatched = 0;
+				for(Map.Entry<String, List<OutboxMessage>> entry : destinations.entrySet()) {
+					dispatched += dispatch(entry.getKey(), entry.getValue());
+				}
+				return dispatched;
+			}
+		});
+	}
+	
+	public OutboxDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	public void setDispatcher(OutboxDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @param interval The interval, in milliseconds, between polls of the Outbox
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts The number of times a message is dispatched before it's dead lettered
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * @param retryDelay The number of milliseconds a destination is held back after a failed dispatch
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	private int dispatch(String destination, List<OutboxMessage> messages) {
+		
+		// Dead letter the messages which can't be deserialized, rather than fail the batch
+		//
+		List<OutboxMessage> dispatchable = new LinkedList<OutboxMessage>();
+		List<Serializable> payloads = new LinkedList<Serializable>();
+		for(OutboxMessage message : messages) {
+			try {
+				payloads.add((Serializable)SerializationUtils.deserialize(message.getMessage()));
+				dispatchable.add(message);
+			} catch(RuntimeException e) {
+				logger.error("Unable to deserialize message {} to {}, dead lettering", message.getId(), destination, e);
+				message.setDeadLettered(true);
+			}
+		}
+		if (dispatchable.isEmpty()) {
+			return 0;
+		}
+		try {
+			this.dispatcher.dispatch(destination, payloads);
+		} catch(Exception e) {
+			holdBack(destination, dispatchable, e);
+			return 0;
+		}
+		for(OutboxMessage message : dispatchable) {
+			this.entityManager.remove(message);
+		}
+		return dispatchable.size();
+	}
+	
+	private void holdBack(String destination, List<OutboxMessage> messages, Exception failure) {
+		Date retryAt = new Date(System.currentTimeMillis() + this.retryDelay);
+		for(OutboxMessage message : messages) {
+			message.setAttempts(message.getAttempts() + 1);
+			if (message.getAttempts() >= this.maxAttempts) {
+				logger.error("Unable to dispatch message {} to {} after {} attempts, dead lettering", message.getId(), destination, message.getAttempts(), failure);
+				message.setDeadLettered(true);
+			} else {
+				message.setRetryAt(retryAt);
+			}
+		}
+		logger.warn("Unable to dispatch {} messages to {}, will retry: {}", messages.size(), destination, failure.getMessage());
+	}
+}
@@ -46,6 +46,8 @@ public class JPAPersistenceSupportBeanFactory implements PersistenceSupportBeanF
 		BeanDefinition factoryBean = BeanDefinitionBuilder
 				.genericBeanDefinition(FactoryImpl.class)
 				.getBeanDefinition();
+		ConstructorArgumentValues args = factoryBean.getConstructorArgumentValues();
+		args.addIndexedArgumentValue(0, statefulClass);
 		return factoryBean;
 	}
 
@@ -0,0 +1,215 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.persistence.jpa;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.ReplicationMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.statefulj.common.utils.ConsistentHash;
+import org.statefulj.framework.core.model.Factory;
+import org.statefulj.framework.core.model.Finder;
+import org.statefulj.framework.core.model.StatefulFSM;
+import org.statefulj.framework.core.model.impl.FSMHarnessImpl;
+import org.statefulj.fsm.TooBusyException;
+
+/**
+ * Harness which runs each event within a transaction on the shard owning the Entity.  The shard 
+ * is chosen by a consistent hash of the Id, so the Transaction Managers must be listed in the same 
+ * order as the shards of the ShardedPersister and ShardedFinderImpl.  
+ * 
+ * Events without an Id run on the first shard, so Entities are always created there and their Ids 
+ * are all generated by the first shard's database.  Once the event is committed, an Entity created 
+ * by the event whose Id hashes to another shard is copied, with its Id, to that shard and then removed 
+ * from the first shard.  The copy is made with Hibernate's replicate, so only the associations which 
+ * cascade on replicate are moved with it
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ShardedJPAFSMHarnessImpl<T, CT> extends FSMHarnessImpl<T, CT> {
+	
+	private ConsistentHash<JpaTransactionManager> transactionManagers;
+	
+	private CreationRecorder<T, CT> creations;
+	
+	public ShardedJPAFSMHarnessImpl(
+			StatefulFSM<T> fsm, 
+			Class<T> clazz, 
+			Factory<T, CT> factory,
+			Finder<T, CT> finder,
+			List<JpaTransactionManager> transactionManagers) {
+		this(fsm, clazz, new CreationRecorder<T, CT>(factory), finder, transactionManagers);
+	}
+	
+	private ShardedJPAFSMHarnessImpl(
+			StatefulFSM<T> fsm, 
+			Class<T> clazz, 
+			CreationRecorder<T, CT> creations,
+			Finder<T, CT> finder,
+			List<JpaTransactionManager> transactionManagers) {
+		super(fsm, clazz, creations, finder);
+		this.creations = creations;
+		this.transactionManagers = new ConsistentHash<JpaTransactionManager>(transactionManagers);
+	}
+	
+	@Override
+	public Object onEvent(String event, Object id, Object[] parms) throws TooBusyException {
+		if (id != null) {
+			return onEventInTransaction(this.transactionManagers.get(id), event, id, parms);
+		}
+		
+		// Create on the first shard, then move the Entity to the shard of its new Id
+		//
+		JpaTransactionManager first = this.transactionManagers.getNodes().get(0);
+		List<T> previous = this.creations.record();
+		try {
+			Object result = onEventInTransaction(first, event, null, parms);
+			for(T created : this.creations.getRecorded()) {
+				rehome(created, first);
+			}
+			return result;
+		} finally {
+			this.creations.restore(previous);
+		}
+	}
+
+	/**
+	 * Each event runs in its own transaction, on the shard of its Entity
+	 */
+	@Override
+	public Map<Object, Object> onEvents(String event, Map<?, Object[]> parmsById) throws TooBusyException {
+		Map<Object, Object> results = new LinkedHashMap<Object, Object>();
+		for(Map.Entry<?, Object[]> entry : parmsById.entrySet()) {
+			results.put(entry.getKey(), onEvent(event, entry.getKey(), entry.getValue()));
+		}
+		return results;
+	}
+	
+	private Object onEventInTransaction(
+			JpaTransactionManager transactionManager, 
+			final String event, 
+			final Object id, 
+			final Object[] parms) {
+		TransactionTemplate tt = new TransactionTemplate(transactionManager);
+		return tt.execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				try {
+					return ShardedJPAFSMHarnessImpl.super.onEvent(event, id, parms);
+				} catch (TooBusyException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			
+		});
+	}
+	
+	private void rehome(final T stateful, final JpaTransactionManager from) {
+		final Object id = from.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(stateful);
+		
+		// Not persisted or already on its shard?
+		//
+		if (id == null) {
+			return;
+		}
+		final JpaTransactionManager to = this.transactionManagers.get(id);
+		if (to == from) {
+			return;
+		}
+		
+		// Copy first, so that if the move fails the Entity is left on the first shard
+		//
+		new TransactionTemplate(to).execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(to.getEntityManagerFactory());
+				entityManager.unwrap(Session.class).replicate(stateful, ReplicationMode.EXCEPTION);
+				return null;
+			}
+			
+		});
+		new TransactionTemplate(from).execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(from.getEntityManagerFactory());
+				entityManager.remove(entityManager.getReference(stateful.getClass(), id));
+				return null;
+			}
+			
+		});
+	}
+	
+	/**
+	 * Factory which records, for the calling thread, the Entities it creates
+	 */
+	private static class CreationRecorder<T, CT> implements Factory<T, CT> {
+		
+		private Factory<T, CT> factory;
+		
+		private ThreadLocal<List<T>> created = new ThreadLocal<List<T>>();
+		
+		public CreationRecorder(Factory<T, CT> factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public T create(Class<T> clazz, String event, CT context) {
+			T stateful = this.factory.create(clazz, event, context);
+			List<T> recorded = this.created.get();
+			if (stateful != null && recorded != null) {
+				recorded.add(stateful);
+			}
+			return stateful;
+		}
+		
+		/**
+		 * Start recording, returning the recording of any enclosing event
+		 */
+		public List<T> record() {
+			List<T> previous = this.created.get();
+			this.created.set(new ArrayList<T>());
+			return previous;
+		}
+		
+		public List<T> getRecorded() {
+			return this.created.get();
+		}
+		
+		public void restore(List<T> previous) {
+			if (previous == null) {
+				this.created.remove();
+			} else {
+				this.created.set(previous);
+			}
+		}
+	}
+}
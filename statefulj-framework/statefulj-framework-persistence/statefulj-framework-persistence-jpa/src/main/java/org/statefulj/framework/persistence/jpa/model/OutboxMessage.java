@@ -0,0 +1,122 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.persistence.jpa.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A message recorded in the {@link org.statefulj.framework.persistence.jpa.JPAOutbox}.  The package 
+ * of this Entity must be included in the packages scanned by the EntityManagerFactory
+ * 
+ * @author Andrew Hall
+ *
+ */
+@Entity
+@Table(name="statefulj_outbox")
+public class OutboxMessage {
+	
+	@Id
+	@GeneratedValue(strategy=GenerationType.SEQUENCE)
+	private Long id;
+	
+	@Column(nullable=false)
+	private String destination;
+	
+	@Lob
+	@Column(nullable=false)
+	private byte[] message;
+	
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date created;
+	
+	private int attempts = 0;
+	
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date retryAt;
+	
+	private boolean deadLettered = false;
+	
+	public OutboxMessage() {
+	}
+	
+	public OutboxMessage(String destination, byte[] message) {
+		this.destination = destination;
+		this.message = message;
+		this.created = new Date();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getDestination() {
+		return destination;
+	}
+
+	public byte[] getMessage() {
+		return message;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	/**
+	 * @return The number of failed attempts to dispatch the message
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	/**
+	 * @return The time before which the messages of the destination won't be dispatched again
+	 */
+	public Date getRetryAt() {
+		return retryAt;
+	}
+
+	public void setRetryAt(Date retryAt) {
+		this.retryAt = retryAt;
+	}
+
+	/**
+	 * @return Whether the relay has given up on the message.  Dead lettered messages are retained 
+	 * for inspection, but are never dispatched
+	 */
+	public boolean isDeadLettered() {
+		return deadLettered;
+	}
+
+	public void setDeadLettered(boolean deadLettered) {
+		this.deadLettered = deadLettered;
+	}
+}
@@ -0,0 +1,208 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.persistence.jpa;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.statefulj.common.utils.ConsistentHash;
+import org.statefulj.framework.core.model.Factory;
+import org.statefulj.framework.core.model.Finder;
+import org.statefulj.framework.core.model.StatefulFSM;
+import org.statefulj.framework.persistence.jpa.model.Account;
+import org.statefulj.fsm.TooBusyException;
+
+public class ShardedJPAFSMHarnessImplTest {
+	
+	List<EmbeddedDatabase> databases = new ArrayList<EmbeddedDatabase>();
+	
+	List<EntityManagerFactory> entityManagerFactories = new ArrayList<EntityManagerFactory>();
+	
+	List<JpaTransactionManager> transactionManagers = new ArrayList<JpaTransactionManager>();
+	
+	List<Long> created = new ArrayList<Long>();
+	
+	ShardedJPAFSMHarnessImpl<Account, Object> harness;
+	
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws TooBusyException {
+		Properties jpaProperties = new Properties();
+		jpaProperties.setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+		jpaProperties.setProperty("hibernate.hbm2ddl.auto", "create");
+		for(int i = 0; i < 2; i++) {
+			EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setName("shard" + i).build();
+			LocalContainerEntityManagerFactoryBean emfBean = new LocalContainerEntityManagerFactoryBean();
+			emfBean.setDataSource(database);
+			emfBean.setPersistenceUnitName("shard" + i);
+			emfBean.setPackagesToScan(Account.class.getPackage().getName());
+			emfBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			emfBean.setJpaProperties(jpaProperties);
+			emfBean.afterPropertiesSet();
+			this.databases.add(database);
+			this.entityManagerFactories.add(emfBean.getObject());
+			this.transactionManagers.add(new JpaTransactionManager(emfBean.getObject()));
+		}
+		
+		Factory<Account, Object> factory = mock(Factory.class);
+		when(factory.create(eq(Account.class), anyString(), any())).thenAnswer(new Answer<Account>() {
+
+			@Override
+			public Account answer(InvocationOnMock invocation) throws Throwable {
+				return new Account();
+			}
+		});
+		
+		// Find within the transaction of the shard
+		//
+		Finder<Account, Object> finder = mock(Finder.class);
+		when(finder.find(eq(Account.class), any(), anyString(), any())).thenAnswer(new Answer<Account>() {
+
+			@Override
+			public Account answer(InvocationOnMock invocation) throws Throwable {
+				return currentEntityManager().find(Account.class, invocation.getArguments()[1]);
+			}
+		});
+		
+		// The "Action" persists a new Account and returns the shard it ran on
+		//
+		StatefulFSM<Account> fsm = mock(StatefulFSM.class);
+		when(fsm.onEvent(any(Account.class), anyString(), anyVararg())).thenAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Account account = (Account)invocation.getArguments()[0];
+				account.setLastEvent((String)invocation.getArguments()[1]);
+				if (account.getId() == null) {
+					currentEntityManager().persist(account);
+					currentEntityManager().flush();
+					created.add(account.getId());
+				}
+				return currentShard();
+			}
+		});
+		
+		this.harness = new ShardedJPAFSMHarnessImpl<Account, Object>(
+				fsm, 
+				Account.class, 
+				factory, 
+				finder, 
+				this.transactionManagers);
+	}
+	
+	@After
+	public void tearDown() {
+		for(EntityManagerFactory emf : this.entityManagerFactories) {
+			emf.close();
+		}
+		for(EmbeddedDatabase database : this.databases) {
+			database.shutdown();
+		}
+	}
+	
+	@Test
+	public void testCreateIsRehomed() throws TooBusyException {
+		ConsistentHash<Integer> ring = new ConsistentHash<Integer>(Arrays.asList(0, 1));
+		
+		// Created on the first shard and then moved to the shard of its Id
+		//
+		int moved = 0;
+		for(int i = 0; i < 10; i++) {
+			assertEquals(0, this.harness.onEvent("create", null, new Object[]{ null }));
+			Long id = this.created.get(i);
+			int shard = ring.get(id);
+			moved += shard;
+			assertNotNull(load(shard, id));
+			assertNull(load(1 - shard, id));
+			assertEquals("create", load(shard, id).getLastEvent());
+		}
+		assertTrue(moved > 0);
+		
+		// Later events find the Entity within the transaction of its shard
+		//
+		for(Long id : this.created) {
+			assertEquals(ring.get(id), this.harness.onEvent("update", id, new Object[]{ null }));
+			assertEquals("update", load(ring.get(id), id).getLastEvent());
+		}
+	}
+
+	@Test
+	public void testOnEventsRunsEachOnItsShard() throws TooBusyException {
+		ConsistentHash<Integer> ring = new ConsistentHash<Integer>(Arrays.asList(0, 1));
+		for(int i = 0; i < 10; i++) {
+			this.harness.onEvent("create", null, new Object[]{ null });
+		}
+		
+		Map<Object, Object[]> parmsById = new LinkedHashMap<Object, Object[]>();
+		for(Long id : this.created) {
+			parmsById.put(id, new Object[]{ null });
+		}
+		Map<Object, Object> results = this.harness.onEvents("bulk", parmsById);
+		
+		assertEquals(new ArrayList<Object>(parmsById.keySet()), new ArrayList<Object>(results.keySet()));
+		for(Long id : this.created) {
+			assertEquals(ring.get(id), results.get(id));
+			assertEquals("bulk", load(ring.get(id), id).getLastEvent());
+		}
+	}
+	
+	private Account load(int shard, Long id) {
+		EntityManager entityManager = this.entityManagerFactories.get(shard).createEntityManager();
+		try {
+			return entityManager.find(Account.class, id);
+		} finally {
+			entityManager.close();
+		}
+	}
+	
+	private int currentShard() {
+		for(int i = 0; i < this.entityManagerFactories.size(); i++) {
+			if (TransactionSynchronizationManager.hasResource(this.entityManagerFactories.get(i))) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("No transaction");
+	}
+	
+	private EntityManager currentEntityManager() {
+		return EntityManagerFactoryUtils.getTransactionalEntityManager(this.entityManagerFactories.get(currentShard()));
+	}
+}
@@ -47,6 +47,8 @@ public class MongoPersistenceSupportBeanFactory implements PersistenceSupportBea
 		BeanDefinition factoryBean = BeanDefinitionBuilder
 				.genericBeanDefinition(FactoryImpl.class)
 				.getBeanDefinition();
+		ConstructorArgumentValues args = factoryBean.getConstructorArgumentValues();
+		args.addIndexedArgumentValue(0, statefulClass);
 		return factoryBean;
 	}
 
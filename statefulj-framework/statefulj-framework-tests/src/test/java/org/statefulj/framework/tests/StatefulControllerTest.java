@@ -17,18 +17,52 @@
  */
 package org.statefulj.framework.tests;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Resource;
+import javax.persistence.EntityManagerFactory;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
 
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -36,12 +70,32 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResult.DeferredResultHandler;
+import org.statefulj.framework.binders.camel.CamelBinder;
+import org.statefulj.framework.binders.common.AsyncExecutor;
+import org.statefulj.framework.binders.common.ProxyGenerator;
+import org.statefulj.framework.binders.common.utils.JavassistUtils;
+import org.statefulj.framework.binders.reactive.ReactiveBinder;
+import org.statefulj.framework.binders.reactive.ReactiveServer;
+import org.statefulj.framework.binders.ringbuffer.RingBufferEndpoints;
+import org.statefulj.framework.binders.camel.IdExtractor;
+import org.statefulj.framework.binders.camel.PartitionedDispatcher;
 import org.statefulj.common.utils.ReflectionUtils;
 import org.statefulj.framework.core.annotations.FSM;
 import org.statefulj.framework.core.model.ReferenceFactory;
+import org.statefulj.framework.core.model.BulkFinder;
 import org.statefulj.framework.core.model.FSMHarness;
+import org.statefulj.framework.core.model.Factory;
+import org.statefulj.framework.core.model.Finder;
+import org.statefulj.framework.core.model.Outbox;
+import org.statefulj.framework.core.model.OutboxDispatcher;
 import org.statefulj.framework.core.model.StatefulFSM;
 import org.statefulj.framework.core.model.impl.ReferenceFactoryImpl;
+import org.statefulj.framework.core.model.impl.ReplicaFinderImpl;
+import org.statefulj.framework.persistence.jpa.JPAFSMHarnessImpl;
+import org.statefulj.framework.persistence.jpa.JPAOutboxRelay;
+import org.statefulj.framework.tests.controllers.UserController;
 import org.statefulj.framework.tests.dao.UserRepository;
 import org.statefulj.framework.tests.model.User;
 
@@ -68,6 +122,12 @@ public class StatefulControllerTest {
 	@Resource(name="userController.fsmHarness")
 	FSMHarness fsmHarness;
 	
+	@Resource
+	Outbox outbox;
+	
+	@Resource
+	JPAOutboxRelay outboxRelay;
+	
 	@FSM("userController")
 	StatefulFSM<User> userFSM;
 	
@@ -190,8 +250,13 @@ public class StatefulControllerTest {
 		// Now kick off an event, it should block and then eventually throw a TooBusyException
 		//
 		org.statefulj.framework.core.fsm.FSM<User> fsm = (org.statefulj.framework.core.fsm.FSM<User>)this.appContext.getBean(refFactory.getFSMId());
+		int retries = fsm.getRetries();
 		fsm.setRetries(1);
-		fsm.onEvent(user, "block.me");
+		try {
+			fsm.onEvent(user, "block.me");
+		} finally {
+			fsm.setRetries(retries);
+		}
 	}
 
 	@Test
@@ -261,4 +326,1089 @@ public class StatefulControllerTest {
 		
 		assertEquals(User.SEVEN_STATE, dbUser.getState());
 	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testReplicaFinder() throws TooBusyException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		User user = new User();
+		user.setName("original");
+		user = userRepo.save(user);
+		final User notReplicated = userRepo.save(new User());
+		
+		// Count the reads of Users from the database
+		//
+		final Statistics statistics = this.appContext.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		final String entityName = User.class.getName();
+		
+		// The "replica" reads the User in its own transaction, so the User isn't
+		// part of the harness's persistence context.  If stale, the primary is then 
+		// updated once, so the replica's copy is stale
+		//
+		final AtomicBoolean stale = new AtomicBoolean(false);
+		final AtomicInteger replicaReads = new AtomicInteger();
+		Finder<User, Object> replica = new Finder<User, Object>() {
+
+			@Override
+			public User find(Class<User> clazz, final Object id, String event, Object context) {
+				if (notReplicated.getId().equals(id)) {
+					return null;
+				}
+				long loads = statistics.getEntityStatistics(entityName).getLoadCount();
+				TransactionTemplate tt = new TransactionTemplate(transactionManager);
+				tt.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+				User replicated = tt.execute(new TransactionCallback<User>() {
+
+					@Override
+					public User doInTransaction(TransactionStatus status) {
+						return userRepo.findOne((Long)id);
+					}
+				});
+				if (stale.getAndSet(false)) {
+					tt.execute(new TransactionCallback<User>() {
+	
+						@Override
+						public User doInTransaction(TransactionStatus status) {
+							User primary = userRepo.findOne((Long)id);
+							primary.setName("newer");
+							return userRepo.save(primary);
+						}
+					});
+				}
+				replicaReads.addAndGet((int)(statistics.getEntityStatistics(entityName).getLoadCount() - loads));
+				return replicated;
+			}
+
+			@Override
+			public User find(Class<User> clazz, String event, Object context) {
+				return null;
+			}
+		};
+		Finder<User, Object> primary = (Finder<User, Object>)this.appContext.getBean(refFactory.getFinderId());
+		Factory<User, Object> factory = (Factory<User, Object>)this.appContext.getBean(refFactory.getFactoryId());
+		
+		JPAFSMHarnessImpl<User, Object> harness = new JPAFSMHarnessImpl<User, Object>(
+				userFSM, 
+				User.class, 
+				factory, 
+				new ReplicaFinderImpl<User, Object>(replica, primary));
+		this.appContext.getAutowireCapableBeanFactory().autowireBean(harness);
+		
+		try {
+			
+			// The replica's copy is verified by the qualified update, without reading the primary
+			//
+			long loads = statistics.getEntityStatistics(entityName).getLoadCount();
+			harness.onEvent("renameOne", user.getId(), new Object[]{ mock(HttpServletRequest.class), "-renamed" });
+			assertEquals(0, statistics.getEntityStatistics(entityName).getLoadCount() - loads - replicaReads.get());
+			assertEquals("original-renamed", userRepo.findOne(user.getId()).getName());
+			
+			// A stale copy is refreshed from the primary, and the Action is applied to the primary's data
+			//
+			stale.set(true);
+			replicaReads.set(0);
+			loads = statistics.getEntityStatistics(entityName).getLoadCount();
+			harness.onEvent("renameOne", user.getId(), new Object[]{ mock(HttpServletRequest.class), "-renamed" });
+			assertEquals(1, statistics.getEntityStatistics(entityName).getLoadCount() - loads - replicaReads.get());
+			assertEquals("newer-renamed", userRepo.findOne(user.getId()).getName());
+			
+			// If the replica doesn't have the User yet, the Finder falls back to the primary
+			//
+			replicaReads.set(0);
+			loads = statistics.getEntityStatistics(entityName).getLoadCount();
+			harness.onEvent("five", notReplicated.getId(), new Object[]{ mock(HttpServletRequest.class) });
+			assertEquals(0, replicaReads.get());
+			assertEquals(1, statistics.getEntityStatistics(entityName).getLoadCount() - loads);
+			assertEquals(User.FIVE_STATE, userRepo.findOne(notReplicated.getId()).getState());
+		} finally {
+			statistics.setStatisticsEnabled(false);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStateProbe() throws TooBusyException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		User user = userRepo.save(new User());
+		
+		// The probe is opt-in, so the StatefulFactory doesn't give the Harness the Persister
+		//
+		assertFalse(((ConfigurableApplicationContext)this.appContext)
+				.getBeanFactory()
+				.getBeanDefinition(refFactory.getFSMHarnessId())
+				.getPropertyValues()
+				.contains("persister"));
+		
+		// Count the Entity loads
+		//
+		final AtomicInteger loads = new AtomicInteger();
+		final Finder<User, Object> primary = (Finder<User, Object>)this.appContext.getBean(refFactory.getFinderId());
+		Finder<User, Object> finder = new Finder<User, Object>() {
+
+			@Override
+			public User find(Class<User> clazz, Object id, String event, Object context) {
+				loads.incrementAndGet();
+				return primary.find(clazz, id, event, context);
+			}
+
+			@Override
+			public User find(Class<User> clazz, String event, Object context) {
+				return null;
+			}
+		};
+		Factory<User, Object> factory = (Factory<User, Object>)this.appContext.getBean(refFactory.getFactoryId());
+		
+		JPAFSMHarnessImpl<User, Object> harness = new JPAFSMHarnessImpl<User, Object>(userFSM, User.class, factory, finder);
+		harness.setPersister((Persister<User>)this.appContext.getBean(refFactory.getPersisterId()));
+		this.appContext.getAutowireCapableBeanFactory().autowireBean(harness);
+		
+		// A noop doesn't load the Entity
+		//
+		assertNull(harness.onEvent("no-such-event", user.getId(), new Object[]{ mock(HttpServletRequest.class) }));
+		assertEquals(0, loads.get());
+		
+		harness.onEvent("five", user.getId(), new Object[]{ mock(HttpServletRequest.class) });
+		assertEquals(1, loads.get());
+		assertEquals(User.FIVE_STATE, userRepo.findOne(user.getId()).getState());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBulkEvents() throws TooBusyException {
+		User user1 = userRepo.save(new User());
+		User user2 = userRepo.save(new User());
+		User user3 = userRepo.save(new User());
+		
+		Map<Object, Object> results = fsmHarness.onEvents(
+				"five", 
+				Arrays.asList(user3.getId(), user1.getId(), user2.getId()), 
+				new Object[]{ mock(HttpServletRequest.class) });
+		
+		assertEquals(Arrays.asList(user3.getId(), user1.getId(), user2.getId()), Arrays.asList(results.keySet().toArray()));
+		for(User user : Arrays.asList(user1, user2, user3)) {
+			assertEquals(User.FIVE_STATE, userRepo.findOne(user.getId()).getState());
+		}
+		
+		// Ids are converted to the Id's type, and the Entities are keyed by the Ids as passed in
+		//
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		BulkFinder<User, Object> finder = (BulkFinder<User, Object>)this.appContext.getBean(refFactory.getFinderId());
+		Map<Object, User> found = finder.findAll(
+				User.class, 
+				Arrays.asList(String.valueOf(user1.getId()), user2.getId()), 
+				"five", 
+				null);
+		assertEquals(2, found.size());
+		assertEquals(user1.getId(), found.get(String.valueOf(user1.getId())).getId());
+		assertEquals(user2.getId(), found.get(user2.getId()).getId());
+		
+		// Duplicate Ids are rejected
+		//
+		try {
+			fsmHarness.onEvents("five", Arrays.asList(user1.getId(), user1.getId()), new Object[]{ null });
+			fail("Expected an IllegalArgumentException");
+		} catch(IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGroupCommit() throws InterruptedException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Finder<User, Object> finder = (Finder<User, Object>)this.appContext.getBean(refFactory.getFinderId());
+		Factory<User, Object> factory = (Factory<User, Object>)this.appContext.getBean(refFactory.getFactoryId());
+		
+		final JPAFSMHarnessImpl<User, Object> harness = new JPAFSMHarnessImpl<User, Object>(userFSM, User.class, factory, finder);
+		harness.setGroupCommit(true);
+		harness.setGroupCommitWindow(50);
+		this.appContext.getAutowireCapableBeanFactory().autowireBean(harness);
+		
+		// Fire events concurrently, one of which fails as its User doesn't exist
+		//
+		final List<Long> ids = new LinkedList<Long>();
+		for(int i = 0; i < 4; i++) {
+			ids.add(userRepo.save(new User()).getId());
+		}
+		ids.add(Long.MAX_VALUE);
+		
+		final Map<Long, Throwable> failures = new ConcurrentHashMap<Long, Throwable>();
+		List<Thread> threads = new LinkedList<Thread>();
+		for(final Long id : ids) {
+			Thread thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						harness.onEvent("five", id, new Object[]{ null });
+					} catch(Throwable t) {
+						failures.put(id, t);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		// Only the missing User failed
+		//
+		assertEquals(failures.toString(), 1, failures.size());
+		assertTrue(failures.containsKey(Long.MAX_VALUE));
+		for(Long id : ids.subList(0, 4)) {
+			assertEquals(User.FIVE_STATE, userRepo.findOne(id).getState());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGroupCommitError() throws InterruptedException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Finder<User, Object> finder = (Finder<User, Object>)this.appContext.getBean(refFactory.getFinderId());
+		Factory<User, Object> factory = (Factory<User, Object>)this.appContext.getBean(refFactory.getFactoryId());
+		
+		final JPAFSMHarnessImpl<User, Object> harness = new JPAFSMHarnessImpl<User, Object>(userFSM, User.class, factory, finder);
+		harness.setGroupCommit(true);
+		harness.setGroupCommitWindow(50);
+		this.appContext.getAutowireCapableBeanFactory().autowireBean(harness);
+		
+		// Fire events concurrently, one of which throws an Error
+		//
+		final List<Long> ids = new LinkedList<Long>();
+		for(int i = 0; i < 5; i++) {
+			ids.add(userRepo.save(new User()).getId());
+		}
+		final Long fatalId = ids.get(4);
+		final AtomicInteger attempts = new AtomicInteger();
+		
+		final Map<Long, Throwable> failures = new ConcurrentHashMap<Long, Throwable>();
+		List<Thread> threads = new LinkedList<Thread>();
+		for(final Long id : ids) {
+			Thread thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						if (id.equals(fatalId)) {
+							harness.onEvent("fatal", id, new Object[]{ null, attempts });
+						} else {
+							harness.onEvent("five", id, new Object[]{ null });
+						}
+					} catch(Throwable t) {
+						failures.put(id, t);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		// The Error is thrown to its caller, without being re-run, and the rest of the events succeed
+		//
+		assertEquals(failures.toString(), 1, failures.size());
+		assertTrue(failures.get(fatalId) instanceof Error);
+		assertEquals(1, attempts.get());
+		for(Long id : ids.subList(0, 4)) {
+			assertEquals(User.FIVE_STATE, userRepo.findOne(id).getState());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testGroupCommitFlushFailure() throws InterruptedException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Finder<User, Object> finder = (Finder<User, Object>)this.appContext.getBean(refFactory.getFinderId());
+		Factory<User, Object> factory = (Factory<User, Object>)this.appContext.getBean(refFactory.getFactoryId());
+		
+		final JPAFSMHarnessImpl<User, Object> harness = new JPAFSMHarnessImpl<User, Object>(userFSM, User.class, factory, finder);
+		harness.setGroupCommit(true);
+		harness.setGroupCommitWindow(50);
+		this.appContext.getAutowireCapableBeanFactory().autowireBean(harness);
+		
+		User taken = new User();
+		taken.setName("group-taken");
+		userRepo.save(taken);
+		
+		// Rename Users concurrently, one of which violates the unique name when flushed
+		//
+		final List<Long> ids = new LinkedList<Long>();
+		for(int i = 0; i < 4; i++) {
+			User user = new User();
+			user.setName("group-" + i);
+			ids.add(userRepo.save(user).getId());
+		}
+		User conflicting = new User();
+		conflicting.setName("group-tak");
+		final Long conflictingId = userRepo.save(conflicting).getId();
+		ids.add(conflictingId);
+		
+		final Map<Long, Throwable> failures = new ConcurrentHashMap<Long, Throwable>();
+		List<Thread> threads = new LinkedList<Thread>();
+		for(final Long id : ids) {
+			Thread thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						harness.onEvent("rename", id, new Object[]{ null, (id.equals(conflictingId)) ? "en" : "-renamed" });
+					} catch(Throwable t) {
+						failures.put(id, t);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		// Only the conflicting User failed, the rest of the group was committed
+		//
+		assertEquals(failures.toString(), 1, failures.size());
+		assertTrue(failures.containsKey(conflictingId));
+		assertEquals("group-tak", userRepo.findOne(conflictingId).getName());
+		for(int i = 0; i < 4; i++) {
+			assertEquals("group-" + i + "-renamed", userRepo.findOne(ids.get(i)).getName());
+		}
+	}
+
+	@Test
+	public void testOutbox() {
+		final List<Serializable> dispatched = new LinkedList<Serializable>();
+		final AtomicInteger failures = new AtomicInteger(1);
+		outboxRelay.setDispatcher(new OutboxDispatcher() {
+			
+			@Override
+			public void dispatch(String destination, List<Serializable> messages) throws Exception {
+				if (failures.getAndDecrement() > 0) {
+					throw new Exception("Unavailable");
+				}
+				dispatched.addAll(messages);
+			}
+		});
+		
+		// Messages outside of a transaction are rejected
+		//
+		try {
+			outbox.add("dest", "none");
+			fail("Expected IllegalStateException");
+		} catch(IllegalStateException e) {
+			// Expected
+		}
+		
+		// Messages are only recorded if the transaction commits
+		//
+		TransactionTemplate tt = new TransactionTemplate(transactionManager);
+		tt.execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				outbox.add("dest", "first");
+				outbox.add("dest", "second");
+				return null;
+			}
+		});
+		tt.execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				outbox.add("dest", "rolledback");
+				status.setRollbackOnly();
+				return null;
+			}
+		});
+		
+		// The first dispatch fails, the messages are retained and redispatched
+		//
+		assertEquals(0, outboxRelay.relay());
+		assertEquals(2, outboxRelay.relay());
+		assertEquals(Arrays.asList("first", "second"), dispatched);
+		assertEquals(0, outboxRelay.relay());
+	}
+
+	@Test
+	public void testOutboxAction() throws TooBusyException {
+		final List<Serializable> dispatched = new LinkedList<Serializable>();
+		outboxRelay.setDispatcher(new OutboxDispatcher() {
+			
+			@Override
+			public void dispatch(String destination, List<Serializable> messages) throws Exception {
+				dispatched.addAll(messages);
+			}
+		});
+		User user = userRepo.save(new User());
+		
+		// The Action's messages are recorded within the transaction of the event
+		//
+		fsmHarness.onEvent("notify", user.getId(), new Object[]{ null, "hello" });
+		try {
+			fsmHarness.onEvent("notify", user.getId(), new Object[]{ null, "fail" });
+			fail("Expected the Action to fail");
+		} catch(RuntimeException e) {
+			// Expected
+		}
+		
+		// Only the committed message is relayed
+		//
+		assertEquals(1, outboxRelay.relay());
+		assertEquals(Arrays.asList("hello"), dispatched);
+	}
+
+	@Test
+	public void testOutboxDeadLetter() throws InterruptedException {
+		JPAOutboxRelay relay = new JPAOutboxRelay(transactionManager);
+		this.appContext.getAutowireCapableBeanFactory().autowireBean(relay);
+		relay.setMaxAttempts(2);
+		relay.setRetryDelay(200);
+		
+		final List<Serializable> dispatched = new LinkedList<Serializable>();
+		final AtomicInteger attempts = new AtomicInteger();
+		relay.setDispatcher(new OutboxDispatcher() {
+			
+			@Override
+			public void dispatch(String destination, List<Serializable> messages) throws Exception {
+				if (destination.equals("broken")) {
+					attempts.incrementAndGet();
+					throw new Exception("Unavailable");
+				}
+				dispatched.addAll(messages);
+			}
+		});
+		
+		TransactionTemplate tt = new TransactionTemplate(transactionManager);
+		tt.execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				outbox.add("broken", "lost");
+				outbox.add("working", new Unreadable());
+				outbox.add("working", "first");
+				return null;
+			}
+		});
+		
+		// The unreadable message is dead lettered, the broken destination is held back
+		//
+		assertEquals(1, relay.relay());
+		assertEquals(Arrays.asList("first"), dispatched);
+		assertEquals(1, attempts.get());
+		
+		// The held back destination doesn't block the others
+		//
+		tt.execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				outbox.add("broken", "held");
+				outbox.add("working", "second");
+				return null;
+			}
+		});
+		assertEquals(1, relay.relay());
+		assertEquals(Arrays.asList("first", "second"), dispatched);
+		assertEquals(1, attempts.get());
+		
+		// Once the destination has failed maxAttempts times, its messages are dead lettered
+		//
+		Thread.sleep(300);
+		assertEquals(0, relay.relay());
+		assertEquals(2, attempts.get());
+		Thread.sleep(300);
+		assertEquals(0, relay.relay());
+		assertEquals(3, attempts.get());
+		assertEquals(0, relay.relay());
+		assertEquals(3, attempts.get());
+	}
+
+	/**
+	 * A message which fails to deserialize
+	 */
+	static class Unreadable implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+
+		private void readObject(ObjectInputStream in) throws IOException {
+			throw new IOException("Unreadable");
+		}
+	}
+
+	@Test
+	public void testCamelLookupId() {
+		User user = new User();
+		user.setId(7L);
+		assertEquals(7L, CamelBinder.lookupId(user));
+		assertEquals(7L, CamelBinder.lookupId(7L));
+		
+		// Messages without an Id resolve to null
+		//
+		assertNull(CamelBinder.lookupId(new Object()));
+		assertNull(CamelBinder.lookupId(new Object()));
+		
+		// A registered IdExtractor overrides the Id field, until it's unregistered
+		//
+		CamelBinder.registerIdExtractor(StringBuilder.class, new IdExtractor() {
+			
+			@Override
+			public Object extractId(Object msg) {
+				return Long.valueOf(msg.toString());
+			}
+		});
+		try {
+			assertEquals(8L, CamelBinder.lookupId(new StringBuilder("8")));
+		} finally {
+			CamelBinder.unregisterIdExtractor(StringBuilder.class);
+		}
+		assertNull(CamelBinder.lookupId(new StringBuilder("8")));
+		
+		// IdExtractor beans of the Application Context are registered as well
+		//
+		assertEquals(9L, CamelBinder.lookupId(new StringBuffer("9")));
+	}
+	
+	public static class StringBufferIdExtractor implements IdExtractor {
+
+		@Override
+		public Object extractId(Object msg) {
+			return Long.valueOf(msg.toString());
+		}
+
+		@Override
+		public Class<?> getMessageClass() {
+			return StringBuffer.class;
+		}
+	}
+
+	@Test
+	public void testCamelBatch() throws NoSuchMethodException, SecurityException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, TooBusyException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Object camelBinder = this.appContext.getBean(refFactory.getBinderId("camel"));
+		
+		User user1 = userRepo.save(new User());
+		User user2 = userRepo.save(new User());
+		
+		// An aggregated batch of messages is dispatched element by element
+		//
+		invoke(camelBinder, "$_six", Arrays.asList(user1.getId(), user2));
+		assertEquals(User.SIX_STATE, userRepo.findOne(user1.getId()).getState());
+		assertEquals(User.SIX_STATE, userRepo.findOne(user2.getId()).getState());
+		
+		// Each Entity receives its own element as its typed message.  Elements with distinct Ids are
+		// passed to the Harness together, a repeated Id starts a new run
+		//
+		final AtomicInteger bulkCalls = new AtomicInteger();
+		FSMHarness harness = new FSMHarness() {
+			
+			@Override
+			public Object onEvent(String event, Object id, Object[] parms) throws TooBusyException {
+				return fsmHarness.onEvent(event, id, parms);
+			}
+			
+			@Override
+			public Object onEvent(String event, Object[] parms) throws TooBusyException, InstantiationException {
+				return fsmHarness.onEvent(event, parms);
+			}
+			
+			@Override
+			public Map<Object, Object> onEvents(String event, Map<?, Object[]> parmsById) throws TooBusyException {
+				bulkCalls.incrementAndGet();
+				return fsmHarness.onEvents(event, parmsById);
+			}
+		};
+		User user3 = userRepo.save(new User());
+		User user4 = userRepo.save(new User());
+		assertEquals(
+				Arrays.asList(null, null, null), 
+				CamelBinder.dispatch(harness, "camelOne", Arrays.asList(user3.getId(), user4.getId(), user3.getId())));
+		assertEquals(2, bulkCalls.get());
+	}
+
+	@Test
+	public void testCamelPartitionedDispatch() throws Exception {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		final Object camelBinder = this.appContext.getBean(refFactory.getBinderId("camel"));
+		PartitionedDispatcher dispatcher = this.appContext.getBean(PartitionedDispatcher.class);
+		long processedBefore = 0;
+		for(long count : dispatcher.getLaneCounts()) {
+			processedBefore += count;
+		}
+		
+		final User user1 = userRepo.save(new User());
+		final User user2 = userRepo.save(new User());
+		
+		// Concurrent consumers of events for the same Entities
+		//
+		final Map<Long, Throwable> failures = new ConcurrentHashMap<Long, Throwable>();
+		List<Thread> threads = new LinkedList<Thread>();
+		for(int i = 0; i < 4; i++) {
+			final long cnt = i;
+			Thread thread = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						invoke(camelBinder, "$_camelone", user1.getId());
+						invoke(camelBinder, "$_six", Arrays.asList(user1.getId(), user2.getId()));
+					} catch(Throwable t) {
+						failures.put(cnt, t);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(User.SIX_STATE, userRepo.findOne(user1.getId()).getState());
+		assertEquals(User.SIX_STATE, userRepo.findOne(user2.getId()).getState());
+		
+		// All the events were processed on the lanes, which are now drained
+		//
+		long processed = 0;
+		for(int i = 0; i < dispatcher.getLaneCnt(); i++) {
+			assertEquals(0, dispatcher.getLaneDepths()[i]);
+			processed += dispatcher.getLaneCounts()[i];
+		}
+		assertTrue(processed - processedBefore >= 8);
+		
+		// An Id arriving as a String is converted to the Id type, so maps to the same lane
+		//
+		Object stringId = CamelBinder.lookupId(String.valueOf(user1.getId()), Long.class);
+		assertEquals(user1.getId(), stringId);
+		assertEquals(dispatcher.getLane(user1.getId()), dispatcher.getLane(stringId));
+		invoke(camelBinder, "$_six", Arrays.asList(String.valueOf(user2.getId())));
+		assertEquals(User.SIX_STATE, userRepo.findOne(user2.getId()).getState());
+	}
+
+	@Test
+	public void testPartitionedDispatcherTooBusy() throws Exception {
+		PartitionedDispatcher dispatcher = new PartitionedDispatcher(1, 1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		try {
+			Callable<Object> block = new Callable<Object>() {
+
+				@Override
+				public Object call() throws Exception {
+					blocked.await();
+					return null;
+				}
+			};
+			
+			// One event processing and one queued fills the lane
+			//
+			Future<Object> processing = dispatcher.submit(0, block);
+			Future<Object> queued = dispatcher.submit(0, block);
+			try {
+				dispatcher.submit(0, block);
+				fail("Expected TooBusyException");
+			} catch(TooBusyException e) {
+				// expected
+			}
+			
+			// The rejected event isn't counted against the lane
+			//
+			assertEquals(2, dispatcher.getLaneDepths()[0]);
+			blocked.countDown();
+			dispatcher.await(processing);
+			dispatcher.await(queued);
+			assertEquals(2, dispatcher.getLaneCounts()[0]);
+		} finally {
+			blocked.countDown();
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testCamelBatchTooBusy() throws Exception {
+		PartitionedDispatcher dispatcher = new PartitionedDispatcher(1, 1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final AtomicInteger completed = new AtomicInteger();
+		FSMHarness harness = new FSMHarness() {
+			
+			@Override
+			public Object onEvent(String event, Object id, Object[] parms) throws TooBusyException {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return completed.incrementAndGet();
+			}
+			
+			@Override
+			public Object onEvent(String event, Object[] parms) throws TooBusyException, InstantiationException {
+				throw new UnsupportedOperationException();
+			}
+		};
+		
+		// Release the blocked events once the batch has been rejected
+		//
+		new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(250);
+				} catch (InterruptedException e) {
+					// Ignore
+				}
+				blocked.countDown();
+			}
+		}).start();
+		
+		try {
+			
+			// One message processing and one queued fills the lane, so the third is rejected
+			//
+			try {
+				CamelBinder.dispatch(dispatcher, harness, "camelOne", Arrays.asList(1L, 2L, 3L), null);
+				fail("Expected TooBusyException");
+			} catch(TooBusyException e) {
+				// expected
+			}
+			
+			// The messages which were submitted completed before the batch was rejected
+			//
+			assertEquals(2, completed.get());
+			assertEquals(0, dispatcher.getLaneDepths()[0]);
+		} finally {
+			blocked.countDown();
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testAsyncSpringMVC() throws Exception {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Object asyncBinder = this.appContext.getBean(refFactory.getBinderId("springmvc-async"));
+		User user = userRepo.save(new User());
+		HttpServletRequest context = mock(HttpServletRequest.class);
+		
+		// The event is processed off the calling thread
+		//
+		DeferredResult<?> deferred = invoke(asyncBinder, "$_get_id_async", DeferredResult.class, user.getId(), context);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final List<Object> results = new LinkedList<Object>();
+		deferred.setResultHandler(new DeferredResultHandler() {
+			
+			@Override
+			public void handleResult(Object result) {
+				results.add(result);
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(user.getId(), ((User)results.get(0)).getId());
+	}
+
+	@Test
+	public void testAsyncSpringMVCBlocking() throws Exception {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Object asyncBinder = this.appContext.getBean(refFactory.getBinderId("springmvc-async"));
+		Object camelBinder = this.appContext.getBean(refFactory.getBinderId("camel"));
+		HttpServletRequest context = mock(HttpServletRequest.class);
+		
+		// Move the User into the blocking State
+		//
+		User user = userRepo.save(new User());
+		invoke(camelBinder, "$_six", user.getId());
+		
+		final CountDownLatch blockedLatch = new CountDownLatch(1);
+		final List<Object> blockedResults = new LinkedList<Object>();
+		DeferredResult<?> blocked = invoke(asyncBinder, "$_get_id_seven", DeferredResult.class, user.getId(), context);
+		blocked.setResultHandler(new DeferredResultHandler() {
+			
+			@Override
+			public void handleResult(Object result) {
+				blockedResults.add(result);
+				blockedLatch.countDown();
+			}
+		});
+		
+		// The blocked request doesn't hold the single thread of the AsyncExecutor
+		//
+		User other = userRepo.save(new User());
+		final CountDownLatch otherLatch = new CountDownLatch(1);
+		DeferredResult<?> deferred = invoke(asyncBinder, "$_get_id_async", DeferredResult.class, other.getId(), context);
+		deferred.setResultHandler(new DeferredResultHandler() {
+			
+			@Override
+			public void handleResult(Object result) {
+				otherLatch.countDown();
+			}
+		});
+		assertTrue(otherLatch.await(5, TimeUnit.SECONDS));
+		assertFalse(blocked.hasResult());
+		
+		// Once the State clears, the blocked request completes
+		//
+		fsmHarness.onEvent("unblock", user.getId(), new Object[]{});
+		assertTrue(blockedLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(user.getId(), ((User)blockedResults.get(0)).getId());
+		assertEquals(User.SEVEN_STATE, userRepo.findOne(user.getId()).getState());
+	}
+
+	@Test
+	public void testAsyncJersey() throws Exception {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		Object asyncBinder = this.appContext.getBean(refFactory.getBinderId("jersey-async"));
+		User user = userRepo.save(new User());
+		HttpServletRequest context = mock(HttpServletRequest.class);
+		
+		// The AsyncResponse is resumed off the calling thread
+		//
+		AsyncResponse response = mock(AsyncResponse.class);
+		invoke(asyncBinder, "$_get_id_async", user.getId(), context, response);
+		verify(response, timeout(5000)).resume(isA(User.class));
+		
+		// A timed out request is resumed with a TooBusyException
+		//
+		AsyncExecutor executor = this.appContext.getBean(AsyncExecutor.class);
+		executor.setTimeout(1000L);
+		try {
+			response = mock(AsyncResponse.class);
+			invoke(asyncBinder, "$_get_id_async", user.getId(), context, response);
+			verify(response).setTimeout(1000L, TimeUnit.MILLISECONDS);
+			ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+			verify(response).setTimeoutHandler(handler.capture());
+			handler.getValue().handleTimeout(response);
+			verify(response).resume(isA(TooBusyException.class));
+		} finally {
+			executor.setTimeout(null);
+		}
+	}
+
+	@Test
+	public void testReactive() throws Exception {
+		ReactiveServer server = this.appContext.getBean(ReactiveServer.class);
+		User user = userRepo.save(new User());
+		
+		HttpURLConnection conn = (HttpURLConnection)new URL(
+				"http://localhost:" + server.getPort() + "/users/" + user.getId() + "/reactive").openConnection();
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		OutputStream out = conn.getOutputStream();
+		out.write("ok".getBytes("UTF-8"));
+		out.close();
+		assertEquals(200, conn.getResponseCode());
+		
+		InputStream in = conn.getInputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int len;
+		while((len = in.read(buffer)) != -1) {
+			body.write(buffer, 0, len);
+		}
+		in.close();
+		assertEquals("reactive-ok", body.toString("UTF-8"));
+		
+		// A Route without an Id creates a new Entity
+		//
+		conn = (HttpURLConnection)new URL("http://localhost:" + server.getPort() + "/users").openConnection();
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		out = conn.getOutputStream();
+		out.write("new".getBytes("UTF-8"));
+		out.close();
+		assertEquals(200, conn.getResponseCode());
+		
+		in = conn.getInputStream();
+		body = new ByteArrayOutputStream();
+		while((len = in.read(buffer)) != -1) {
+			body.write(buffer, 0, len);
+		}
+		in.close();
+		assertEquals("created-new", body.toString("UTF-8"));
+		
+		// Unknown routes aren't found
+		//
+		conn = (HttpURLConnection)new URL(
+				"http://localhost:" + server.getPort() + "/users/" + user.getId() + "/unknown").openConnection();
+		assertEquals(404, conn.getResponseCode());
+	}
+
+	@Test
+	public void testReactiveServerLifecycle() throws Exception {
+		ReactiveServer server = new ReactiveServer();
+		server.setApplicationContext(this.appContext);
+		server.setPort(0);
+		server.setEventLoopThreads(1);
+		
+		// The server owns its AsyncExecutor unless one is set
+		//
+		server.start();
+		AsyncExecutor executor = server.getExecutor();
+		assertNotNull(executor);
+		server.stop();
+		assertNull(server.getExecutor());
+		
+		// Parameters other than the request can't be bound
+		//
+		Map<String, Method> eventMapping = new HashMap<String, Method>();
+		eventMapping.put(
+				"reactive:/users/{id}/camel", 
+				UserController.class.getMethod("camelOne", User.class, String.class, Long.class));
+		try {
+			new ReactiveBinder().bindEndpoints(
+					"userController", 
+					UserController.class, 
+					Long.class, 
+					false, 
+					eventMapping, 
+					new ReferenceFactoryImpl("userController"));
+			fail("Expected the Long parameter to be rejected");
+		} catch(RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(Long.class.getName()));
+		}
+	}
+
+	@Test
+	public void testRingBuffer() throws Exception {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+		
+		// A RingBufferEndpoints of its own, so that shutting it down doesn't affect the Application Context
+		//
+		Class<?> ingressClass = this.appContext.getBean(refFactory.getBinderId("ringbuffer")).getClass();
+		RingBufferEndpoints ingress = (RingBufferEndpoints)this.appContext.getAutowireCapableBeanFactory().createBean(ingressClass);
+		
+		List<User> users = new LinkedList<User>();
+		for(int i = 0; i < 10; i++) {
+			users.add(userRepo.save(new User()));
+		}
+		
+		// Publish more events than the RingBuffer holds
+		//
+		ingress.setSize(64);
+		ingress.setBatchSize(16);
+		AtomicInteger counter = new AtomicInteger();
+		for(int i = 0; i < 200; i++) {
+			ingress.publish("ingress", users.get(i % users.size()).getId(), null, counter);
+		}
+		
+		// A missing Entity doesn't fail the other Entities of its run, and the producer 
+		// receives the failure.  The Actions of a failed run are re-executed
+		//
+		AtomicInteger submitted = new AtomicInteger();
+		List<CompletableFuture<Object>> futures = new LinkedList<CompletableFuture<Object>>();
+		for(User user : users) {
+			futures.add(ingress.submit("ingress", user.getId(), null, submitted));
+		}
+		CompletableFuture<Object> missing = ingress.submit("ingress", -1L, null, submitted);
+		for(CompletableFuture<Object> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+		try {
+			missing.get(5, TimeUnit.SECONDS);
+			fail("Expected an ExecutionException");
+		} catch(ExecutionException e) {
+		}
+		assertTrue(submitted.get() >= users.size());
+		
+		// Without an Id, the Factory creates a new Entity
+		//
+		AtomicInteger created = new AtomicInteger();
+		ingress.submit("ingress", null, null, created).get(5, TimeUnit.SECONDS);
+		assertEquals(1, created.get());
+		
+		// Processed once drained
+		//
+		ingress.shutdown();
+		assertEquals(0, ingress.getBacklog());
+		assertEquals(200, counter.get());
+		
+		try {
+			ingress.publish("unknown", users.get(0).getId());
+			fail("Expected an IllegalArgumentException");
+		} catch(IllegalArgumentException e) {
+		}
+		
+		// Events are refused once shutdown
+		//
+		try {
+			ingress.publish("ingress", users.get(0).getId(), null, counter);
+			fail("Expected an IllegalStateException");
+		} catch(IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void testProxyGenerator() throws Exception {
+		final File outputDirectory = Files.createTempDirectory("statefulj-proxies").toFile();
+		try {
+			ProxyGenerator.generate(outputDirectory, "classpath:/applicationContext-StatefulControllerTests.xml");
+			assertNull(ProxyGenerator.getOutputDirectory());
+			
+			String pkg = UserController.class.getPackage().getName().replace('.', File.separatorChar);
+			for(String suffix : new String[] { "MVCBinder", "AsyncMVCBinder", "JerseyBinder", "CamelBinder", "RingBufferBinder" }) {
+				File classFile = new File(outputDirectory, pkg + File.separator + "UserController" + suffix + ".class");
+				assertTrue(classFile.getPath(), classFile.isFile());
+			}
+			
+			// Load the generated class files rather than the Proxies already defined at runtime
+			//
+			URLClassLoader loader = new URLClassLoader(new URL[] { outputDirectory.toURI().toURL() }, getClass().getClassLoader()) {
+				
+				@Override
+				protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+					synchronized (getClassLoadingLock(name)) {
+						Class<?> clazz = findLoadedClass(name);
+						if (clazz == null && findResource(name.replace('.', '/') + ".class") != null) {
+							clazz = findClass(name);
+						}
+						return (clazz != null) ? clazz : super.loadClass(name, resolve);
+					}
+				}
+			};
+			try {
+				ReferenceFactory refFactory = new ReferenceFactoryImpl("userController");
+				Class<?> runtimeClass = this.appContext.getBean(refFactory.getBinderId("springmvc")).getClass();
+				Class<?> pregeneratedClass = loader.loadClass(runtimeClass.getName());
+				assertSame(loader, pregeneratedClass.getClassLoader());
+				assertNotSame(runtimeClass, pregeneratedClass);
+				
+				// Generated from the same event mapping
+				//
+				String stamp = (String)runtimeClass.getField(JavassistUtils.STAMP_FIELD).get(null);
+				assertEquals(stamp, pregeneratedClass.getField(JavassistUtils.STAMP_FIELD).get(null));
+				assertEquals(methodNames(runtimeClass), methodNames(pregeneratedClass));
+				
+				// A change to the event mapping changes the stamp
+				//
+				assertNotEquals(
+						stamp, 
+						JavassistUtils.getStamp(runtimeClass.getName(), Long.class, false, Collections.<String, Method>emptyMap(), refFactory));
+			} finally {
+				loader.close();
+			}
+		} finally {
+			delete(outputDirectory);
+		}
+	}
+	
+	private void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+		assertTrue(file.getPath(), file.delete());
+	}
+	
+	private List<String> methodNames(Class<?> clazz) {
+		List<String> names = new LinkedList<String>();
+		for(Method method : clazz.getDeclaredMethods()) {
+			names.add(method.getName());
+		}
+		Collections.sort(names);
+		return names;
+	}
 }
@@ -17,11 +17,15 @@
  */
 package org.statefulj.framework.tests.controllers;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.annotation.Resource;
 
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.statefulj.framework.binders.reactive.ReactiveRequest;
 import org.statefulj.framework.core.annotations.StatefulController;
 import org.statefulj.framework.core.annotations.Transition;
+import org.statefulj.framework.core.model.Outbox;
 import org.statefulj.framework.tests.dao.UserRepository;
 import org.statefulj.framework.tests.model.User;
 import static org.statefulj.framework.tests.model.User.*;
@@ -42,6 +46,9 @@ public class UserController {
 	@Resource
 	UserRepository userRepository;
 	
+	@Resource
+	Outbox outbox;
+	
 	@Transition(from=ONE_STATE, event="springmvc:get:/first", to=TWO_STATE)
 	public User oneToTwo(User user, String event) {
 		userRepository.save(user);
@@ -68,14 +75,73 @@ public class UserController {
 		return user;
 	}
 	
+	@Transition(event="springmvc-async:/{id}/async")
+	public User async(User user, String event) {
+		return user;
+	}
+	
+	@Transition(from=SEVEN_STATE, event="springmvc-async:/{id}/seven")
+	public User asyncSeven(User user, String event) {
+		return user;
+	}
+	
+	@Transition(event="jersey-async:/{id}/async")
+	public User jerseyAsync(User user, String event) {
+		return user;
+	}
+	
+	@Transition(event="reactive:POST:/users/{id}/reactive")
+	public String reactive(User user, String event, ReactiveRequest request) {
+		return "reactive-" + request.getBodyAsString();
+	}
+	
+	@Transition(from=ONE_STATE, event="reactive:POST:/users", to=TWO_STATE)
+	public String reactiveCreate(User user, String event, ReactiveRequest request) {
+		userRepository.save(user);
+		return "created-" + request.getBodyAsString();
+	}
+	
+	@Transition(event="ringbuffer:ingress")
+	public void ingress(User user, String event, AtomicInteger counter) {
+		counter.incrementAndGet();
+	}
+	
 	@Transition(event="camel:camelOne")
 	public void camelOne(User user, String event, Long id) {
+		if (!user.getId().equals(id)) {
+			throw new IllegalArgumentException("Message " + id + " dispatched to User " + user.getId());
+		}
 	}
 	
 	@Transition(event="camel:camelTwo")
 	public void camelTwo(User user, String event, Long id) {
 	}
 	
+	@Transition(event="rename")
+	public User rename(User user, String event, String suffix) {
+		user.setName(user.getName() + suffix);
+		return user;
+	}
+	
+	@Transition(from=ONE_STATE, event="renameOne", to=ONE_STATE)
+	public User renameOne(User user, String event, String suffix) {
+		return rename(user, event, suffix);
+	}
+	
+	@Transition(event="fatal")
+	public void fatal(User user, String event, AtomicInteger attempts) {
+		attempts.incrementAndGet();
+		throw new Error("Fatal error processing " + user.getId());
+	}
+	
+	@Transition(event="notify")
+	public void notifyUser(User user, String event, String message) {
+		outbox.add("users", message);
+		if (message.startsWith("fail")) {
+			throw new RuntimeException("Unable to notify " + user.getId());
+		}
+	}
+	
 	@ExceptionHandler(Exception.class)
 	public String handleError(Exception e) {
 		return "called";
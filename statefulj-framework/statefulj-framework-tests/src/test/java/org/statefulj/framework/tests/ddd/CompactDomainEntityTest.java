@@ -0,0 +1,79 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.framework.tests.ddd;
+
+import java.lang.reflect.InvocationTargetException;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.statefulj.framework.core.fsm.FSMDefinition;
+import org.statefulj.framework.core.model.ReferenceFactory;
+import org.statefulj.framework.core.model.impl.ReferenceFactoryImpl;
+import org.statefulj.fsm.TooBusyException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.statefulj.framework.tests.utils.ReflectionUtils.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"/applicationContext-CompactDomainEntityTests.xml"})
+public class CompactDomainEntityTest {
+	
+	@Resource
+	ApplicationContext appContext;
+
+	@Test
+	public void testCompactDomainEntityFSM() throws TooBusyException, SecurityException, IllegalArgumentException, NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+		ReferenceFactory refFactory = new ReferenceFactoryImpl("domainEntity");
+		
+		// Verify the Transitions are registered as a single FSMDefinition
+		//
+		assertTrue(this.appContext.getBean(refFactory.getFSMDefinitionId()) instanceof FSMDefinition);
+		assertFalse(this.appContext.containsBean(refFactory.getTransitionId(1)));
+		
+		Object mvcBinder = this.appContext.getBean(refFactory.getBinderId("springmvc"));
+
+		// Transition through the binder
+		//
+		HttpServletRequest context = mock(HttpServletRequest.class);
+		DomainEntity entity = invoke(mvcBinder, "$_get_event-x", DomainEntity.class, context, 1);
+		
+		assertNotNull(entity);
+		assertEquals(1, entity.getValue());
+		assertEquals(DomainEntity.STATE_B, entity.getState());
+		
+		// Transition through the Domain Entity
+		//
+		entity.onEventY(2);
+		assertEquals(2, entity.getValue());
+		assertEquals(DomainEntity.STATE_A, entity.getState());
+		
+		// And back again
+		//
+		entity.onEventX(3);
+		assertEquals(3, entity.getValue());
+		assertEquals(DomainEntity.STATE_B, entity.getState());
+	}
+	
+}
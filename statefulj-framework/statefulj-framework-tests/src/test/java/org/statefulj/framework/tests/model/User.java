@@ -17,11 +17,13 @@
  */
 package org.statefulj.framework.tests.model;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import org.statefulj.persistence.jpa.model.StatefulEntity;
 
@@ -43,6 +45,12 @@ public class User extends StatefulEntity {
 	@Id
 	@GeneratedValue(strategy=GenerationType.SEQUENCE)
 	Long id;
+	
+	@Column(unique=true)
+	String name;
+	
+	@Version
+	Long version;
 
 	public Long getId() {
 		return id;
@@ -51,4 +59,12 @@ public class User extends StatefulEntity {
 	public void setId(Long id) {
 		this.id = id;
 	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
 }
@@ -0,0 +1,304 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.fsm.model.Action;
+import org.statefulj.fsm.model.AsyncAction;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.StateActionPair;
+import org.statefulj.fsm.model.Transition;
+
+/**
+ * The AsyncFSM is the non-blocking counterpart of the {@link FSM}.  Events are processed against
+ * an {@link AsyncPersister} and the result is returned as a CompletionStage, so no thread is held
+ * while the State is being read or persisted.  Retries are chained off the completion of the
+ * prior attempt and waits are scheduled rather than slept.  {@link AsyncAction}s are composed into
+ * the resulting CompletionStage; all other Actions are invoked once the State has been persisted.
+ * Synchronous Persisters can be used by way of the {@link PersisterAsyncAdapter}
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class AsyncFSM<T> {
+	
+	Logger logger = LoggerFactory.getLogger(AsyncFSM.class);
+
+	private static ScheduledExecutorService defaultScheduler;
+
+	private int retries = FSM.DEFAULT_RETRIES;
+	private AsyncPersister<T> persister;
+	private ScheduledExecutorService scheduler;
+	private String name = "AsyncFSM";
+	
+	/**
+	 * 
+	 * @param persister
+	 */
+	public AsyncFSM(AsyncPersister<T> persister) {
+		this.persister = persister;
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param persister
+	 */
+	public AsyncFSM(String name, AsyncPersister<T> persister) {
+		this.name = name;
+		this.persister = persister;
+	}
+	
+	/**
+	 * Run a synchronous Persister on the shared default Executor of the {@link PersisterAsyncAdapter},
+	 * so no pool is created per AsyncFSM
+	 * 
+	 * @param name
+	 * @param persister
+	 */
+	public AsyncFSM(String name, Persister<T> persister) {
+		this(name, new PersisterAsyncAdapter<T>(persister));
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param persister
+	 * @param scheduler Scheduler used to delay the retry of "Wait and Retry" events
+	 */
+	public AsyncFSM(String name, AsyncPersister<T> persister, ScheduledExecutorService scheduler) {
+		this.name = name;
+		this.persister = persister;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Process event.  Will handle all retry attempts.  If attempts exceed maximum retries,
+	 * the returned CompletionStage will complete exceptionally with a TooBusyException.  
+	 * 
+	 * @param stateful
+	 * @param event
+	 * @param args
+	 * @return CompletionStage of the resulting State
+	 */
+	public CompletionStage<State<T>> onEvent(final T stateful, final String event, final Object ... args) {
+		CompletableFuture<State<T>> result = new CompletableFuture<State<T>>();
+		attempt(stateful, event, args, 0, result);
+		return result;
+	}
+	
+	public int getRetries() {
+		return retries;
+	}
+
+	public void setRetries(int retries) {
+		this.retries = retries;
+	}
+
+	public AsyncPersister<T> getPersister() {
+		return persister;
+	}
+
+	public void setPersister(AsyncPersister<T> persister) {
+		this.persister = persister;
+	}
+
+	public ScheduledExecutorService getScheduler() {
+		return (this.scheduler != null) ? this.scheduler : getDefaultScheduler();
+	}
+
+	public void setScheduler(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public CompletionStage<State<T>> getCurrentState(T obj) {
+		return this.persister.getCurrent(obj);
+	}
+	
+	protected void attempt(
+			final T stateful, 
+			final String event, 
+			final Object[] args, 
+			final int attempts, 
+			final CompletableFuture<State<T>> result) {
+		
+		if (attempts >= this.retries) {
+			logger.error("{}({})::Unable to process event", this.name, stateful);
+			result.completeExceptionally(new TooBusyException());
+			return;
+		}
+		
+		CompletionStage<State<T>> stage;
+		try {
+			stage = getCurrentState(stateful).thenCompose(current -> process(stateful, current, event, args));
+		} catch(RuntimeException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		
+		stage.whenComplete((state, t) -> {
+			if (t == null) {
+				result.complete(state);
+				return;
+			}
+			
+			Throwable cause = unwrap(t);
+			if (!(cause instanceof RetryException)) {
+				result.completeExceptionally(cause);
+				return;
+			}
+
+			logger.warn("{}({})::Retrying event", this.name, stateful);
+
+			// Wait?  Schedule the next attempt rather than blocking the thread
+			//
+			if (cause instanceof WaitAndRetryException) {
+				getScheduler().schedule(
+						() -> attempt(stateful, event, args, attempts + 1, result), 
+						((WaitAndRetryException)cause).getWait(), 
+						TimeUnit.MILLISECONDS);
+			} else {
+				attempt(stateful, event, args, attempts + 1, result);
+			}
+		});
+	}
+	
+	protected CompletionStage<State<T>> process(T stateful, State<T> current, String event, Object[] args) {
+		
+		// Fetch the transition for this event from the current state
+		//
+		Transition<T> transition = current.getTransition(event);
+		
+		// Is there one?
+		//
+		if (transition != null) {
+			return transition(stateful, current, event, transition, args);
+		} 
+
+		logger.debug("{}({})::{}({})->{}/noop", 
+				this.name, 
+				stateful.getClass().getSimpleName(),
+				current.getName(), 
+				event,
+				current.getName());
+		
+		// If blocking, force a transition to the current state as
+		// it's possible that another thread has moved out of the blocking state.
+		// Either way, we'll retry this event
+		//
+		if (current.isBlocking()) {
+			return this.persister.setCurrent(stateful, current, current).thenApply(v -> {
+				throw new CompletionException(new WaitAndRetryException(FSM.DEFAULT_BLOCKING_WAIT));
+			});
+		}
+		return CompletableFuture.completedFuture(current);
+	}
+	
+	protected CompletionStage<State<T>> transition(
+			final T stateful, 
+			final State<T> current, 
+			final String event, 
+			final Transition<T> transition, 
+			final Object... args) {
+		
+		final StateActionPair<T> pair = transition.getStateActionPair(stateful);
+		return this.persister.setCurrent(stateful, current, pair.getState())
+			.thenCompose(v -> executeAction(
+					pair.getAction(), 
+					stateful, 
+					event,
+					current.getName(),
+					pair.getState().getName(),
+					args))
+			.thenApply(v -> pair.getState());
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected CompletionStage<Void> executeAction(
+			Action<T> action, 
+			T stateful, 
+			String event, 
+			String from, 
+			String to, 
+			Object... args) {
+		
+		logger.debug("{}({})::{}({})->{}/{}", 
+				this.name,
+				stateful.getClass().getSimpleName(),
+				from, 
+				event, 
+				to, 
+				(action == null) ? "noop" : action.toString());
+		
+		if (action instanceof AsyncAction) {
+			return ((AsyncAction<T>)action).executeAsync(stateful, event, args);
+		} 
+		
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		try {
+			if (action != null) {
+				action.execute(stateful, event, args);
+			}
+			future.complete(null);
+		} catch(RetryException e) {
+			future.completeExceptionally(e);
+		} catch(RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+	
+	private Throwable unwrap(Throwable t) {
+		while (t instanceof CompletionException && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+	
+	private static synchronized ScheduledExecutorService getDefaultScheduler() {
+		if (defaultScheduler == null) {
+			defaultScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "statefulj-async-fsm");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultScheduler;
+	}
+}
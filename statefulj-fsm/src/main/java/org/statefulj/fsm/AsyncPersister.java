@@ -0,0 +1,53 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm;
+
+import java.util.concurrent.CompletionStage;
+
+import org.statefulj.fsm.model.State;
+
+/**
+ * An AsyncPersister is the non-blocking counterpart of the {@link Persister}.  Rather than
+ * blocking the caller until the underlying database responds, the AsyncPersister returns a 
+ * CompletionStage which is completed once the State has been read or written
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface AsyncPersister<T> {
+	
+	/**
+	 * Returns the current state.
+	 * 
+	 * @param obj the Stateful Object
+	 * @return CompletionStage of the current State
+	 */
+	CompletionStage<State<T>> getCurrent(T obj);
+
+	/**
+	 * Set the current state to the next state.  Will serialize access to the persistence
+	 * and ensure that expected current state is indeed the current state.  If not, the returned
+	 * CompletionStage will complete exceptionally with a StaleStateException
+	 * 
+	 * @param obj the Stateful Object
+	 * @param current
+	 * @param next
+	 * @return CompletionStage that completes when the State has been persisted
+	 */
+	CompletionStage<Void> setCurrent(T obj, State<T> current, State<T> next);
+}
@@ -0,0 +1,43 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm;
+
+/**
+ * Thrown in place of waiting, when waits are deferred to the caller with {@link FSM#setDeferWaits(boolean)}.
+ * The caller is expected to retry the event once the wait has elapsed
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class BlockedException extends TooBusyException {
+
+	private static final long serialVersionUID = 1L;
+
+	private int wait;
+	
+	public BlockedException(int wait) {
+		this.wait = wait;
+	}
+
+	/**
+	 * @return The time, in milliseconds, to wait before retrying the event
+	 */
+	public int getWait() {
+		return wait;
+	}
+}
@@ -37,6 +37,10 @@ public class FSM<T> {
 
 	static final int DEFAULT_RETRIES = 20;
 	static final int DEFAULT_BLOCKING_WAIT = 250;  // 250 ms
+	
+	// Whether waits are thrown to the caller, rather than slept, on this thread
+	//
+	private static final ThreadLocal<Boolean> deferWaits = new ThreadLocal<Boolean>();
 
 	private int retries = DEFAULT_RETRIES;
 	private Persister<T> persister;
@@ -77,6 +81,21 @@ public class FSM<T> {
 		this.retries = retries;
 	}
 
+	/**
+	 * Whilst set, a wait on a blocking State, or any other {@link WaitAndRetryException}, isn't slept on 
+	 * the calling thread.  Instead, the outermost event processed on the thread throws a {@link BlockedException} 
+	 * so the caller can reschedule the event once the wait has elapsed
+	 * 
+	 * @param defer
+	 */
+	public static void setDeferWaits(boolean defer) {
+		if (defer) {
+			deferWaits.set(true);
+		} else {
+			deferWaits.remove();
+		}
+	}
+
 	/**
 	 * Process event.  Will handle all retry attempts.  If attempts exceed maximum retries,
 	 * it will throw a TooBusyException.  
@@ -89,6 +108,23 @@ public class FSM<T> {
 	 */
 	public State<T> onEvent(final T stateful, final String event, final Object ... args) throws TooBusyException {
 		
+		// Only the outermost event defers its waits, events chained from an Action wait in place
+		//
+		boolean defer = Boolean.TRUE.equals(deferWaits.get());
+		if (defer) {
+			deferWaits.remove();
+		}
+		try {
+			return onEvent(defer, stateful, event, args);
+		} finally {
+			if (defer) {
+				deferWaits.set(true);
+			}
+		}
+	}
+	
+	private State<T> onEvent(boolean defer, final T stateful, final String event, final Object ... args) throws TooBusyException {
+		
 		int attempts = 0;
 		
 		while(attempts < this.retries) {
@@ -128,6 +164,9 @@ public class FSM<T> {
 				// Wait?
 				//
 				if (WaitAndRetryException.class.isInstance(re)) {
+					if (defer) {
+						throw new BlockedException(((WaitAndRetryException)re).getWait());
+					}
 					try {
 						Thread.sleep(((WaitAndRetryException)re).getWait());
 					} catch(InterruptedException ie) {
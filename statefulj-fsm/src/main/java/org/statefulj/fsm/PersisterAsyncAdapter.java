@@ -0,0 +1,175 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.statefulj.fsm.model.State;
+
+/**
+ * Adapts a synchronous {@link Persister} to the {@link AsyncPersister} SPI.  {@link Persister#getCurrent(Object)}
+ * doesn't call into the database, so it's invoked on the caller's thread.  {@link Persister#setCurrent(Object, State, State)}
+ * is run on a bounded Executor of daemon threads.  If the Executor is saturated, the update completes exceptionally
+ * with a TooBusyException rather than queueing without bound.  Unless a pool size or an Executor is provided,
+ * all adapters share a single default Executor, so an adapter per FSM doesn't create a pool per FSM
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class PersisterAsyncAdapter<T> implements AsyncPersister<T> {
+	
+	static final int DEFAULT_POOL_SIZE = 8;
+	static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	
+	private static final AtomicInteger poolCnt = new AtomicInteger(0);
+	
+	private static ExecutorService defaultExecutor;
+	
+	private Persister<T> persister;
+	
+	private ExecutorService executor;
+	
+	private boolean ownsExecutor = false;
+	
+	/**
+	 * Run the Persister on the shared default pool of {@value #DEFAULT_POOL_SIZE} threads, 
+	 * queueing up to {@value #DEFAULT_QUEUE_CAPACITY} updates
+	 * 
+	 * @param persister
+	 */
+	public PersisterAsyncAdapter(Persister<T> persister) {
+		this(persister, getDefaultExecutor());
+	}
+	
+	/**
+	 * 
+	 * @param persister
+	 * @param poolSize Number of threads that will invoke the Persister
+	 * @param queueCapacity Maximum number of pending updates
+	 */
+	public PersisterAsyncAdapter(Persister<T> persister, int poolSize, int queueCapacity) {
+		this(persister, newBoundedExecutor("statefulj-persister", poolSize, queueCapacity));
+		this.ownsExecutor = true;
+	}
+	
+	/**
+	 * 
+	 * @param persister
+	 * @param executor
+	 */
+	public PersisterAsyncAdapter(Persister<T> persister, ExecutorService executor) {
+		this.persister = persister;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletionStage<State<T>> getCurrent(T obj) {
+		CompletableFuture<State<T>> future = new CompletableFuture<State<T>>();
+		try {
+			future.complete(this.persister.getCurrent(obj));
+		} catch(RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	@Override
+	public CompletionStage<Void> setCurrent(final T obj, final State<T> current, final State<T> next) {
+		try {
+			return CompletableFuture.runAsync(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						persister.setCurrent(obj, current, next);
+					} catch (StaleStateException e) {
+						throw new CompletionException(e);
+					}
+				}
+			}, this.executor);
+		} catch(RejectedExecutionException e) {
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			future.completeExceptionally(new TooBusyException());
+			return future;
+		}
+	}
+	
+	public Persister<T> getPersister() {
+		return persister;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Shutdown the Executor if it was created by this adapter, pending updates will be completed.  
+	 * The shared default Executor and Executors that were provided are left running
+	 */
+	public void shutdown() {
+		if (this.ownsExecutor) {
+			this.executor.shutdown();
+		}
+	}
+
+	/**
+	 * Return a fixed pool of daemon threads with a bounded queue.  Once the queue is full,
+	 * submissions are rejected with a RejectedExecutionException
+	 * 
+	 * @param name Prefix of the thread names
+	 * @param poolSize Number of threads
+	 * @param queueCapacity Maximum number of pending tasks
+	 * @return the ExecutorService
+	 */
+	public static ExecutorService newBoundedExecutor(final String name, int poolSize, int queueCapacity) {
+		final int pool = poolCnt.incrementAndGet();
+		return new ThreadPoolExecutor(
+				poolSize, 
+				poolSize, 
+				0L, 
+				TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactory() {
+					
+					private AtomicInteger threadCnt = new AtomicInteger(0);
+					
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-" + pool + "-" + threadCnt.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	private static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = newBoundedExecutor("statefulj-persister", DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+		}
+		return defaultExecutor;
+	}
+}
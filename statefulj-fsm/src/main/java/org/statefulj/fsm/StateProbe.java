@@ -0,0 +1,39 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm;
+
+import org.statefulj.fsm.model.State;
+
+/**
+ * Implemented by a {@link Persister} which is able to read the persisted State of an Entity 
+ * by its Id without loading the Entity itself
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface StateProbe<T> {
+	
+	/**
+	 * Read the persisted State of the Entity
+	 * 
+	 * @param id The Id of the Entity
+	 * @return The current State or null if there is no persisted Entity with the Id
+	 */
+	State<T> probeCurrent(Object id);
+
+}
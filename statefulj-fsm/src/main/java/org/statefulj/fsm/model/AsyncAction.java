@@ -0,0 +1,34 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm.model;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An Action whose side effects complete asynchronously.  When invoked by the {@link org.statefulj.fsm.AsyncFSM}, 
+ * the resulting State isn't returned until the CompletionStage completes.  If the CompletionStage completes
+ * with a RetryException, the event will be retried
+ * 
+ * @author Andrew Hall
+ *
+ */
+public interface AsyncAction<T> extends Action<T> {
+	
+	CompletionStage<Void> executeAsync(T stateful, String event, Object ... args);
+
+}
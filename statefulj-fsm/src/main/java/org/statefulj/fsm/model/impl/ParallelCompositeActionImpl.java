@@ -0,0 +1,198 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm.model.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.fsm.PersisterAsyncAdapter;
+import org.statefulj.fsm.RetryException;
+import org.statefulj.fsm.model.Action;
+
+/**
+ * A Composite Action whose Actions are independent of one another and are executed in parallel.
+ * The first Action is executed on the calling thread, the remainder on the Executor.  All the Actions 
+ * are joined before the Transition completes.  If any of the Actions fail, the failure of the 
+ * first failed Action, in the order of the list, is thrown.  Actions that depend upon one another 
+ * can be grouped in a {@link CompositeActionImpl}
+ * <p>
+ * Only the first Action runs within the context bound to the calling thread; the others don't see
+ * its JPA transaction, EntityManager or other ThreadLocal state.  Actions that need that context
+ * belong first or in a sequential {@link CompositeActionImpl}.  If the Executor rejects an Action,
+ * that Action is executed on the calling thread
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ParallelCompositeActionImpl<T> extends CompositeActionImpl<T> {
+	
+	private static Logger logger = LoggerFactory.getLogger(ParallelCompositeActionImpl.class);
+	
+	static final int DEFAULT_POOL_SIZE = 8;
+	static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	
+	private static ExecutorService defaultExecutor;
+	
+	private ExecutorService executor;
+
+	/**
+	 * Execute the Actions on the default Executor.  If the JVM supports virtual threads, each Action is
+	 * executed on a virtual thread, else on a pool of {@value #DEFAULT_POOL_SIZE} daemon threads, 
+	 * queueing up to {@value #DEFAULT_QUEUE_CAPACITY} Actions.  The pool is dedicated to parallel Actions
+	 * 
+	 * @param actions
+	 */
+	public ParallelCompositeActionImpl(List<Action<T>> actions) {
+		this(actions, getDefaultExecutor());
+	}
+	
+	/**
+	 * 
+	 * @param actions
+	 * @param executor
+	 */
+	public ParallelCompositeActionImpl(List<Action<T>> actions, ExecutorService executor) {
+		super(actions);
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(final T stateful, final String event, final Object ... args) throws RetryException {
+		if (this.actions.isEmpty()) {
+			return;
+		}
+		
+		// Fan out all but the first Action
+		//
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(this.actions.size() - 1);
+		List<FutureTask<Void>> rejected = new ArrayList<FutureTask<Void>>();
+		for(final Action<T> action : this.actions.subList(1, this.actions.size())) {
+			Callable<Void> task = new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					action.execute(stateful, event, args);
+					return null;
+				}
+			};
+			try {
+				futures.add(this.executor.submit(task));
+			} catch(RejectedExecutionException e) {
+				logger.debug("Executor is saturated, executing Action on the calling thread");
+				FutureTask<Void> future = new FutureTask<Void>(task);
+				futures.add(future);
+				rejected.add(future);
+			}
+		}
+		
+		// Execute the first Action, followed by any rejected Actions, on this thread
+		//
+		Throwable failure = null;
+		try {
+			this.actions.get(0).execute(stateful, event, args);
+		} catch(RetryException e) {
+			failure = e;
+		} catch(RuntimeException e) {
+			failure = e;
+		} catch(Error e) {
+			failure = e;
+		}
+		for(FutureTask<Void> future : rejected) {
+			future.run();
+		}
+		
+		// Join all the Actions, keeping the first failure
+		//
+		boolean interrupted = false;
+		for(Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				interrupted = true;
+				failure = (failure == null) ? e : failure;
+			} catch (ExecutionException e) {
+				failure = (failure == null) ? e.getCause() : failure;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (failure instanceof RetryException) {
+			throw (RetryException)failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error)failure;
+		}
+		if (failure != null) {
+			throw new RuntimeException(failure);
+		}
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	private static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = newVirtualThreadExecutor();
+		}
+		if (defaultExecutor == null) {
+			defaultExecutor = PersisterAsyncAdapter.newBoundedExecutor(
+					"statefulj-parallel-action", 
+					DEFAULT_POOL_SIZE, 
+					DEFAULT_QUEUE_CAPACITY);
+		}
+		return defaultExecutor;
+	}
+	
+	/**
+	 * Virtual threads are resolved reflectively so as to run on JVMs without them
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		} catch (NoSuchMethodException e) {
+			logger.debug("Virtual threads are unavailable");
+		} catch (IllegalAccessException e) {
+			logger.debug("Virtual threads are unavailable", e);
+		} catch (InvocationTargetException e) {
+			logger.debug("Virtual threads are unavailable", e.getCause());
+		}
+		return null;
+	}
+}
@@ -0,0 +1,242 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.fsm;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.statefulj.fsm.model.Action;
+import org.statefulj.fsm.model.AsyncAction;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.impl.StateImpl;
+import org.statefulj.persistence.memory.MemoryPersisterImpl;
+
+public class AsyncFSMTest {
+	
+	// Each test schedules its retries on its own Scheduler, so that no retry outlives the test
+	//
+	ScheduledExecutorService scheduler;
+	
+	@Before
+	public void setUp() {
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+	
+	@After
+	public void tearDown() {
+		this.scheduler.shutdownNow();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSimpleAsyncFSM() throws RetryException, InterruptedException, ExecutionException {
+		final Foo stateful = new Foo();
+		
+		Action<Foo> actionA = mock(Action.class);
+		
+		String eventA = "eventA";
+		String eventB = "eventB";
+		
+		StateImpl<Foo> stateA = new StateImpl<Foo>("stateA");
+		StateImpl<Foo> stateB = new StateImpl<Foo>("stateB");
+		
+		stateA.addTransition(eventA, stateB, actionA);
+
+		List<State<Foo>> states = new LinkedList<State<Foo>>();
+		states.add(stateA);
+		states.add(stateB);
+		
+		AsyncFSM<Foo> fsm = new AsyncFSM<Foo>("SimpleAsyncFSM", new MemoryAsyncPersister<Foo>(stateful, states, stateA), this.scheduler);
+
+		// Verify that on eventA, we transition to StateB and invoke actionA
+		//
+		Foo arg = new Foo();
+		State<Foo> current = fsm.onEvent(stateful, eventA, arg).toCompletableFuture().get();
+		assertEquals(stateB, current);
+		verify(actionA).execute(stateful, eventA, arg);
+		
+		// Verify that eventB is a noop
+		//
+		current = fsm.onEvent(stateful, eventB, arg).toCompletableFuture().get();
+		assertEquals(stateB, current);
+	}
+
+	@Test
+	public void testTooBusy() throws InterruptedException {
+		final Foo stateful = new Foo();
+		final String eventA = "eventA";
+
+		// Blocking State, every attempt will be scheduled for a retry
+		//
+		StateImpl<Foo> stateA = new StateImpl<Foo>("stateA", false, true);
+
+		List<State<Foo>> states = new LinkedList<State<Foo>>();
+		states.add(stateA);
+		
+		AsyncFSM<Foo> fsm = new AsyncFSM<Foo>("TooBusy", new MemoryAsyncPersister<Foo>(stateful, states, stateA), this.scheduler);
+		fsm.setRetries(2);
+
+		try {
+			fsm.onEvent(stateful, eventA).toCompletableFuture().get();
+			fail("Expected a TooBusyException");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof TooBusyException);
+		}
+	}
+
+	@Test
+	public void testTransitionOutOfBlocking() throws InterruptedException, ExecutionException {
+		final Foo stateful = new Foo();
+		final String eventA = "eventA";
+		final String eventB = "eventB";
+
+		StateImpl<Foo> stateA = new StateImpl<Foo>("stateA", false, true);
+		StateImpl<Foo> stateB = new StateImpl<Foo>("stateB");
+		StateImpl<Foo> stateC = new StateImpl<Foo>("stateC");
+
+		stateA.addTransition(eventB, stateB);
+		stateB.addTransition(eventA, stateC);
+
+		List<State<Foo>> states = new LinkedList<State<Foo>>();
+		states.add(stateA);
+		states.add(stateB);
+		states.add(stateC);
+		
+		AsyncFSM<Foo> fsm = new AsyncFSM<Foo>("Blocking", new MemoryAsyncPersister<Foo>(stateful, states, stateA), this.scheduler);
+
+		// eventA will be rescheduled until eventB moves the Stateful out of the blocking State
+		//
+		CompletionStage<State<Foo>> pending = fsm.onEvent(stateful, eventA);
+		assertFalse(pending.toCompletableFuture().isDone());
+
+		assertEquals(stateB, fsm.onEvent(stateful, eventB).toCompletableFuture().get());
+		assertEquals(stateC, pending.toCompletableFuture().get());
+	}
+	
+	@Test
+	public void testPersisterAdapterAndAsyncAction() throws InterruptedException, ExecutionException {
+		final Foo stateful = new Foo();
+		final String eventA = "eventA";
+		
+		final CompletableFuture<Void> sideEffect = new CompletableFuture<Void>();
+		AsyncAction<Foo> asyncAction = new AsyncAction<Foo>() {
+
+			@Override
+			public void execute(Foo stateful, String event, Object... args) throws RetryException {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public CompletionStage<Void> executeAsync(Foo stateful, String event, Object... args) {
+				return sideEffect;
+			}
+		};
+
+		StateImpl<Foo> stateA = new StateImpl<Foo>("stateA");
+		StateImpl<Foo> stateB = new StateImpl<Foo>("stateB");
+		stateA.addTransition(eventA, stateB, asyncAction);
+
+		List<State<Foo>> states = new LinkedList<State<Foo>>();
+		states.add(stateA);
+		states.add(stateB);
+		
+		// Run the synchronous MemoryPersister on the adapter's own Executor
+		//
+		PersisterAsyncAdapter<Foo> persister = new PersisterAsyncAdapter<Foo>(new MemoryPersisterImpl<Foo>(stateful, states, stateA), 1, 16);
+		AsyncFSM<Foo> fsm = new AsyncFSM<Foo>("Adapter", persister, this.scheduler);
+		
+		try {
+			CompletableFuture<State<Foo>> result = fsm.onEvent(stateful, eventA).toCompletableFuture();
+			
+			// The transition doesn't complete until the AsyncAction has completed
+			//
+			Thread.sleep(50);
+			assertFalse(result.isDone());
+			assertEquals(stateB, persister.getCurrent(stateful).toCompletableFuture().get());
+			
+			sideEffect.complete(null);
+			assertEquals(stateB, result.get());
+		} finally {
+			persister.shutdown();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSharedDefaultExecutor() {
+		Persister<Foo> persister = mock(Persister.class);
+		
+		// AsyncFSMs built from synchronous Persisters share the default Executor
+		//
+		AsyncFSM<Foo> fsmA = new AsyncFSM<Foo>("A", persister);
+		AsyncFSM<Foo> fsmB = new AsyncFSM<Foo>("B", persister);
+		ExecutorService executor = ((PersisterAsyncAdapter<Foo>)fsmA.getPersister()).getExecutor();
+		
+		assertSame(executor, ((PersisterAsyncAdapter<Foo>)fsmB.getPersister()).getExecutor());
+		
+		// Shutting down an adapter leaves the shared Executor running
+		//
+		((PersisterAsyncAdapter<Foo>)fsmA.getPersister()).shutdown();
+		assertFalse(executor.isShutdown());
+		
+		PersisterAsyncAdapter<Foo> owned = new PersisterAsyncAdapter<Foo>(persister, 1, 1);
+		owned.shutdown();
+		assertTrue(owned.getExecutor().isShutdown());
+	}
+	
+	/**
+	 * Completes immediately against an in-memory Persister
+	 */
+	static class MemoryAsyncPersister<T> implements AsyncPersister<T> {
+		
+		MemoryPersisterImpl<T> persister;
+		
+		MemoryAsyncPersister(T stateful, List<State<T>> states, State<T> start) {
+			this.persister = new MemoryPersisterImpl<T>(stateful, states, start);
+		}
+
+		@Override
+		public CompletionStage<State<T>> getCurrent(T obj) {
+			return CompletableFuture.completedFuture(this.persister.getCurrent(obj));
+		}
+
+		@Override
+		public CompletionStage<Void> setCurrent(T obj, State<T> current, State<T> next) {
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			try {
+				this.persister.setCurrent(obj, current, next);
+				future.complete(null);
+			} catch(StaleStateException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+	}
+}
@@ -21,9 +21,11 @@ import static org.junit.Assert.*;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.junit.Test;
+import org.statefulj.fsm.BlockedException;
 import org.statefulj.fsm.FSM;
 import org.statefulj.fsm.RetryException;
 import org.statefulj.fsm.TooBusyException;
@@ -31,6 +33,7 @@ import org.statefulj.fsm.model.Action;
 import org.statefulj.fsm.model.State;
 import org.statefulj.fsm.model.StateActionPair;
 import org.statefulj.fsm.model.Transition;
+import org.statefulj.fsm.model.impl.ParallelCompositeActionImpl;
 import org.statefulj.fsm.model.impl.StateActionPairImpl;
 import org.statefulj.fsm.model.impl.StateImpl;
 import org.statefulj.fsm.model.impl.WaitAndRetryActionImpl;
@@ -339,6 +342,40 @@ public class FSMTest {
 		fsm.onEvent(stateful, eventA);
 	}
 	
+	@Test
+	public void testDeferWaits() throws TooBusyException {
+
+		// Stateful
+		//
+		final Foo stateful = new Foo();
+
+		// States
+		//
+		StateImpl<Foo> stateA = new StateImpl<Foo>("stateA", false, true);
+		
+		// FSM
+		//
+		List<State<Foo>> states = new LinkedList<State<Foo>>();
+		states.add(stateA);
+		
+		MemoryPersisterImpl<Foo> persister = new MemoryPersisterImpl<Foo>(stateful, states, stateA);
+		final FSM<Foo> fsm = new FSM<Foo>("Deferred", persister);
+
+		// The wait is thrown to the caller rather than slept
+		//
+		FSM.setDeferWaits(true);
+		long start = System.currentTimeMillis();
+		try {
+			fsm.onEvent(stateful, "eventA");
+			fail("Expected BlockedException");
+		} catch(BlockedException e) {
+			assertEquals(FSM.DEFAULT_BLOCKING_WAIT, e.getWait());
+			assertTrue(System.currentTimeMillis() - start < FSM.DEFAULT_BLOCKING_WAIT * FSM.DEFAULT_RETRIES);
+		} finally {
+			FSM.setDeferWaits(false);
+		}
+	}
+	
 	@Test
 	public void testStateFieldName() {
 		Foo2 stateful = new Foo2();
@@ -410,4 +447,75 @@ public class FSMTest {
 		assertEquals(stateB, state);
 	}
 	
+
+	@Test
+	public void testParallelCompositeAction() throws RetryException {
+		final Foo stateful = new Foo();
+		
+		// Three slow Actions complete in the time of one
+		//
+		List<Action<Foo>> actions = new LinkedList<Action<Foo>>();
+		for(int i = 0; i < 3; i++) {
+			actions.add(new SleepAction(200, null));
+		}
+		long start = System.currentTimeMillis();
+		new ParallelCompositeActionImpl<Foo>(actions).execute(stateful, "event");
+		assertTrue(System.currentTimeMillis() - start < 550);
+		
+		// The failure of the first failed Action in the list is thrown, regardless of timing
+		//
+		actions = new LinkedList<Action<Foo>>();
+		actions.add(new SleepAction(0, null));
+		actions.add(new SleepAction(200, "second"));
+		actions.add(new SleepAction(0, "third"));
+		try {
+			new ParallelCompositeActionImpl<Foo>(actions).execute(stateful, "event");
+			fail("Expected failure");
+		} catch(RuntimeException e) {
+			assertEquals("second", e.getMessage());
+		}
+		
+		// Actions rejected by a saturated Executor run on the calling thread, keeping the order of failures
+		//
+		ExecutorService executor = PersisterAsyncAdapter.newBoundedExecutor("saturated", 1, 1);
+		try {
+			actions = new LinkedList<Action<Foo>>();
+			actions.add(new SleepAction(0, null));
+			actions.add(new SleepAction(200, null));
+			actions.add(new SleepAction(0, "third"));
+			actions.add(new SleepAction(0, "fourth"));
+			try {
+				new ParallelCompositeActionImpl<Foo>(actions, executor).execute(stateful, "event");
+				fail("Expected failure");
+			} catch(RuntimeException e) {
+				assertEquals("third", e.getMessage());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	static class SleepAction implements Action<Foo> {
+		
+		long wait;
+		
+		String failure;
+		
+		SleepAction(long wait, String failure) {
+			this.wait = wait;
+			this.failure = failure;
+		}
+
+		@Override
+		public void execute(Foo stateful, String event, Object... args) throws RetryException {
+			try {
+				Thread.sleep(this.wait);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			if (this.failure != null) {
+				throw new RuntimeException(this.failure);
+			}
+		}
+	}
 }
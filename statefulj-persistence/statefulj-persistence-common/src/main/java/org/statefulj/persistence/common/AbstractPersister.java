@@ -121,6 +121,17 @@ public abstract class AbstractPersister<T> implements Persister<T> {
 	
 	protected abstract Field findIdField(Class<?> clazz); 
 
+	/**
+	 * Find the Id field without depending upon a specific persistence API: the first field annotated
+	 * with an annotation named "Id", else the field named "id"
+	 * 
+	 * @param clazz
+	 * @return the Id field or null
+	 */
+	protected Field findIdFieldByConvention(Class<?> clazz) {
+		return ReflectionUtils.getIdField(clazz);
+	}
+
 	protected Field findStateField(String stateFieldName, Class<?> clazz) {
 		Field stateField = null;
 		if (StringUtils.isEmpty(stateFieldName)) {
@@ -193,6 +204,14 @@ public abstract class AbstractPersister<T> implements Persister<T> {
 		this.stateField.set(obj, state);
 	}
 
+	/**
+	 * Return the State with the given name, or the Start State if the name is null or unknown
+	 */
+	protected State<T> lookupState(String stateKey) {
+		State<T> state = (stateKey == null) ? null : this.states.get(stateKey);
+		return (state == null) ? this.start : state;
+	}
+
 	protected void throwStaleState(State<T> current, State<T> next) throws StaleStateException {
 		String err = String.format(
 				"Unable to update state, entity.state=%s, db.state=%s",
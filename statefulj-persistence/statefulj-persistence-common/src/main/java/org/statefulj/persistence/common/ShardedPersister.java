@@ -0,0 +1,117 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.statefulj.persistence.common;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.statefulj.common.utils.ConsistentHash;
+import org.statefulj.common.utils.ReflectionUtils;
+import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.StateProbe;
+import org.statefulj.fsm.model.State;
+
+/**
+ * Persister which routes each Entity to one of several underlying Persisters - typically one per 
+ * database - by a consistent hash of the Entity's Id.  Entities without an Id are routed to the 
+ * first Persister, as that's where a sharded harness creates them.  Once the Entity's Id is assigned, 
+ * the harness moves it to the shard of its Id - see ShardedJPAFSMHarnessImpl.
+ * 
+ * The routing only depends upon the number of shards, so a ShardedFinderImpl or sharded harness 
+ * built from lists of the same size, in the same order, will route an Id to the same shard
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class ShardedPersister<T> implements Persister<T>, StateProbe<T> {
+	
+	private ConsistentHash<Persister<T>> shards;
+	
+	private Field idField;
+	
+	/**
+	 * @param shards The Persisters, one per shard
+	 * @param clazz The Managed Entity class
+	 */
+	public ShardedPersister(List<Persister<T>> shards, Class<T> clazz) {
+		this(shards, clazz, ConsistentHash.DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param shards The Persisters, one per shard
+	 * @param clazz The Managed Entity class
+	 * @param virtualNodes The number of positions of each shard on the hash ring
+	 */
+	public ShardedPersister(List<Persister<T>> shards, Class<T> clazz, int virtualNodes) {
+		this.shards = new ConsistentHash<Persister<T>>(shards, virtualNodes);
+		this.idField = ReflectionUtils.getIdField(clazz);
+		if (this.idField == null) {
+			throw new RuntimeException("No Id field defined");
+		}
+		this.idField.setAccessible(true);
+	}
+
+	@Override
+	public State<T> getCurrent(T stateful) {
+		return getShard(stateful).getCurrent(stateful);
+	}
+
+	@Override
+	public void setCurrent(T stateful, State<T> current, State<T> next) throws StaleStateException {
+		getShard(stateful).setCurrent(stateful, current, next);
+	}
+	
+	/**
+	 * Probe the State on the shard of the Id, if that shard's Persister supports it
+	 * 
+	 * @param id The Id of the Entity
+	 * @return The current State or null if it's unknown
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public State<T> probeCurrent(Object id) {
+		Persister<T> shard = getShardById(id);
+		return (shard instanceof StateProbe) ? ((StateProbe<T>)shard).probeCurrent(id) : null;
+	}
+	
+	/**
+	 * Return the Persister of the Entity
+	 */
+	public Persister<T> getShard(T stateful) {
+		try {
+			return getShardById(this.idField.get(stateful));
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Return the Persister of the Id, or the first Persister if the Id is null
+	 */
+	public Persister<T> getShardById(Object id) {
+		return (id == null) ? this.shards.getNodes().get(0) : this.shards.get(id);
+	}
+
+	public List<Persister<T>> getShards() {
+		return this.shards.getNodes();
+	}
+}
@@ -0,0 +1,443 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.jdbc;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.StateProbe;
+import org.statefulj.fsm.model.State;
+import org.statefulj.persistence.common.AbstractPersister;
+
+/**
+ * Persister that performs the qualified update of the State column directly through JDBC:
+ * 
+ * <pre>UPDATE &lt;table&gt; SET &lt;state&gt;=? WHERE &lt;id&gt;=? AND &lt;state&gt;=?</pre>
+ * 
+ * Connections are obtained through {@link DataSourceUtils}, so the JDBCPersister participates in any 
+ * Spring managed transaction.  Within a transaction, the PreparedStatements are cached and reused 
+ * until the transaction completes.  
+ * 
+ * By default, the table is the simple name of the Entity class and the columns are the names of the 
+ * Id and State fields.  The Id field is the field annotated with an &#64;Id annotation or else the field 
+ * named "id"
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class JDBCPersister<T> extends AbstractPersister<T> implements Persister<T>, StateProbe<T> {
+	
+	Logger logger = LoggerFactory.getLogger(JDBCPersister.class);
+	
+	static final int DEFAULT_BATCH_SIZE = 100;
+	
+	private DataSource dataSource;
+	
+	private String tableName;
+	
+	private String idColumn;
+	
+	private String stateColumn;
+	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private String updateSql;
+	
+	private String updateStartSql;
+	
+	private String querySql;
+	
+	private ThreadLocal<StatementCache> unboundCache = new ThreadLocal<StatementCache>();
+	
+	/**
+	 * Instantiate the JDBCPersister.  The State field will be determined by inspection of 
+	 * the Entity for the @State annotation
+	 * 
+	 * @param states List of the States
+	 * @param start The Start State
+	 * @param clazz The Managed Entity class
+	 * @param dataSource The DataSource of the Entity's table
+	 */
+	public JDBCPersister(List<State<T>> states, State<T> start, Class<T> clazz, DataSource dataSource) {
+		this(states, null, start, clazz, dataSource, null, null, null);
+	}
+
+	/**
+	 * Instantiate the JDBCPersister
+	 * 
+	 * @param states List of the States
+	 * @param stateFieldName The name of the State field
+	 * @param start The Start State
+	 * @param clazz The Managed Entity class
+	 * @param dataSource The DataSource of the Entity's table
+	 * @param tableName The name of the Entity's table, if null, defaults to the simple name of the Entity class
+	 * @param idColumn The name of the Id column, if null, defaults to the name of the Id field
+	 * @param stateColumn The name of the State column, if null, defaults to the name of the State field
+	 */
+	public JDBCPersister(
+			List<State<T>> states, 
+			String stateFieldName, 
+			State<T> start, 
+			Class<T> clazz, 
+			DataSource dataSource,
+			String tableName,
+			String idColumn,
+			String stateColumn) {
+		super(states, stateFieldName, start, clazz);
+		this.dataSource = dataSource;
+		this.tableName = (tableName != null) ? tableName : clazz.getSimpleName();
+		this.idColumn = (idColumn != null) ? idColumn : getIdField().getName();
+		this.stateColumn = (stateColumn != null) ? stateColumn : getStateField().getName();
+		
+		// Build the SQL once
+		//
+		this.updateSql = String.format(
+				"UPDATE %s SET %s=? WHERE %s=? AND %s=?", 
+				this.tableName, 
+				this.stateColumn, 
+				this.idColumn, 
+				this.stateColumn);
+		this.updateStartSql = String.format(
+				"UPDATE %s SET %s=? WHERE %s=? AND (%s=? OR %s IS NULL)", 
+				this.tableName, 
+				this.stateColumn, 
+				this.idColumn, 
+				this.stateColumn,
+				this.stateColumn);
+		this.querySql = String.format(
+				"SELECT %s FROM %s WHERE %s=?", 
+				this.stateColumn, 
+				this.tableName, 
+				this.idColumn);
+	}
+
+	/**
+	 * Set the current State.  This method will ensure that the state in the db matches the expected current state.  
+	 * If not, it will throw a StateStateException
+	 * 
+	 * @param stateful
+	 * @param current
+	 * @param next
+	 * @throws StaleStateException 
+	 */
+	@Override
+	public void setCurrent(T stateful, State<T> current, State<T> next) throws StaleStateException {
+		try {
+			Object id = getId(stateful);
+			
+			// If the Entity has an Id, attempt the qualified update
+			//
+			if (id != null) {
+				Connection conn = DataSourceUtils.getConnection(this.dataSource);
+				try {
+					PreparedStatement update = prepareUpdate(conn, id, current, next);
+					if (update.executeUpdate() > 0) {
+						setState(stateful, next.getName());
+						return;
+					}
+					
+					// If we aren't able to update - it's most likely that we are out of sync.
+					// So, fetch the latest value and update the Stateful object.  Then throw a RetryException
+					// This will cause the event to be reprocessed by the FSM.  If there isn't a row, then 
+					// the Entity hasn't been inserted yet and we'll update it in memory
+					//
+					String[] state = queryState(conn, id);
+					if (state != null) {
+						String actual = (state[0] == null) ? getStart().getName() : state[0];
+						logger.warn("Stale State, expected={}, actual={}", current.getName(), actual);
+						setState(stateful, actual);
+						throwStaleState(current, next);
+					}
+				} finally {
+					releaseConnection(conn);
+				}
+			}
+			
+			// The Entity hasn't been persisted to the database - so it exists only
+			// this Application memory.  So, serialize the qualified update to prevent
+			// concurrency conflicts
+			//
+			updateInMemory(stateful, current, next);
+			
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchFieldException e) {
+			throw new RuntimeException(e);
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Transition a list of persisted Entities from the current State to the next State using JDBC
+	 * batches of up to batchSize updates.  The Entities which were successfully updated have their
+	 * State set to next.  The Entities which weren't in the current State are refreshed with their
+	 * actual State and returned
+	 * 
+	 * @param statefuls The Entities to update
+	 * @param current The expected current State
+	 * @param next The next State
+	 * @return The List of Entities that were stale
+	 */
+	public List<T> setCurrent(List<T> statefuls, State<T> current, State<T> next) {
+		List<T> stale = new LinkedList<T>();
+		try {
+			Connection conn = DataSourceUtils.getConnection(this.dataSource);
+			try {
+				PreparedStatement update = prepare(conn, (current.equals(getStart())) ? this.updateStartSql : this.updateSql);
+				
+				for(int i = 0; i < statefuls.size(); i += this.batchSize) {
+					List<T> batch = statefuls.subList(i, Math.min(i + this.batchSize, statefuls.size()));
+					for(T stateful : batch) {
+						bindUpdate(update, getId(stateful), current, next);
+						update.addBatch();
+					}
+					
+					int[] counts = update.executeBatch();
+					for(int j = 0; j < counts.length; j++) {
+						T stateful = batch.get(j);
+						String actual = next.getName();
+						
+						// If the driver can't tell us the count, read back the state
+						//
+						if (counts[j] == 0 || counts[j] == Statement.SUCCESS_NO_INFO) {
+							String[] state = queryState(conn, getId(stateful));
+							actual = (state == null || state[0] == null) ? getStart().getName() : state[0];
+						}
+						setState(stateful, actual);
+						if (!actual.equals(next.getName())) {
+							stale.add(stateful);
+						}
+					}
+				}
+			} finally {
+				releaseConnection(conn);
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchFieldException e) {
+			throw new RuntimeException(e);
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return stale;
+	}
+	
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getIdColumn() {
+		return idColumn;
+	}
+
+	public String getStateColumn() {
+		return stateColumn;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	protected boolean validStateField(Field stateField) {
+		return (stateField.getType().equals(String.class));
+	}
+
+	@Override
+	protected Field findIdField(Class<?> clazz) {
+		return findIdFieldByConvention(clazz);
+	}
+
+	@Override
+	protected Class<?> getStateFieldType() {
+		return String.class;
+	}
+	
+	protected PreparedStatement prepareUpdate(Connection conn, Object id, State<T> current, State<T> next) throws SQLException {
+		PreparedStatement update = prepare(conn, (current.equals(getStart())) ? this.updateStartSql : this.updateSql);
+		bindUpdate(update, id, current, next);
+		return update;
+	}
+	
+	/**
+	 * Read only the State column of the Entity
+	 * 
+	 * @param id The Id of the Entity
+	 * @return The current State or null if there is no row with the Id
+	 */
+	@Override
+	public State<T> probeCurrent(Object id) {
+		try {
+			Connection conn = DataSourceUtils.getConnection(this.dataSource);
+			try {
+				String[] state = queryState(conn, id);
+				return (state == null) ? null : lookupState(state[0]);
+			} finally {
+				releaseConnection(conn);
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	protected void bindUpdate(PreparedStatement update, Object id, State<T> current, State<T> next) throws SQLException {
+		update.setString(1, next.getName());
+		update.setObject(2, id);
+		update.setString(3, current.getName());
+	}
+	
+	/**
+	 * Returns the State column wrapped in an array, so that we can distinguish between a null State 
+	 * and a missing row
+	 */
+	protected String[] queryState(Connection conn, Object id) throws SQLException {
+		PreparedStatement query = prepare(conn, this.querySql);
+		query.setObject(1, id);
+		ResultSet rs = query.executeQuery();
+		try {
+			return (rs.next()) ? new String[] { rs.getString(1) } : null;
+		} finally {
+			rs.close();
+		}
+	}
+
+	protected void updateInMemory(T stateful, State<T> current, State<T> next) throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException, StaleStateException {
+		synchronized(stateful) {
+			String state = this.getState(stateful);
+			state = (state == null) ? getStart().getName() : state;
+			if (state.equals(current.getName())) {
+				setState(stateful, next.getName());
+			} else {
+				throwStaleState(current, next);
+			}
+		}
+	}
+	
+	/**
+	 * Prepare the statement.  If there is an active transaction, the statement is cached for the 
+	 * duration of the transaction; otherwise, the statement is closed when the Connection is released
+	 */
+	protected PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+		StatementCache cache = getStatementCache(conn);
+		PreparedStatement stmt = cache.statements.get(sql);
+		if (stmt == null) {
+			stmt = conn.prepareStatement(sql);
+			cache.statements.put(sql, stmt);
+		}
+		return stmt;
+	}
+	
+	private StatementCache getStatementCache(Connection conn) {
+		StatementCache cache = (StatementCache)TransactionSynchronizationManager.getResource(this);
+		if (cache == null) {
+			cache = this.unboundCache.get();
+		}
+		if (cache == null || cache.conn != conn) {
+			cache = new StatementCache(conn);
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				if (TransactionSynchronizationManager.hasResource(this)) {
+					TransactionSynchronizationManager.unbindResource(this);
+				}
+				TransactionSynchronizationManager.bindResource(this, cache);
+				TransactionSynchronizationManager.registerSynchronization(cache);
+				cache.bound = true;
+			} else {
+				this.unboundCache.set(cache);
+			}
+		}
+		return cache;
+	}
+	
+	private void releaseConnection(Connection conn) {
+		StatementCache cache = this.unboundCache.get();
+		if (cache != null) {
+			this.unboundCache.remove();
+			cache.close();
+		}
+		DataSourceUtils.releaseConnection(conn, this.dataSource);
+	}
+	
+	/**
+	 * The PreparedStatements of a Connection
+	 */
+	private class StatementCache extends TransactionSynchronizationAdapter {
+		
+		Connection conn;
+		
+		Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+		
+		boolean bound = false;
+		
+		StatementCache(Connection conn) {
+			this.conn = conn;
+		}
+		
+		@Override
+		public void afterCompletion(int status) {
+			if (this.bound && TransactionSynchronizationManager.getResource(JDBCPersister.this) == this) {
+				TransactionSynchronizationManager.unbindResource(JDBCPersister.this);
+			}
+			close();
+		}
+		
+		void close() {
+			for(PreparedStatement stmt : this.statements.values()) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					logger.warn("Unable to close statement", e);
+				}
+			}
+			this.statements.clear();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.impl.StateImpl;
+
+public class JDBCPersisterTest {
+	
+	DriverManagerDataSource dataSource;
+	
+	JdbcTemplate jdbcTemplate;
+	
+	JDBCPersister<Order> persister;
+	
+	State<Order> stateA = new StateImpl<Order>("A");
+	
+	State<Order> stateB = new StateImpl<Order>("B");
+
+	State<Order> stateC = new StateImpl<Order>("C");
+	
+	@Before
+	public void setUp() {
+		this.dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:jdbcpersister", "sa", "");
+		this.dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+		this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+		this.jdbcTemplate.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, state VARCHAR(32))");
+		
+		List<State<Order>> states = new LinkedList<State<Order>>();
+		states.add(stateA);
+		states.add(stateB);
+		states.add(stateC);
+		
+		this.persister = new JDBCPersister<Order>(states, null, stateA, Order.class, this.dataSource, "orders", null, null);
+	}
+	
+	@After
+	public void tearDown() {
+		this.jdbcTemplate.execute("DROP TABLE orders");
+	}
+
+	@Test
+	public void testValidStateChange() throws StaleStateException {
+		Order order = insert(1L, null);
+
+		assertEquals(stateA, this.persister.getCurrent(order));
+		
+		this.persister.setCurrent(order, stateA, stateB);
+		assertEquals(stateB.getName(), order.getState());
+		assertEquals(stateB.getName(), dbState(order));
+
+		this.persister.setCurrent(order, stateB, stateC);
+		assertEquals(stateC.getName(), order.getState());
+		assertEquals(stateC.getName(), dbState(order));
+	}
+
+	@Test(expected=StaleStateException.class)
+	public void testInvalidStateChange() throws StaleStateException {
+		Order order = insert(1L, stateB.getName());
+		try {
+			this.persister.setCurrent(order, stateA, stateC);
+		} catch(StaleStateException e) {
+			
+			// Verify that the Order was refreshed with the db State
+			//
+			assertEquals(stateB.getName(), order.getState());
+			throw e;
+		}
+	}
+	
+	@Test
+	public void testUnpersistedStateChange() throws StaleStateException {
+		
+		// No row - the update is performed in memory
+		//
+		Order order = new Order(1L);
+		this.persister.setCurrent(order, stateA, stateB);
+		assertEquals(stateB.getName(), order.getState());
+		
+		order = new Order();
+		this.persister.setCurrent(order, stateA, stateB);
+		assertEquals(stateB.getName(), order.getState());
+	}
+	
+	@Test
+	public void testBatchStateChange() {
+		this.persister.setBatchSize(2);
+		
+		Order order1 = insert(1L, null);
+		Order order2 = insert(2L, stateA.getName());
+		Order order3 = insert(3L, stateC.getName());
+		
+		List<Order> stale = this.persister.setCurrent(Arrays.asList(order1, order2, order3), stateA, stateB);
+		
+		assertEquals(1, stale.size());
+		assertSame(order3, stale.get(0));
+		assertEquals(stateB.getName(), dbState(order1));
+		assertEquals(stateB.getName(), dbState(order2));
+		assertEquals(stateC.getName(), dbState(order3));
+		assertEquals(stateB.getName(), order1.getState());
+		assertEquals(stateC.getName(), order3.getState());
+	}
+	
+	@Test
+	public void testProbeCurrent() {
+		insert(1L, null);
+		insert(2L, stateC.getName());
+		
+		assertEquals(stateA, this.persister.probeCurrent(1L));
+		assertEquals(stateC, this.persister.probeCurrent(2L));
+		assertNull(this.persister.probeCurrent(3L));
+	}
+	
+	@Test
+	public void testTransactionalStateChange() {
+		final Order order = insert(1L, null);
+		
+		TransactionTemplate tt = new TransactionTemplate(new DataSourceTransactionManager(this.dataSource));
+		tt.execute(new TransactionCallback<Object>() {
+
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				try {
+					persister.setCurrent(order, stateA, stateB);
+					persister.setCurrent(order, stateB, stateC);
+				} catch (StaleStateException e) {
+					throw new RuntimeException(e);
+				}
+				status.setRollbackOnly();
+				return null;
+			}
+		});
+		
+		// Rolled back
+		//
+		assertNull(dbState(order));
+	}
+	
+	private Order insert(Long id, String state) {
+		this.jdbcTemplate.update("INSERT INTO orders (id, state) VALUES (?, ?)", id, state);
+		Order order = new Order(id);
+		order.state = state;
+		return order;
+	}
+	
+	private String dbState(Order order) {
+		return this.jdbcTemplate.queryForObject("SELECT state FROM orders WHERE id=?", String.class, order.getId());
+	}
+}
@@ -0,0 +1,132 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.statefulj.common.utils.ConsistentHash;
+import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.impl.StateImpl;
+import org.statefulj.persistence.common.ShardedPersister;
+
+public class ShardedPersisterTest {
+	
+	static final int SHARDS = 3;
+	
+	List<JdbcTemplate> databases = new LinkedList<JdbcTemplate>();
+	
+	ShardedPersister<Order> persister;
+	
+	State<Order> stateA = new StateImpl<Order>("A");
+	
+	State<Order> stateB = new StateImpl<Order>("B");
+
+	@Before
+	public void setUp() {
+		List<State<Order>> states = new LinkedList<State<Order>>();
+		states.add(stateA);
+		states.add(stateB);
+
+		// One in-memory database per shard
+		//
+		List<Persister<Order>> shards = new LinkedList<Persister<Order>>();
+		for(int i = 0; i < SHARDS; i++) {
+			DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:shard" + i, "sa", "");
+			dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			jdbcTemplate.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, state VARCHAR(32))");
+			this.databases.add(jdbcTemplate);
+			shards.add(new JDBCPersister<Order>(states, null, stateA, Order.class, dataSource, "orders", null, null));
+		}
+		
+		this.persister = new ShardedPersister<Order>(shards, Order.class);
+	}
+	
+	@After
+	public void tearDown() {
+		for(JdbcTemplate jdbcTemplate : this.databases) {
+			jdbcTemplate.execute("DROP TABLE orders");
+		}
+	}
+
+	@Test
+	public void testShardedStateChange() throws StaleStateException {
+		ConsistentHash<JdbcTemplate> router = new ConsistentHash<JdbcTemplate>(this.databases);
+		
+		int[] counts = new int[SHARDS];
+		for(long id = 1; id <= 30; id++) {
+			JdbcTemplate shard = router.get(id);
+			shard.update("INSERT INTO orders (id, state) VALUES (?, ?)", id, stateA.getName());
+			counts[this.databases.indexOf(shard)]++;
+			
+			Order order = new Order(id);
+			order.state = stateA.getName();
+			this.persister.setCurrent(order, stateA, stateB);
+			assertEquals(stateB.getName(), order.getState());
+		}
+		
+		// Every shard was used and holds only its own rows, all of which were transitioned
+		//
+		for(int i = 0; i < SHARDS; i++) {
+			JdbcTemplate shard = this.databases.get(i);
+			assertTrue(counts[i] > 0);
+			assertEquals(
+					counts[i], 
+					shard.queryForObject("SELECT COUNT(*) FROM orders WHERE state=?", Integer.class, stateB.getName()).intValue());
+			assertEquals(
+					counts[i], 
+					shard.queryForObject("SELECT COUNT(*) FROM orders", Integer.class).intValue());
+		}
+	}
+
+	@Test(expected=StaleStateException.class)
+	public void testShardedStaleState() throws StaleStateException {
+		Long id = 7L;
+		new ConsistentHash<JdbcTemplate>(this.databases).get(id).update(
+				"INSERT INTO orders (id, state) VALUES (?, ?)", 
+				id, 
+				stateB.getName());
+
+		Order order = new Order(id);
+		try {
+			this.persister.setCurrent(order, stateA, stateB);
+		} catch(StaleStateException e) {
+			assertEquals(stateB.getName(), order.getState());
+			throw e;
+		}
+	}
+
+	@Test
+	public void testWithoutId() {
+		
+		// Entities without an Id, and a null Id, are routed to the first shard
+		//
+		assertSame(this.persister.getShards().get(0), this.persister.getShard(new Order(null)));
+		assertSame(this.persister.getShards().get(0), this.persister.getShardById(null));
+	}
+}
@@ -27,6 +27,7 @@ import javax.persistence.Id;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.Version;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.CriteriaUpdate;
@@ -39,18 +40,23 @@ import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
 import org.statefulj.fsm.Persister;
 import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.StateProbe;
 import org.statefulj.fsm.model.State;
 import org.statefulj.persistence.common.AbstractPersister;
 
 import static org.statefulj.common.utils.ReflectionUtils.*;
 
 @Transactional
-public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T> {
+public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>, StateProbe<T> {
 
 	Logger logger = LoggerFactory.getLogger(JPAPerister.class);
 
 	@PersistenceContext
 	private EntityManager entityManager;
+	
+	private boolean refreshOnStale = false;
+	
+	private Field versionField;
   	
 	public JPAPerister(List<State<T>> states, State<T> start, Class<T> clazz) {
 		this(states, null, start, clazz);
@@ -58,11 +64,17 @@ public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>
 
 	public JPAPerister(List<State<T>> states, String stateFieldName, State<T> start, Class<T> clazz) {
 		super(states, stateFieldName, start, clazz);
+		this.versionField = getReferencedField(clazz, Version.class);
+		if (this.versionField != null) {
+			this.versionField.setAccessible(true);
+		}
 	}
 
 	/**
 	 * Set the current State.  This method will ensure that the state in the db matches the expected current state.  
-	 * If not, it will throw a StateStateException
+	 * If the Entity has a Version field, the update is also qualified by the Entity's version, so that a stale 
+	 * copy - for example, one read from a replica - is detected before any Action runs.  If not, it will throw 
+	 * a StateStateException
 	 * 
 	 * @param stateful
 	 * @param current
@@ -90,13 +102,22 @@ public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>
 					// So, fetch the latest value and update the Stateful object.  Then throw a RetryException
 					// This will cause the event to be reprocessed by the FSM
 					//
-					Query query = buildQuery(id, stateful);
 					String state = getStart().getName();
-					try {
-						state = (String)query.getSingleResult();
-					} catch(NoResultException nre) {
-						// This is the first time setting the state, ignore
+					if (this.refreshOnStale || this.versionField != null) {
+						
+						// The Entity may have been read from a replica - so reload all of 
+						// its fields from the database, not just the State
 						//
+						entityManager.refresh(stateful);
+						state = (this.getState(stateful) == null) ? state : this.getState(stateful);
+					} else {
+						Query query = buildQuery(id);
+						try {
+							state = (String)query.getSingleResult();
+						} catch(NoResultException nre) {
+							// This is the first time setting the state, ignore
+							//
+						}
 					}
 					
 					logger.warn("Stale State, expected={}, actual={}", current.getName(), state);
@@ -132,6 +153,36 @@ public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>
 		}
 	}
 	
+	/**
+	 * Read only the State column of the Entity
+	 * 
+	 * @param id The Id of the Entity
+	 * @return The current State or null if there is no persisted Entity with the Id
+	 */
+	@Override
+	public State<T> probeCurrent(Object id) {
+		try {
+			return lookupState((String)buildQuery(id).getSingleResult());
+		} catch(NoResultException nre) {
+			return null;
+		}
+	}
+
+	public boolean isRefreshOnStale() {
+		return refreshOnStale;
+	}
+
+	/**
+	 * If true, a StaleStateException refreshes the entire Entity from the database rather than 
+	 * just its State.  Use when the Entity may have been read from a replica.  A versioned Entity is 
+	 * always refreshed, as a stale version means that any of its columns may be stale
+	 * 
+	 * @param refreshOnStale
+	 */
+	public void setRefreshOnStale(boolean refreshOnStale) {
+		this.refreshOnStale = refreshOnStale;
+	}
+
 	protected Query buildUpdate(
 			Object id, 
 			T stateful, 
@@ -171,6 +222,15 @@ public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>
 					statePath, 
 					current.getName()
 				);
+		
+		// and version=<version>
+		//
+		Object version = (this.versionField == null) ? null : this.versionField.get(stateful);
+		if (version != null) {
+			statePredicate = cb.and(
+					statePredicate, 
+					cb.equal(t.get(this.versionField.getName()), version));
+		}
 				
 		cu.where(
 			cb.and(
@@ -209,7 +269,7 @@ public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>
 		return String.class;
 	}
 
-	private Query buildQuery(Object id, T stateful) throws SecurityException, IllegalArgumentException, NoSuchFieldException, IllegalAccessException {
+	private Query buildQuery(Object id) {
 		
 		CriteriaBuilder cb = this.entityManager.getCriteriaBuilder();
 		CriteriaQuery<String> cq = cb.createQuery(String.class);
@@ -220,7 +280,7 @@ public class JPAPerister<T> extends AbstractPersister<T> implements Persister<T>
 		
 		cq.select(statePath);
 		
-		cq.where(cb.equal(idPath, this.getId(stateful)));
+		cq.where(cb.equal(idPath, id));
 
 		Query query = entityManager.createQuery(cq);
 		if (logger.isDebugEnabled()) {
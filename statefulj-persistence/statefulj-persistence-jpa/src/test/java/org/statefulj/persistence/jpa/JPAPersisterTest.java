@@ -22,6 +22,8 @@ import static org.junit.Assert.*;
 import java.lang.reflect.Field;
 
 import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,9 +43,15 @@ public class JPAPersisterTest {
 	@Resource
 	Persister<Order> jpaPersister;
 	
+	@Resource
+	Persister<Order> refreshingJPAPersister;
+	
 	@Resource
 	OrderRepository orderRepo;
 	
+	@PersistenceContext
+	EntityManager entityManager;
+	
 	@Resource
 	JpaTransactionManager transactionManager;
 	
@@ -123,4 +131,36 @@ public class JPAPersisterTest {
 		jpaPersister.setCurrent(order, stateB, stateC);
 		UnitTestUtils.commitTransaction(transactionManager);
 	}
+
+	@Test
+	public void testRefreshOnStale() {
+		UnitTestUtils.startTransaction(transactionManager);
+		Order order = new Order();
+		order.setAmount(20);
+		order = orderRepo.save(order);
+		UnitTestUtils.commitTransaction(transactionManager);
+
+		UnitTestUtils.startTransaction(transactionManager);
+		order = orderRepo.findOne(order.getId());
+		
+		// Change the row behind the Entity's back
+		//
+		this.entityManager.createQuery("update Order set state=:state, amount=:amount where id=:id")
+			.setParameter("state", stateC.getName())
+			.setParameter("amount", 100)
+			.setParameter("id", order.getId())
+			.executeUpdate();
+
+		try {
+			refreshingJPAPersister.setCurrent(order, stateA, stateB);
+			fail("Expected StaleStateException");
+		} catch(StaleStateException e) {
+			
+			// The whole Entity was reloaded
+			//
+			assertEquals(stateC.getName(), order.getState());
+			assertEquals(100, order.getAmount());
+		}
+		UnitTestUtils.commitTransaction(transactionManager);
+	}
 }
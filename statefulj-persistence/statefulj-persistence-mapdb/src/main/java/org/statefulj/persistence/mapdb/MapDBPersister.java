@@ -0,0 +1,402 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.mapdb;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.StateProbe;
+import org.statefulj.fsm.model.State;
+import org.statefulj.persistence.common.AbstractPersister;
+
+/**
+ * Persister that keeps the State of each Entity in an embedded, on-disk key-value store (MapDB),
+ * keyed by the Entity's Id.  State changes are applied with an atomic compare-and-set of the 
+ * stored State, so the store - not the Entity - is the authority on the current State.  
+ * 
+ * Writes are committed to disk according to the {@link SyncPolicy}.  The default, BATCH, groups
+ * up to batchSize state changes into a single commit.
+ * 
+ * The Id field is the field annotated with an &#64;Id annotation or else the field named "id".  
+ * The Ids must be serializable by MapDB
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class MapDBPersister<T> extends AbstractPersister<T> implements Persister<T>, StateProbe<T> {
+	
+	Logger logger = LoggerFactory.getLogger(MapDBPersister.class);
+	
+	static final int DEFAULT_BATCH_SIZE = 100;
+	
+	static final long DEFAULT_SYNC_INTERVAL = 100;
+	
+	private DB db;
+	
+	private boolean ownsDB;
+	
+	private ConcurrentMap<Object, String> store;
+	
+	private SyncPolicy syncPolicy = SyncPolicy.BATCH;
+	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	
+	private long syncInterval = DEFAULT_SYNC_INTERVAL;
+	
+	AtomicInteger pending = new AtomicInteger();
+	
+	private volatile ScheduledExecutorService committer;
+	
+	/**
+	 * Instantiate the MapDBPersister with its own MapDB database stored in file.  The State field 
+	 * will be determined by inspection of the Entity for the @State annotation.  The database is 
+	 * closed when the MapDBPersister is closed
+	 * 
+	 * @param states List of the States
+	 * @param start The Start State
+	 * @param clazz The Managed Entity class
+	 * @param file The database file
+	 */
+	public MapDBPersister(List<State<T>> states, State<T> start, Class<T> clazz, File file) {
+		this(states, null, start, clazz, DBMaker.newFileDB(file).closeOnJvmShutdown().make(), null);
+		this.ownsDB = true;
+	}
+
+	/**
+	 * Instantiate the MapDBPersister against an existing MapDB database.  The database isn't closed 
+	 * when the MapDBPersister is closed
+	 * 
+	 * @param states List of the States
+	 * @param stateFieldName The name of the State field
+	 * @param start The Start State
+	 * @param clazz The Managed Entity class
+	 * @param db The MapDB database
+	 * @param mapName The name of the map holding the States, if null, defaults to the name of the Entity class
+	 */
+	public MapDBPersister(
+			List<State<T>> states, 
+			String stateFieldName, 
+			State<T> start, 
+			Class<T> clazz, 
+			DB db,
+			String mapName) {
+		super(states, stateFieldName, start, clazz);
+		this.db = db;
+		this.store = db.getHashMap((mapName != null) ? mapName : clazz.getName());
+	}
+
+	/**
+	 * Set the current State.  This method will ensure that the state in the store matches the expected current state.  
+	 * If not, it will throw a StateStateException
+	 * 
+	 * @param stateful
+	 * @param current
+	 * @param next
+	 * @throws StaleStateException 
+	 */
+	@Override
+	public void setCurrent(T stateful, State<T> current, State<T> next) throws StaleStateException {
+		try {
+			Object id = getId(stateful);
+			
+			// The Entity doesn't have an Id yet - so it exists only in this Application's 
+			// memory.  So, serialize the qualified update to prevent concurrency conflicts
+			//
+			if (id == null) {
+				updateInMemory(stateful, current, next);
+				return;
+			}
+			
+			if (!compareAndSet(id, current, next)) {
+				
+				// We weren't able to update - we are out of sync.  So refresh the Stateful object
+				// with the stored State and throw a StaleStateException.  This will cause the event
+				// to be reprocessed by the FSM
+				//
+				String actual = getStoredState(id);
+				logger.warn("Stale State, expected={}, actual={}", current.getName(), actual);
+				setState(stateful, actual);
+				throwStaleState(current, next);
+			}
+			setState(stateful, next.getName());
+			written(1);
+			
+		} catch (NoSuchFieldException e) {
+			throw new RuntimeException(e);
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Transition a list of Entities from the current State to the next State as a single write batch:
+	 * the compare-and-sets are applied individually, but committed together according to the 
+	 * {@link SyncPolicy}.  The Entities which were successfully updated have their State set to next.  
+	 * The Entities which weren't in the current State are refreshed with their actual State and returned
+	 * 
+	 * @param statefuls The Entities to update
+	 * @param current The expected current State
+	 * @param next The next State
+	 * @return The List of Entities that were stale
+	 */
+	public List<T> setCurrent(List<T> statefuls, State<T> current, State<T> next) {
+		List<T> stale = new LinkedList<T>();
+		int updated = 0;
+		try {
+			for(T stateful : statefuls) {
+				Object id = getId(stateful);
+				if (id == null) {
+					try {
+						updateInMemory(stateful, current, next);
+					} catch (StaleStateException e) {
+						stale.add(stateful);
+					}
+				} else if (compareAndSet(id, current, next)) {
+					setState(stateful, next.getName());
+					updated++;
+				} else {
+					setState(stateful, getStoredState(id));
+					stale.add(stateful);
+				}
+			}
+		} catch (NoSuchFieldException e) {
+			throw new RuntimeException(e);
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (updated > 0) {
+				written(updated);
+			}
+		}
+		return stale;
+	}
+	
+	/**
+	 * Refresh the State of the Entity from the store.  If there is no stored State, the Entity is 
+	 * left unchanged
+	 * 
+	 * @param stateful The Entity
+	 */
+	public void refresh(T stateful) {
+		try {
+			Object id = getId(stateful);
+			String state = (id == null) ? null : this.store.get(id);
+			if (state != null) {
+				setState(stateful, state);
+			}
+		} catch (NoSuchFieldException e) {
+			throw new RuntimeException(e);
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Read the stored State.  As the store only holds States, an Id without a stored State is 
+	 * reported as being in the Start State
+	 * 
+	 * @param id The Id of the Entity
+	 * @return The current State
+	 */
+	@Override
+	public State<T> probeCurrent(Object id) {
+		return lookupState(this.store.get(id));
+	}
+	
+	/**
+	 * Commit all pending state changes to disk
+	 */
+	public synchronized void sync() {
+		if (!this.db.isClosed()) {
+			this.pending.set(0);
+			this.db.commit();
+		}
+	}
+	
+	/**
+	 * Commit all pending state changes and release the store.  If the MapDBPersister opened the
+	 * database, the database is closed
+	 */
+	public synchronized void close() {
+		if (this.committer != null) {
+			this.committer.shutdown();
+			this.committer = null;
+		}
+		if (this.db.isClosed()) {
+			return;
+		}
+		sync();
+		if (this.ownsDB) {
+			this.db.close();
+		}
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getSyncInterval() {
+		return syncInterval;
+	}
+
+	/**
+	 * @param syncInterval The maximum number of milliseconds a state change may remain uncommitted 
+	 * under the BATCH {@link SyncPolicy}
+	 */
+	public void setSyncInterval(long syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+
+	@Override
+	protected boolean validStateField(Field stateField) {
+		return stateField.getType().equals(String.class);
+	}
+
+	@Override
+	protected Field findIdField(Class<?> clazz) {
+		return findIdFieldByConvention(clazz);
+	}
+
+	@Override
+	protected Class<?> getStateFieldType() {
+		return String.class;
+	}
+	
+	/**
+	 * Atomically move the stored State of the Id from current to next.  A missing State is 
+	 * equivalent to the Start State
+	 */
+	protected boolean compareAndSet(Object id, State<T> current, State<T> next) {
+		if (current.getName().equals(getStart().getName()) 
+				&& this.store.putIfAbsent(id, next.getName()) == null) {
+			return true;
+		}
+		return this.store.replace(id, current.getName(), next.getName());
+	}
+	
+	protected String getStoredState(Object id) {
+		String state = this.store.get(id);
+		return (state == null) ? getStart().getName() : state;
+	}
+	
+	protected void updateInMemory(T stateful, State<T> current, State<T> next) throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException, StaleStateException {
+		synchronized(stateful) {
+			String state = this.getState(stateful);
+			state = (state == null) ? getStart().getName() : state;
+			if (state.equals(current.getName())) {
+				setState(stateful, next.getName());
+			} else {
+				throwStaleState(current, next);
+			}
+		}
+	}
+	
+	/**
+	 * Apply the SyncPolicy to the count state changes just written
+	 */
+	private void written(int count) {
+		switch(this.syncPolicy) {
+			case EVERY_WRITE:
+				sync();
+				break;
+				
+			case BATCH:
+				if (this.pending.addAndGet(count) >= this.batchSize) {
+					sync();
+				} else {
+					startCommitter();
+				}
+				break;
+				
+			case NONE:
+				break;
+		}
+	}
+	
+	/**
+	 * The committer bounds the time a partial batch remains uncommitted
+	 */
+	private void startCommitter() {
+		if (this.committer == null) {
+			synchronized(this) {
+				if (this.committer == null && !this.db.isClosed()) {
+					this.committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "statefulj-mapdb-sync");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+					this.committer.scheduleWithFixedDelay(new Runnable() {
+						
+						@Override
+						public void run() {
+							try {
+								if (pending.get() > 0) {
+									sync();
+								}
+							} catch(RuntimeException e) {
+								logger.error("Unable to commit state changes", e);
+							}
+						}
+					}, this.syncInterval, this.syncInterval, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+}
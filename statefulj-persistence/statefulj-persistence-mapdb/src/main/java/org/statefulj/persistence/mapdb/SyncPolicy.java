@@ -0,0 +1,43 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.mapdb;
+
+/**
+ * Determines when the state changes written by the {@link MapDBPersister} are committed to disk
+ * 
+ * @author Andrew Hall
+ *
+ */
+public enum SyncPolicy {
+	
+	/**
+	 * Commit after every state change.  Slowest, but a state change is durable when setCurrent returns
+	 */
+	EVERY_WRITE,
+	
+	/**
+	 * Commit after batchSize state changes or at most syncInterval milliseconds after the first 
+	 * uncommitted change, whichever comes first
+	 */
+	BATCH,
+	
+	/**
+	 * Never commit implicitly.  State changes are only committed when sync or close are invoked
+	 */
+	NONE
+}
@@ -0,0 +1,178 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.mapdb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.model.State;
+import org.statefulj.fsm.model.impl.StateImpl;
+
+public class MapDBPersisterTest {
+	
+	File file;
+	
+	List<State<Order>> states;
+	
+	MapDBPersister<Order> persister;
+	
+	State<Order> stateA = new StateImpl<Order>("A");
+	
+	State<Order> stateB = new StateImpl<Order>("B");
+
+	State<Order> stateC = new StateImpl<Order>("C");
+	
+	@Before
+	public void setUp() throws IOException {
+		this.file = File.createTempFile("statefulj", ".db");
+		this.file.delete();
+		
+		this.states = new LinkedList<State<Order>>();
+		this.states.add(stateA);
+		this.states.add(stateB);
+		this.states.add(stateC);
+		
+		this.persister = new MapDBPersister<Order>(this.states, stateA, Order.class, this.file);
+	}
+	
+	@After
+	public void tearDown() {
+		this.persister.close();
+		for(File f : this.file.getParentFile().listFiles()) {
+			if (f.getName().startsWith(this.file.getName())) {
+				f.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testValidStateChange() throws StaleStateException {
+		Order order = new Order(1L);
+
+		assertEquals(stateA, this.persister.getCurrent(order));
+		
+		this.persister.setCurrent(order, stateA, stateB);
+		assertEquals(stateB.getName(), order.getState());
+
+		this.persister.setCurrent(order, stateB, stateC);
+		assertEquals(stateC.getName(), order.getState());
+	}
+
+	@Test(expected=StaleStateException.class)
+	public void testInvalidStateChange() throws StaleStateException {
+		Order order = new Order(1L);
+		this.persister.setCurrent(order, stateA, stateB);
+		
+		// A second copy of the Entity which is out of date
+		//
+		Order stale = new Order(1L);
+		try {
+			this.persister.setCurrent(stale, stateA, stateC);
+		} catch(StaleStateException e) {
+			
+			// Verify that the Order was refreshed with the stored State
+			//
+			assertEquals(stateB.getName(), stale.getState());
+			throw e;
+		}
+	}
+	
+	@Test
+	public void testUnpersistedStateChange() throws StaleStateException {
+		
+		// No Id - the update is performed in memory
+		//
+		Order order = new Order();
+		this.persister.setCurrent(order, stateA, stateB);
+		assertEquals(stateB.getName(), order.getState());
+	}
+	
+	@Test
+	public void testBatchStateChange() throws StaleStateException {
+		Order order3 = new Order(3L);
+		this.persister.setCurrent(order3, stateA, stateC);
+		
+		Order order1 = new Order(1L);
+		Order order2 = new Order(2L);
+		order3 = new Order(3L);
+		
+		List<Order> stale = this.persister.setCurrent(Arrays.asList(order1, order2, order3), stateA, stateB);
+		
+		assertEquals(1, stale.size());
+		assertSame(order3, stale.get(0));
+		assertEquals(stateB.getName(), order1.getState());
+		assertEquals(stateB.getName(), order2.getState());
+		assertEquals(stateC.getName(), order3.getState());
+	}
+	
+	@Test
+	public void testDurableStateChange() throws StaleStateException {
+		this.persister.setSyncPolicy(SyncPolicy.EVERY_WRITE);
+		this.persister.setCurrent(new Order(1L), stateA, stateB);
+		this.persister.close();
+		
+		// Reopen the store and verify the State survived
+		//
+		this.persister = new MapDBPersister<Order>(this.states, stateA, Order.class, this.file);
+		Order order = new Order(1L);
+		this.persister.refresh(order);
+		assertEquals(stateB.getName(), order.getState());
+		
+		this.persister.setCurrent(order, stateB, stateC);
+		assertEquals(stateC.getName(), order.getState());
+	}
+	
+	@Test
+	public void testBatchSync() throws StaleStateException, InterruptedException {
+		this.persister.setBatchSize(2);
+		this.persister.setSyncInterval(10);
+		
+		this.persister.setCurrent(new Order(1L), stateA, stateB);
+		assertEquals(1, this.persister.pending.get());
+		
+		// The partial batch is committed by the sync interval
+		//
+		Thread.sleep(200);
+		assertEquals(0, this.persister.pending.get());
+
+		// A full batch is committed immediately
+		//
+		this.persister.setSyncInterval(60000);
+		this.persister.setCurrent(new Order(2L), stateA, stateB);
+		assertEquals(1, this.persister.pending.get());
+		this.persister.setCurrent(new Order(3L), stateA, stateB);
+		assertEquals(0, this.persister.pending.get());
+		this.persister.close();
+
+		this.persister = new MapDBPersister<Order>(this.states, stateA, Order.class, this.file);
+		for(long id = 1; id <= 3; id++) {
+			Order order = new Order(id);
+			this.persister.refresh(order);
+			assertEquals(stateB.getName(), order.getState());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/***
+ * 
+ * Copyright 2014 Andrew Hall
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.statefulj.persistence.mongo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.statefulj.fsm.AsyncPersister;
+import org.statefulj.fsm.PersisterAsyncAdapter;
+import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.TooBusyException;
+import org.statefulj.fsm.model.State;
+
+/**
+ * AsyncPersister for Mongo.  The current State is read from the in-memory StateDocument, so
+ * {@link #getCurrent(Object)} completes immediately.  Entities which haven't been persisted
+ * are updated in memory on the caller's thread; only the qualified update against Mongo is
+ * dispatched onto a bounded Executor, so a small number of threads are shared by all the 
+ * in-flight transitions.  If the Executor is saturated, the update completes exceptionally with
+ * a TooBusyException.  Once the Executor is shutdown, an update of a persisted Entity throws an
+ * IllegalStateException.
+ * 
+ * @author Andrew Hall
+ *
+ */
+public class AsyncMongoPersister<T> implements AsyncPersister<T> {
+	
+	static final int DEFAULT_POOL_SIZE = 8;
+	static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	
+	private MongoPersister<T> persister;
+	
+	private Executor executor;
+	
+	private ExecutorService ownedExecutor;
+	
+	/**
+	 * Instantiate the AsyncMongoPersister with a pool of {@value #DEFAULT_POOL_SIZE} daemon threads, 
+	 * queueing up to {@value #DEFAULT_QUEUE_CAPACITY} updates.  The pool is released by {@link #shutdown()}
+	 * 
+	 * @param persister The MongoPersister that manages the StateDocuments
+	 */
+	public AsyncMongoPersister(MongoPersister<T> persister) {
+		this(persister, PersisterAsyncAdapter.newBoundedExecutor("statefulj-mongo", DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY));
+		this.ownedExecutor = (ExecutorService)this.executor;
+	}
+	
+	/**
+	 * 
+	 * @param persister The MongoPersister that manages the StateDocuments
+	 * @param executor The Executor that will perform the updates against Mongo
+	 */
+	public AsyncMongoPersister(MongoPersister<T> persister, Executor executor) {
+		this.persister = persister;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletionStage<State<T>> getCurrent(T stateful) {
+		return CompletableFuture.completedFuture(this.persister.getCurrent(stateful));
+	}
+
+	@Override
+	public CompletionStage<Void> setCurrent(final T stateful, final State<T> current, final State<T> next) {
+		try {
+			StateDocumentImpl stateDoc = this.persister.getStateDocument(stateful);
+
+			// If the Entity has been persisted, perform the qualified update on 
+			// the Executor
+			//
+			if (stateDoc != null && stateDoc.isPersisted()) {
+				return CompletableFuture.runAsync(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							persister.setCurrent(stateful, current, next);
+						} catch (StaleStateException e) {
+							throw new CompletionException(e);
+						}
+					}
+				}, this.executor);
+			}
+			
+			// Otherwise, the update is in memory
+			//
+			this.persister.setCurrent(stateful, current, next);
+			return CompletableFuture.completedFuture(null);
+			
+		} catch (StaleStateException e) {
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			future.completeExceptionally(e);
+			return future;
+		} catch (RejectedExecutionException e) {
+			
+			// Rejected because it's shutdown rather than busy?
+			//
+			if (this.executor instanceof ExecutorService && ((ExecutorService)this.executor).isShutdown()) {
+				throw new IllegalStateException("AsyncMongoPersister has been shutdown", e);
+			}
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			future.completeExceptionally(new TooBusyException());
+			return future;
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public MongoPersister<T> getPersister() {
+		return persister;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Shutdown the pool created by this AsyncMongoPersister, pending updates will be completed.  
+	 * An Executor that was provided is left running
+	 */
+	public void shutdown() {
+		if (this.ownedExecutor != null) {
+			this.ownedExecutor.shutdown();
+		}
+	}
+}
@@ -20,6 +20,7 @@ package org.statefulj.persistence.mongo;
 
 import java.lang.reflect.Field;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.Random;
 
@@ -34,9 +35,15 @@ import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.IndexOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -45,6 +52,7 @@ import static org.statefulj.common.utils.ReflectionUtils.*;
 
 import org.statefulj.fsm.Persister;
 import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.StateProbe;
 import org.statefulj.fsm.model.State;
 import org.statefulj.persistence.common.AbstractPersister;
 import org.statefulj.persistence.mongo.model.StateDocument;
@@ -55,11 +63,17 @@ public class MongoPersister<T>
 			extends AbstractPersister<T> 
 			implements 
 				Persister<T>, 
+				StateProbe<T>,
 				BeanDefinitionRegistryPostProcessor, 
-				ApplicationContextAware {
+				ApplicationContextAware,
+				ApplicationListener<ContextRefreshedEvent> {
 	
 	final static FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
 	
+	final static String MANAGED_ID_INDEX = "managedCollection_managedId";
+	
+	final static String MANAGED_STATE_INDEX = "managedCollection_state_updated";
+	
 	private ApplicationContext appContext; 
 	
 	private String repoId;
@@ -68,6 +82,10 @@ public class MongoPersister<T>
 
 	private String templateId;
 
+	private boolean ensureIndexes = true;
+	
+	private volatile boolean indexesEnsured = false;
+
 	/**
 	 * Instantiate the MongoPersister with a specified template.  The State field
 	 * on the Entity will be determined by inspection of Entity for the @State annotation
@@ -151,6 +169,105 @@ public class MongoPersister<T>
 		this.appContext = applicationContext;
 	}
 
+	/**
+	 * Ensure the managedState indexes once the ApplicationContext has been refreshed 
+	 * and the MongoTemplate is available
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (this.ensureIndexes) {
+			ensureIndexes();
+		}
+	}
+
+	/**
+	 * Whether the MongoPersister should ensure the managedState indexes on startup.  Defaults to true
+	 * 
+	 * @param ensureIndexes
+	 */
+	public void setEnsureIndexes(boolean ensureIndexes) {
+		this.ensureIndexes = ensureIndexes;
+	}
+
+	/**
+	 * Ensure the compound indexes on the managedState collection used to lookup StateDocuments by
+	 * their Managed Entity and by State.  The indexes are shared across all the Managed Collections,
+	 * so ensuring them more than once is a noop
+	 */
+	public void ensureIndexes() {
+		if (!this.indexesEnsured) {
+			IndexOperations indexOps = getMongoTemplate().indexOps(StateDocumentImpl.class);
+			indexOps.ensureIndex(
+					new Index()
+						.on("managedCollection", Direction.ASC)
+						.on("managedId", Direction.ASC)
+						.named(MANAGED_ID_INDEX));
+			indexOps.ensureIndex(
+					new Index()
+						.on("managedCollection", Direction.ASC)
+						.on("state", Direction.ASC)
+						.on("updated", Direction.ASC)
+						.named(MANAGED_STATE_INDEX));
+			this.indexesEnsured = true;
+		}
+	}
+
+	/**
+	 * Find the StateDocument of the Managed Entity with the given id
+	 * 
+	 * @param managedId The id of the Managed Entity
+	 * @return The StateDocument or null if the Managed Entity hasn't been persisted
+	 */
+	public StateDocument findStateDocument(Object managedId) {
+		Query query = Query.query(
+				new Criteria("managedCollection").is(getManagedCollection())
+					.and("managedId").is(managedId));
+		return getMongoTemplate().findOne(query, StateDocumentImpl.class);
+	}
+
+	/**
+	 * Read the State from the StateDocument, via the managedId index, without loading the 
+	 * Managed Entity
+	 * 
+	 * @param id The id of the Managed Entity
+	 * @return The current State or null if the Managed Entity hasn't been persisted
+	 */
+	@Override
+	public State<T> probeCurrent(Object id) {
+		StateDocument stateDoc = findStateDocument(id);
+		return (stateDoc == null) ? null : lookupState(stateDoc.getState());
+	}
+
+	/**
+	 * Find all the StateDocuments of the Managed Collection that are in the given State, ordered 
+	 * by the time they were last updated
+	 * 
+	 * @param state The name of the State
+	 * @return List of the StateDocuments
+	 */
+	public List<StateDocument> findStateDocuments(String state) {
+		return findStateDocuments(state, null);
+	}
+
+	/**
+	 * Find all the StateDocuments of the Managed Collection that are in the given State and haven't
+	 * been updated since updatedBefore, ordered by the time they were last updated.  Useful for reconciling
+	 * Entities that are "stuck" in a State
+	 * 
+	 * @param state The name of the State
+	 * @param updatedBefore Only return StateDocuments last updated before this time, if null, return all
+	 * @return List of the StateDocuments
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public List<StateDocument> findStateDocuments(String state, Date updatedBefore) {
+		Criteria criteria = new Criteria("managedCollection").is(getManagedCollection()).and("state").is(state);
+		if (updatedBefore != null) {
+			criteria = criteria.and("updated").lt(updatedBefore);
+		}
+		Query query = Query.query(criteria).with(new Sort(Direction.ASC, "updated"));
+		return (List)getMongoTemplate().find(query, StateDocumentImpl.class);
+	}
+
 	/**
 	 * Set the current State.  This method will ensure that the state in the db matches the expected current state.  
 	 * If not, it will throw a StateStateException
@@ -393,6 +510,10 @@ public class MongoPersister<T>
 		return (StateDocumentImpl)getMongoTemplate().findAndModify(query, update, RETURN_NEW, StateDocumentImpl.class);
 	}
 
+	protected String getManagedCollection() {
+		return getMongoTemplate().getCollectionName(getClazz());
+	}
+
 	protected StateDocumentImpl findStateDoc(String id) {
 		return (StateDocumentImpl)getMongoTemplate().findById(id, StateDocumentImpl.class);
 	}
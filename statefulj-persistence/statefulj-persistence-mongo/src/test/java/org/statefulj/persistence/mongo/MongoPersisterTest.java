@@ -19,6 +19,12 @@ package org.statefulj.persistence.mongo;
 
 import static org.junit.Assert.*;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.annotation.Resource;
 
 import org.junit.Test;
@@ -26,8 +32,11 @@ import org.junit.runner.RunWith;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.statefulj.fsm.Persister;
+import org.statefulj.fsm.PersisterAsyncAdapter;
 import org.statefulj.fsm.StaleStateException;
+import org.statefulj.fsm.TooBusyException;
 import org.statefulj.fsm.model.State;
+import org.statefulj.persistence.mongo.model.StateDocument;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration({"/applicationContext-MongoPersisterTests.xml"})
@@ -108,4 +117,116 @@ public class MongoPersisterTest {
 			throw e;
 		}
 	}
+
+	@Test
+	public void testStateDocumentQueries() throws StaleStateException {
+		MongoPersister<Order> persister = (MongoPersister<Order>)this.mongoPersister;
+		
+		Order order = new Order();
+		order.setAmount(20);
+		order = orderRepo.save(order);
+		
+		// Verify that we can find the StateDocument by the Order's id
+		//
+		StateDocument stateDoc = persister.findStateDocument(order.getId());
+		assertNotNull(stateDoc);
+		assertEquals(order.getId(), stateDoc.getManagedId());
+		
+		// Verify that the Order is returned when querying by State
+		//
+		persister.setCurrent(order, stateA, stateB);
+
+		boolean found = false;
+		List<StateDocument> stateDocs = persister.findStateDocuments(stateB.getName());
+		for (StateDocument doc : stateDocs) {
+			assertEquals(stateB.getName(), doc.getState());
+			found |= order.getId().equals(doc.getManagedId());
+		}
+		assertTrue(found);
+		
+		for (StateDocument doc : persister.findStateDocuments(stateA.getName())) {
+			assertFalse(order.getId().equals(doc.getManagedId()));
+		}
+	}
+
+	@Test
+	public void testAsyncStateChange() throws InterruptedException, ExecutionException {
+		AsyncMongoPersister<Order> asyncPersister = new AsyncMongoPersister<Order>((MongoPersister<Order>)this.mongoPersister);
+		
+		Order order = new Order();
+		order.setAmount(20);
+		order = orderRepo.save(order);
+		
+		assertEquals(stateA, asyncPersister.getCurrent(order).toCompletableFuture().get());
+		
+		asyncPersister.setCurrent(order, stateA, stateB).toCompletableFuture().get();
+		assertEquals(stateB.getName(), order.getStateDocument().getState());
+		assertEquals(stateB.getName(), orderRepo.findOne(order.getId()).getStateDocument().getState());
+		
+		// Verify that a stale update completes exceptionally
+		//
+		try {
+			asyncPersister.setCurrent(order, stateA, stateC).toCompletableFuture().get();
+			fail("Expected a StaleStateException");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof StaleStateException);
+		} finally {
+			asyncPersister.shutdown();
+		}
+		
+		// Once shutdown, updates are rejected outright - they aren't TooBusy, so they mustn't be retried
+		//
+		try {
+			asyncPersister.setCurrent(order, stateB, stateC);
+			fail("Expected an IllegalStateException");
+		} catch(IllegalStateException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+	@Test
+	public void testAsyncTooBusy() throws InterruptedException, ExecutionException {
+		
+		// A single thread, without a queue, which is kept busy
+		//
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = PersisterAsyncAdapter.newBoundedExecutor("busy", 1, 1);
+		AsyncMongoPersister<Order> asyncPersister = new AsyncMongoPersister<Order>((MongoPersister<Order>)this.mongoPersister, executor);
+		
+		Order order = new Order();
+		order.setAmount(20);
+		order = orderRepo.save(order);
+		
+		try {
+			executor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			executor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+				}
+			});
+			
+			// A full queue is TooBusy
+			//
+			try {
+				asyncPersister.setCurrent(order, stateA, stateB).toCompletableFuture().get();
+				fail("Expected a TooBusyException");
+			} catch(ExecutionException e) {
+				assertTrue(e.getCause() instanceof TooBusyException);
+			}
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
 }